@@ -20,9 +20,10 @@ public interface DeviceBus {
     /**
      * Schedules a rescan of the device bus.
      * <p>
-     * This will cause the internal device bus controller to discard the current bus
+     * This will cause the internal device bus controller to update the current bus
      * state and scan for connected bus segments at an unspecified time in the future
-     * (typically during the next tick).
+     * (typically during the next tick). Controllers may only re-examine the part of
+     * the bus around this element, or discard the whole bus and scan it anew.
      * <p>
      * This should be called on all neighboring {@link DeviceBus} instances when a
      * {@link DeviceBus} is created, typically when a block is placed/runs its first
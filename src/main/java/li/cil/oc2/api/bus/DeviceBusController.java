@@ -23,7 +23,7 @@ import java.util.UUID;
  * of this interface must be used to control the bus for that container, or</li>
  * <li>a bus element, which <em>must</em> call {@link #scheduleBusScan()} when the observable structure
  * of the bus has changed (neighbors connected/disconnected) and <em>must</em> call {@link #scanDevices()}
- * when the local list of devices has changed.</li>
+ * or {@link #scheduleDeviceScan()} when the local list of devices has changed.</li>
  * </ul>
  *
  * @see DeviceBusElement
@@ -41,6 +41,22 @@ public interface DeviceBusController {
      */
     void scheduleBusScan();
 
+    /**
+     * Schedules a scan caused by a change local to the specified element.
+     * <p>
+     * This is a hint that only the connections of the specified element changed. Controllers
+     * may use this to update the known bus incrementally, instead of discarding the current bus
+     * and scanning it anew. Where that is not possible, this is equivalent to {@link #scheduleBusScan()}.
+     * <p>
+     * Multiple sequential calls to this method do nothing, the actual scan will be performed
+     * in the next update.
+     *
+     * @param element the element whose connections changed.
+     */
+    default void scheduleBusScan(final DeviceBusElement element) {
+        scheduleBusScan();
+    }
+
     /**
      * Forces a device map rebuild.
      * <p>
@@ -53,6 +69,18 @@ public interface DeviceBusController {
      */
     void scanDevices();
 
+    /**
+     * Schedules a device map rebuild.
+     * <p>
+     * Unlike {@link #scanDevices()} this does not update the list of devices immediately. Instead,
+     * the rebuild will be performed in the next update. Multiple calls before then are coalesced
+     * into a single rebuild, so this should be preferred when the list of devices may change many
+     * times in quick succession, e.g. due to many neighboring blocks changing.
+     */
+    default void scheduleDeviceScan() {
+        scanDevices();
+    }
+
     /**
      * The list of all devices currently known to this controller.
      * <p>
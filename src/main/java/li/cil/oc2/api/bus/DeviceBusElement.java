@@ -75,8 +75,11 @@ public interface DeviceBusElement extends DeviceBus {
      * with a controller.
      * <p>
      * This method is called by the {@link DeviceBusController} the element is registered
-     * with when the global list of devices is rebuilt, e.g. after a call to
-     * {@link DeviceBusController#scanDevices()}.
+     * with when the global list of devices is rebuilt. That happens immediately on a call to
+     * {@link DeviceBusController#scanDevices()}, but usually in a later update, after calls to
+     * {@link DeviceBusController#scheduleDeviceScan()}. Such calls are coalesced and debounced,
+     * so elements whose devices change many times in quick succession cause a single rebuild.
+     * A bus scan also rebuilds the list of devices, taking along any pending device scan.
      *
      * @return the devices that have been added to this element.
      */
@@ -6,6 +6,8 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraftforge.registries.IForgeRegistryEntry;
 
+import java.util.Optional;
+
 /**
  * Implementations of this interface that are registered with the registry for
  * this type can be used as read-only base block devices for read-write block
@@ -38,6 +40,20 @@ public interface BlockDeviceData extends IForgeRegistryEntry<BlockDeviceData> {
      */
     BlockDevice getBlockDevice();
 
+    /**
+     * A string identifying the contents of the base block device, e.g. a hash of its data.
+     * <p>
+     * Drives using this base only store the blocks written to them, and read all other blocks from
+     * the base. The identity is stored with the written blocks, so that drives are never mounted on
+     * top of a base with different contents, which would corrupt them. Implementations whose contents
+     * may change, e.g. between versions of the providing mod, should provide an identity.
+     *
+     * @return the identity of the contents of the block device, if known.
+     */
+    default Optional<String> getIdentity() {
+        return Optional.empty();
+    }
+
     /**
      * The display name of this block device base. May be shown in the tooltip
      * of item devices using this base.
@@ -2,8 +2,12 @@ package li.cil.oc2.api.bus.device.provider;
 
 import li.cil.oc2.api.bus.device.Device;
 import li.cil.oc2.api.util.Invalidatable;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraftforge.registries.IForgeRegistryEntry;
 
+import javax.annotation.Nullable;
+
 /**
  * This is used to query for devices given a block face.
  * <p>
@@ -48,4 +52,20 @@ public interface BlockDeviceProvider extends IForgeRegistryEntry<BlockDeviceProv
      * @return a device for the specified query, if available.
      */
     Invalidatable<Device> getDevice(BlockDeviceQuery query);
+
+    /**
+     * Checks whether this provider may ever return a device for the specified block and block entity.
+     * <p>
+     * This is used to skip providers for blocks they can never provide a device for, so they need not
+     * be queried every time a bus scans its neighbors. The result is cached per block and block entity
+     * type, so it <em>must</em> only depend on these types, not the state of the concrete instances.
+     * When in doubt, return {@code true}.
+     *
+     * @param block       the block to check.
+     * @param blockEntity the block entity of the block, if any.
+     * @return {@code true} if this provider may return a device for such blocks; {@code false} otherwise.
+     */
+    default boolean mayProvideDevice(final Block block, @Nullable final BlockEntity blockEntity) {
+        return true;
+    }
 }
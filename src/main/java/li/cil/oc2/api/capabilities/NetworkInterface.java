@@ -11,6 +11,20 @@ import javax.annotation.Nullable;
  * If found, they will actively poll frames via {@link #readEthernetFrame()} and push
  * forwarded frames via {@link #writeEthernetFrame(NetworkInterface, byte[], int)}.
  * <p>
+ * Frames are passed around by reference, the same array may be handed to any number of network
+ * interfaces. As such, frames must be treated as immutable: once a frame has been returned from
+ * {@link #readEthernetFrame()} it must not be modified by anyone, and frames received via
+ * {@link #writeEthernetFrame(NetworkInterface, byte[], int)} must not be modified by the receiver.
+ * Receivers may keep references to received frames, e.g. to queue them, without copying them.
+ * <p>
+ * Frames only get copied where their contents have to change or leave the server's memory:
+ * <ul>
+ * <li>at the boundary to a virtual machine, where they are transferred to or from guest memory;</li>
+ * <li>on network interface card sides assigned to a VLAN, which create a tagged copy of each
+ * outgoing frame, and an untagged copy of each incoming frame;</li>
+ * <li>in network bridges, where frames are sent to or received from another server.</li>
+ * </ul>
+ * <p>
  * As with all capabilities, this capability can be provided by {@link ItemDevice}s.
  */
 public interface NetworkInterface {
@@ -20,6 +34,9 @@ public interface NetworkInterface {
      * The frame <em>should</em> be a Layer 2 Ethernet frame.
      * <p>
      * When no data is available, {@code null} should be returned.
+     * <p>
+     * The returned frame is handed over to the caller, and must not be modified by this
+     * network interface afterwards.
      *
      * @return a pending frame or {@code null}.
      */
@@ -35,6 +52,9 @@ public interface NetworkInterface {
      * <p>
      * If the device is not ready to receive data, it may ignore the call.
      * <p>
+     * The frame is shared with other receivers and must not be modified. It may be retained
+     * beyond this call.
+     * <p>
      * The {@code timeToLive} parameter is not to be confused with the IP protocol's
      * TTL field. This parameter is used when pushing frames through the network bus
      * to prevent infinite loops in case of cycles. Pure consumers can ignore this
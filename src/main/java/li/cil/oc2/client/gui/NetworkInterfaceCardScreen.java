@@ -12,6 +12,7 @@ import li.cil.oc2.common.item.Items;
 import li.cil.oc2.common.item.NetworkInterfaceCardItem;
 import li.cil.oc2.common.network.Network;
 import li.cil.oc2.common.network.message.NetworkInterfaceCardConfigurationMessage;
+import li.cil.oc2.common.util.EthernetFrameUtils;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.screens.Screen;
 import net.minecraft.client.renderer.MultiBufferSource;
@@ -22,6 +23,7 @@ import net.minecraft.client.resources.model.BakedModel;
 import net.minecraft.client.resources.sounds.SimpleSoundInstance;
 import net.minecraft.core.Direction;
 import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.TextComponent;
 import net.minecraft.network.chat.TranslatableComponent;
 import net.minecraft.sounds.SoundEvents;
 import net.minecraft.util.Mth;
@@ -33,12 +35,15 @@ import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.Vec3;
 
 import javax.annotation.Nullable;
+import java.util.List;
 
 import static li.cil.oc2.common.util.TranslationUtils.key;
 import static li.cil.oc2.common.util.TranslationUtils.text;
 
 public final class NetworkInterfaceCardScreen extends Screen {
     private static final String SIDE_STATE_TEXT = key("gui.{mod}.network_interface_card.side_state");
+    private static final String SIDE_VLAN_TEXT = key("gui.{mod}.network_interface_card.side_vlan");
+    private static final Component DEFAULT_VLAN_TEXT = text("gui.{mod}.network_interface_card.vlan.default");
     private static final Component CONNECTIVITY_ENABLED_TEXT = text("gui.{mod}.network_interface_card.connectivity.enabled");
     private static final Component CONNECTIVITY_DISABLED_TEXT = text("gui.{mod}.network_interface_card.connectivity.disabled");
     private static final Component INFO_TEXT = text("gui.{mod}.network_interface_card.info");
@@ -51,6 +56,7 @@ public final class NetworkInterfaceCardScreen extends Screen {
     public static final int INFO_TEXT_TOP = 104;
     public static final int INFO_TEXT_WIDTH = UI_WIDTH - 16;
     public static final int MAX_BLOCK_PITCH = 30;
+    public static final int LARGE_VLAN_STEP = 10;
 
     ///////////////////////////////////////////////////////////////////
 
@@ -112,16 +118,28 @@ public final class NetworkInterfaceCardScreen extends Screen {
         if (isDraggingBlock && button == 0) {
             isDraggingBlock = false;
             if (!hasDraggedBlock && focusedSide != null) {
-                final NetworkInterfaceCardConfigurationMessage message = new NetworkInterfaceCardConfigurationMessage(hand, focusedSide, !getConfiguration(focusedSide));
-                Network.sendToServer(message);
-                Minecraft.getInstance().getSoundManager()
-                    .play(SimpleSoundInstance.forUI(SoundEvents.UI_BUTTON_CLICK, 1));
+                sendConfiguration(focusedSide, !getConfiguration(focusedSide), getVlanId(focusedSide));
             }
         }
 
         return super.mouseReleased(mouseX, mouseY, button);
     }
 
+    @Override
+    public boolean mouseScrolled(final double mouseX, final double mouseY, final double delta) {
+        if (focusedSide != null && delta != 0) {
+            final int step = hasShiftDown() ? LARGE_VLAN_STEP : 1;
+            final int vlanId = Mth.clamp(getVlanId(focusedSide) + (int) Math.signum(delta) * step,
+                EthernetFrameUtils.DEFAULT_VLAN_ID, EthernetFrameUtils.MAX_VLAN_ID);
+            if (vlanId != getVlanId(focusedSide)) {
+                sendConfiguration(focusedSide, getConfiguration(focusedSide), vlanId);
+            }
+            return true;
+        }
+
+        return super.mouseScrolled(mouseX, mouseY, delta);
+    }
+
     @Override
     public boolean mouseDragged(final double mouseX, final double mouseY, final int activeButton, final double deltaX, final double deltaY) {
         if (isDraggingBlock && activeButton == 0) {
@@ -157,8 +175,12 @@ public final class NetworkInterfaceCardScreen extends Screen {
 
         if (focusedSide != null) {
             final Component enabledComponent = getConfiguration(focusedSide) ? CONNECTIVITY_ENABLED_TEXT : CONNECTIVITY_DISABLED_TEXT;
-            final TranslatableComponent tooltip = new TranslatableComponent(SIDE_STATE_TEXT, enabledComponent);
-            renderTooltip(stack, tooltip, mouseX, mouseY);
+            final int vlanId = getVlanId(focusedSide);
+            final Component vlanComponent = vlanId != EthernetFrameUtils.DEFAULT_VLAN_ID ? new TextComponent(String.valueOf(vlanId)) : DEFAULT_VLAN_TEXT;
+            renderComponentTooltip(stack, List.of(
+                new TranslatableComponent(SIDE_STATE_TEXT, enabledComponent),
+                new TranslatableComponent(SIDE_VLAN_TEXT, vlanComponent)
+            ), mouseX, mouseY);
         }
 
         font.drawWordWrap(INFO_TEXT, left + INFO_TEXT_LEFT, top + INFO_TEXT_TOP, INFO_TEXT_WIDTH, 0xAAAAAA);
@@ -180,6 +202,17 @@ public final class NetworkInterfaceCardScreen extends Screen {
         return side != null && NetworkInterfaceCardItem.getSideConfiguration(player.getItemInHand(hand), side);
     }
 
+    private int getVlanId(@Nullable final Direction side) {
+        return NetworkInterfaceCardItem.getSideVlanId(player.getItemInHand(hand), side);
+    }
+
+    private void sendConfiguration(final Direction side, final boolean enabled, final int vlanId) {
+        final NetworkInterfaceCardConfigurationMessage message = new NetworkInterfaceCardConfigurationMessage(hand, side, enabled, vlanId);
+        Network.sendToServer(message);
+        Minecraft.getInstance().getSoundManager()
+            .play(SimpleSoundInstance.forUI(SoundEvents.UI_BUTTON_CLICK, 1));
+    }
+
     ///////////////////////////////////////////////////////////////////
 
     private final class ComputerBlockItemRenderer {
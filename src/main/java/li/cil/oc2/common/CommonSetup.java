@@ -1,12 +1,19 @@
 package li.cil.oc2.common;
 
+import li.cil.oc2.common.bus.BusConnectivityIndex;
+import li.cil.oc2.common.bus.BusProfiler;
+import li.cil.oc2.common.bus.device.data.BuildrootFirmware;
 import li.cil.oc2.common.bus.device.data.FileSystems;
 import li.cil.oc2.common.bus.device.rpc.RPCItemStackTagFilters;
 import li.cil.oc2.common.bus.device.rpc.RPCMethodParameterTypeAdapters;
+import li.cil.oc2.common.command.ModCommands;
 import li.cil.oc2.common.integration.IMC;
 import li.cil.oc2.common.network.Network;
+import li.cil.oc2.common.serialization.BlobReferenceIndex;
 import li.cil.oc2.common.serialization.BlobStorage;
+import li.cil.oc2.common.util.NetworkPumps;
 import li.cil.oc2.common.util.ServerScheduler;
+import li.cil.oc2.common.util.ThrottledSoundEmitter;
 import li.cil.oc2.common.vm.Allocator;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.server.ServerAboutToStartEvent;
@@ -23,6 +30,12 @@ public final class CommonSetup {
         RPCItemStackTagFilters.initialize();
         RPCMethodParameterTypeAdapters.initialize();
         ServerScheduler.initialize();
+        NetworkPumps.initialize();
+        ThrottledSoundEmitter.initialize();
+        BusConnectivityIndex.initialize();
+        BusProfiler.initialize();
+        ModCommands.initialize();
+        BlobReferenceIndex.initialize();
 
         MinecraftForge.EVENT_BUS.addListener(CommonSetup::handleServerAboutToStart);
         MinecraftForge.EVENT_BUS.addListener(CommonSetup::handleServerStopped);
@@ -32,9 +45,12 @@ public final class CommonSetup {
 
     private static void handleServerAboutToStart(final ServerAboutToStartEvent event) {
         BlobStorage.setServer(event.getServer());
+        BlobReferenceIndex.start();
+        BuildrootFirmware.preloadImages();
     }
 
     private static void handleServerStopped(final ServerStoppedEvent event) {
+        BlobReferenceIndex.stop();
         BlobStorage.close();
         Allocator.resetAndCheckLeaks();
         FileSystems.reset();
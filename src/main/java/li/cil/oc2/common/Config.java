@@ -1,5 +1,7 @@
 package li.cil.oc2.common;
 
+import li.cil.oc2.common.ConfigManager.Max;
+import li.cil.oc2.common.ConfigManager.Min;
 import li.cil.oc2.common.ConfigManager.Path;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.item.Tiers;
@@ -13,6 +15,11 @@ public final class Config {
     @Path("vm") public static int maxHardDriveSize = 8 * Constants.MEGABYTE;
     @Path("vm") public static int maxFlashMemorySize = 4 * Constants.KILOBYTE;
     @Path("vm") public static int maxFloppySize = 512 * Constants.KILOBYTE;
+    @Path("vm") @Min(0) public static int minCompressedDriveSize = 0;
+    @Path("vm") @Min(0) public static int hardDriveBytesPerSecond = 0;
+    @Path("vm") @Min(0) public static int hardDriveOperationsPerSecond = 0;
+    @Path("vm") @Min(0) public static int floppyBytesPerSecond = 0;
+    @Path("vm") @Min(0) public static int floppyOperationsPerSecond = 0;
 
     @Path("energy.blocks") public static double busCableEnergyPerTick = 0.1;
     @Path("energy.blocks") public static double busInterfaceEnergyPerTick = 0.5;
@@ -33,9 +40,34 @@ public final class Config {
     @Path("energy.items") public static int blockOperationsModuleEnergyPerTick = 2;
     @Path("energy.items") public static int inventoryOperationsModuleEnergyPerTick = 1;
     @Path("energy.items") public static int networkTunnelEnergyPerTick = 2;
+    @Path("energy.items") public static int networkBridgeCardEnergyPerTick = 2;
 
+    @Path("network") @Min(0) public static int networkConnectorBytesPerSecond = 64 * Constants.KILOBYTE;
+    @Path("network") @Min(1) public static int networkConnectorBurstBytes = 16 * Constants.KILOBYTE;
+    @Path("network") @Min(0) public static int networkTunnelBytesPerSecond = 32 * Constants.KILOBYTE;
+    @Path("network") @Min(1) public static int networkTunnelBurstBytes = 8 * Constants.KILOBYTE;
+    @Path("network") @Min(1) public static int networkBridgeQueueSize = 256;
+
+    @Path("gameplay") @Min(1) public static int maxBusElementCount = 256;
+    @Path("gameplay") public static int busScanDebounceTicks = 0;
     @Path("gameplay") public static ResourceLocation blockOperationsModuleToolTier = TierSortingRegistry.getName(Tiers.DIAMOND);
 
+    @Path("admin") @Min(1) public static int networkCaptureQueueSize = 1024;
+    @Path("admin") @Min(Constants.KILOBYTE) public static long networkCaptureMaxFileSize = 16 * Constants.MEGABYTE;
+    @Path("admin") @Min(1) public static int networkCaptureFileCount = 4;
+    @Path("admin") @Min(0) @Max(65535) public static int networkBridgeLocalPort = 0;
+    @Path("admin") @Min(0) @Max(65535) public static int networkBridgeRemotePort = 0;
+    @Path("admin") @Min(1) public static int maxOpenBlobChannels = 256;
+    @Path("admin") @Min(0) public static int blobDeduplicationChunkSize = 0;
+    // Blobs not seen referenced for this many days are moved to the "quarantine" folder in the blob folder,
+    // and moved back when used again. References are only seen in loaded and saved chunks, item entities,
+    // robots, and inventories of online players. So blobs still in use get quarantined if they are in chunks
+    // or dimensions not loaded, with players not online, or in containers or saved data of other mods, during
+    // that time.
+    @Path("admin") @Min(0) public static int blobGarbageCollectionGraceDays = 0;
+    // Quarantined blobs are deleted for good after this many days in quarantine. Zero to never delete them
+    // automatically, they can still be deleted using "/oc2 storage purge".
+    @Path("admin") @Min(0) public static int blobQuarantineExpiryDays = 0;
     @Path("admin") public static UUID fakePlayerUUID = UUID.fromString("e39dd9a7-514f-4a2d-aa5e-b6030621416d");
 
     public static boolean computersUseEnergy() {
@@ -57,4 +57,25 @@ public final class Constants {
     public static final String CONNECTOR_ERROR_FULL = key("message.{mod}.connector.error.full");
     public static final String CONNECTOR_ERROR_TOO_FAR = key("message.{mod}.connector.error.too_far");
     public static final String CONNECTOR_ERROR_OBSTRUCTED = key("message.{mod}.connector.error.obstructed");
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static final String COMMAND_PROFILER_EMPTY = key("commands.{mod}.profiler.empty");
+    public static final String COMMAND_PROFILER_DISABLED = key("commands.{mod}.profiler.disabled");
+    public static final String COMMAND_PROFILER_STARTED = key("commands.{mod}.profiler.started");
+    public static final String COMMAND_PROFILER_STOPPED = key("commands.{mod}.profiler.stopped");
+    public static final String COMMAND_PROFILER_BUS = key("commands.{mod}.profiler.bus");
+    public static final String COMMAND_PROFILER_PROVIDER = key("commands.{mod}.profiler.provider");
+    public static final String COMMAND_PROFILER_RESET = key("commands.{mod}.profiler.reset");
+    public static final String COMMAND_NETWORK_EMPTY = key("commands.{mod}.network.empty");
+    public static final String COMMAND_NETWORK_TOP_TALKER = key("commands.{mod}.network.top_talker");
+    public static final String COMMAND_NETWORK_CAPTURE_NOT_FOUND = key("commands.{mod}.network.capture.not_found");
+    public static final String COMMAND_NETWORK_CAPTURE_STARTED = key("commands.{mod}.network.capture.started");
+    public static final String COMMAND_NETWORK_CAPTURE_STOPPED = key("commands.{mod}.network.capture.stopped");
+    public static final String COMMAND_NETWORK_CAPTURE_FAILED = key("commands.{mod}.network.capture.failed");
+    public static final String COMMAND_STORAGE_DEDUPLICATION = key("commands.{mod}.storage.deduplication");
+    public static final String COMMAND_STORAGE_DEDUPLICATION_DISABLED = key("commands.{mod}.storage.deduplication.disabled");
+    public static final String COMMAND_STORAGE_EMPTY = key("commands.{mod}.storage.empty");
+    public static final String COMMAND_STORAGE_PURGE = key("commands.{mod}.storage.purge");
+    public static final String COMMAND_STORAGE_TOP_DISK = key("commands.{mod}.storage.top_disk");
 }
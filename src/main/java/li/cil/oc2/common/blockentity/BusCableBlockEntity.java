@@ -12,6 +12,7 @@ import li.cil.oc2.common.network.message.BusCableFacadeMessage;
 import li.cil.oc2.common.network.message.BusInterfaceNameMessage;
 import li.cil.oc2.common.util.ItemStackUtils;
 import li.cil.oc2.common.util.NBTTagIds;
+import li.cil.oc2.common.util.ServerScheduler;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
@@ -161,6 +162,11 @@ public final class BusCableBlockEntity extends ModBlockEntity {
             invalidateCapability(Capabilities.DEVICE_BUS_ELEMENT, side);
             handleNeighborChanged(getBlockPos().relative(side));
         }
+
+        // Neighbors may not have updated their connectivity yet, so wait for things to settle.
+        if (level != null && !level.isClientSide()) {
+            ServerScheduler.schedule(level, busElement::updateConnectivity);
+        }
     }
 
     @Override
@@ -224,6 +230,8 @@ public final class BusCableBlockEntity extends ModBlockEntity {
             // the containing chunk gets unloaded, only when we're being removed.
             busElement.scheduleScan();
         }
+
+        busElement.dispose();
     }
 
     ///////////////////////////////////////////////////////////////////
@@ -135,7 +135,7 @@ public final class ComputerBlockEntity extends ModBlockEntity implements Termina
     }
 
     public void handleNeighborChanged() {
-        virtualMachine.busController.scheduleBusScan();
+        virtualMachine.busController.scheduleBusScan(busElement);
     }
 
     @NotNull
@@ -292,6 +292,7 @@ public final class ComputerBlockEntity extends ModBlockEntity implements Termina
         // notify it, so we also send out a notification through our bus element, which
         // would be registered with other controllers in that case.
         busElement.scheduleScan();
+        busElement.dispose();
     }
 
     ///////////////////////////////////////////////////////////////////
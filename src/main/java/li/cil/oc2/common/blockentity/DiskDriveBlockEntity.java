@@ -1,5 +1,8 @@
 package li.cil.oc2.common.blockentity;
 
+import li.cil.oc2.api.bus.device.object.Callback;
+import li.cil.oc2.api.bus.device.object.DocumentedDevice;
+import li.cil.oc2.api.bus.device.object.NamedDevice;
 import li.cil.oc2.api.bus.device.vm.VMDevice;
 import li.cil.oc2.common.Config;
 import li.cil.oc2.common.Constants;
@@ -12,6 +15,8 @@ import li.cil.oc2.common.network.Network;
 import li.cil.oc2.common.network.message.DiskDriveFloppyMessage;
 import li.cil.oc2.common.serialization.BlobStorage;
 import li.cil.oc2.common.tags.ItemTags;
+import li.cil.oc2.common.util.DiskStatistics;
+import li.cil.oc2.common.util.DiskThrottle;
 import li.cil.oc2.common.util.ItemStackUtils;
 import li.cil.oc2.common.util.LocationSupplierUtils;
 import li.cil.oc2.common.util.SoundEvents;
@@ -34,15 +39,19 @@ import org.apache.logging.log4j.Logger;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.UUID;
 
-public final class DiskDriveBlockEntity extends ModBlockEntity {
+import static java.util.Collections.singletonList;
+
+public final class DiskDriveBlockEntity extends ModBlockEntity implements NamedDevice, DocumentedDevice {
     private static final Logger LOGGER = LogManager.getLogger();
 
     private static final String DATA_TAG_NAME = "data";
 
+    private static final String GET_STATISTICS = "getStatistics";
+
     private static final ByteBufferBlockDevice EMPTY_BLOCK_DEVICE = ByteBufferBlockDevice.create(0, false);
 
     ///////////////////////////////////////////////////////////////////
@@ -113,6 +122,25 @@ public final class DiskDriveBlockEntity extends ModBlockEntity {
         return itemHandler.getStackInSlot(0);
     }
 
+    @Callback(name = GET_STATISTICS)
+    public DiskStatistics.Snapshot getStatistics() {
+        return device.getStatistics().snapshot();
+    }
+
+    @Override
+    public Collection<String> getDeviceTypeNames() {
+        return singletonList("disk_drive");
+    }
+
+    @Override
+    public void getDeviceDocumentation(final DeviceVisitor visitor) {
+        visitor.visitCallback(GET_STATISTICS)
+            .description("Get the I/O counters of this disk drive. Operations are the read and write " +
+                "requests issued by the computer, which may span multiple sectors.")
+            .returnValueDescription("the read and write operation and byte counts, and how often the " +
+                "computer was suspended because it exceeded the configured rate limit.");
+    }
+
     @OnlyIn(Dist.CLIENT)
     public void setFloppyClient(final ItemStack stack) {
         itemHandler.setStackInSlot(0, stack);
@@ -219,8 +247,10 @@ public final class DiskDriveBlockEntity extends ModBlockEntity {
     }
 
     private final class DiskDriveVMDevice extends AbstractBlockDeviceVMDevice<BlockDevice, BlockEntity> {
+        @Nullable private BlockDevice block;
+
         public DiskDriveVMDevice() {
-            super(DiskDriveBlockEntity.this);
+            super(DiskDriveBlockEntity.this, "disk_drive", LocationSupplierUtils.of(DiskDriveBlockEntity.this));
         }
 
         public void updateBlockDevice(final CompoundTag tag) {
@@ -228,18 +258,20 @@ public final class DiskDriveBlockEntity extends ModBlockEntity {
                 return;
             }
 
-            if (blobHandle != null) {
-                BlobStorage.close(blobHandle);
-                blobHandle = null;
-            }
+            final UUID oldBlobHandle = blobHandle;
+            final BlockDevice oldBlock = block;
+            blobHandle = null;
+            blobFormat = null;
 
             importFromItemStack(tag);
 
             try {
-                device.setBlock(createBlockDevice());
+                setBlockDevice(createBlockDevice());
             } catch (final IOException e) {
                 LOGGER.error(e);
             }
+
+            releaseBlockDevice(oldBlobHandle, oldBlock);
         }
 
         public void removeBlockDevice() {
@@ -247,20 +279,25 @@ public final class DiskDriveBlockEntity extends ModBlockEntity {
                 return;
             }
 
-            if (blobHandle != null) {
-                BlobStorage.close(blobHandle);
-                blobHandle = null;
-            }
+            final UUID oldBlobHandle = blobHandle;
+            final BlockDevice oldBlock = block;
+            blobHandle = null;
+            blobFormat = null;
+            block = null;
 
             try {
-                device.setBlock(EMPTY_BLOCK_DEVICE);
+                setBlockDevice(EMPTY_BLOCK_DEVICE);
             } catch (final IOException e) {
                 LOGGER.error(e);
             }
+
+            releaseBlockDevice(oldBlobHandle, oldBlock);
         }
 
         @Override
         protected BlockDevice createBlockDevice() throws IOException {
+            block = null;
+
             final ItemStack stack = itemHandler.getStackInSlotRaw(0);
             if (stack.isEmpty() || !(stack.getItem() instanceof final FloppyItem floppy)) {
                 return EMPTY_BLOCK_DEVICE;
@@ -271,15 +308,33 @@ public final class DiskDriveBlockEntity extends ModBlockEntity {
                 return EMPTY_BLOCK_DEVICE;
             }
 
-            blobHandle = BlobStorage.validateHandle(blobHandle);
-            final FileChannel channel = BlobStorage.getOrOpen(blobHandle);
-            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
-            return ByteBufferBlockDevice.wrap(buffer, false);
+            block = createBlobBlockDevice(capacity, false);
+            return block;
+        }
+
+        @Override
+        protected DiskThrottle createThrottle() {
+            return new DiskThrottle(Config.floppyBytesPerSecond, Config.floppyOperationsPerSecond);
         }
 
         @Override
         protected void handleDataAccess() {
-            accessSoundEmitter.play();
+            accessSoundEmitter.request();
+        }
+
+        private void releaseBlockDevice(@Nullable final UUID handle, @Nullable final BlockDevice block) {
+            // Only close once no longer in use, compressed block devices write back pending changes when closed.
+            if (block != null) {
+                try {
+                    block.close();
+                } catch (final IOException e) {
+                    LOGGER.error(e);
+                }
+            }
+
+            if (handle != null) {
+                BlobStorage.close(handle);
+            }
         }
     }
 }
@@ -1,7 +1,11 @@
 package li.cil.oc2.common.blockentity;
 
+import li.cil.oc2.api.bus.device.object.Callback;
+import li.cil.oc2.api.bus.device.object.DocumentedDevice;
+import li.cil.oc2.api.bus.device.object.NamedDevice;
 import li.cil.oc2.api.capabilities.NetworkInterface;
 import li.cil.oc2.client.renderer.NetworkCableRenderer;
+import li.cil.oc2.common.Config;
 import li.cil.oc2.common.block.NetworkConnectorBlock;
 import li.cil.oc2.common.capabilities.Capabilities;
 import li.cil.oc2.common.item.Items;
@@ -30,12 +34,15 @@ import net.minecraftforge.common.util.LazyOptional;
 
 import javax.annotation.Nullable;
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 
-public final class NetworkConnectorBlockEntity extends ModBlockEntity {
+import static java.util.Collections.singletonList;
+
+public final class NetworkConnectorBlockEntity extends ModBlockEntity implements NamedDevice, DocumentedDevice {
     public enum ConnectionResult {
         SUCCESS,
         FAILURE,
@@ -52,22 +59,32 @@ public final class NetworkConnectorBlockEntity extends ModBlockEntity {
     private static final int MAX_CONNECTION_COUNT = 2;
     private static final int MAX_CONNECTION_DISTANCE = 16;
     private static final int INITIAL_PACKET_TIME_TO_LIVE = 12;
-    private static final int BYTES_PER_TICK = 64 * 1024 / TickUtils.toTicks(Duration.ofSeconds(1)); // bytes / sec -> bytes / tick
     private static final int MIN_ETHERNET_FRAME_SIZE = 42;
     private static final int TTL_COST = 1;
 
+    private static final String GET_STATISTICS = "getStatistics";
+
     ///////////////////////////////////////////////////////////////////
 
     private final NetworkConnectorNetworkInterface networkInterface = new NetworkConnectorNetworkInterface();
+    private final TokenBucket ingressBucket = new TokenBucket(Config.networkConnectorBytesPerSecond, Config.networkConnectorBurstBytes);
+    private final NetworkPumps.Pump pump = this::pumpFrames;
+    private final NetworkStatistics statistics = new NetworkStatistics("network_connector", LocationSupplierUtils.of(this), false);
 
     private LazyOptional<NetworkInterface> adjacentInterface = LazyOptional.empty();
     private boolean isAdjacentInterfaceDirty = true;
+    private boolean isThrottled;
 
     private final HashSet<BlockPos> connectorPositions = new HashSet<>();
     private final HashSet<BlockPos> ownedCables = new HashSet<>();
     private final HashSet<BlockPos> dirtyConnectors = new HashSet<>();
     private final HashMap<BlockPos, NetworkConnectorBlockEntity> connectors = new HashMap<>();
 
+    // Links to connected connectors that are part of the spanning tree of the network of
+    // connectors this one belongs to. Frames are only forwarded along these, to avoid loops.
+    private final HashSet<NetworkConnectorBlockEntity> forwardingConnectors = new HashSet<>();
+    private boolean isForwardingDirty = true;
+
     ///////////////////////////////////////////////////////////////////
 
     public NetworkConnectorBlockEntity(final BlockPos pos, final BlockState state) {
@@ -133,7 +150,9 @@ public final class NetworkConnectorBlockEntity extends ModBlockEntity {
 
     public void disconnectFrom(final BlockPos pos) {
         dirtyConnectors.remove(pos);
-        connectors.remove(pos);
+        if (connectors.remove(pos) != null) {
+            invalidateForwarding();
+        }
 
         if (ownedCables.remove(pos)) {
             if (level != null) {
@@ -163,6 +182,26 @@ public final class NetworkConnectorBlockEntity extends ModBlockEntity {
         isAdjacentInterfaceDirty = true;
     }
 
+    @Callback(name = GET_STATISTICS)
+    public NetworkStatistics.Snapshot getStatistics() {
+        return statistics.snapshot();
+    }
+
+    @Override
+    public Collection<String> getDeviceTypeNames() {
+        return singletonList("network_connector");
+    }
+
+    @Override
+    public void getDeviceDocumentation(final DeviceVisitor visitor) {
+        visitor.visitCallback(GET_STATISTICS)
+            .description("Get the traffic counters of this connector. Received frames are frames entering " +
+                "the connector, from the block it is attached to or from connected connectors. Sent frames " +
+                "are counted once per receiver they are forwarded to.")
+            .returnValueDescription("the received and sent frame and byte counts, the number of frames " +
+                "dropped due to their time to live expiring, and how often throttling kicked in.");
+    }
+
     @OnlyIn(Dist.CLIENT)
     public void setConnectedPositionsClient(final ArrayList<BlockPos> positions) {
         connectorPositions.clear();
@@ -192,13 +231,9 @@ public final class NetworkConnectorBlockEntity extends ModBlockEntity {
             }
         }
 
-        final NetworkInterface source = adjacentInterface.orElse(NullNetworkInterface.INSTANCE);
-
-        int byteBudget = BYTES_PER_TICK;
-        byte[] frame;
-        while ((frame = source.readEthernetFrame()) != null && byteBudget > 0) {
-            byteBudget -= Math.max(frame.length, MIN_ETHERNET_FRAME_SIZE); // Avoid bogus packets messing with us.
-            networkInterface.writeEthernetFrame(source, frame, INITIAL_PACKET_TIME_TO_LIVE);
+        ingressBucket.refill();
+        if (pumpFrames()) {
+            NetworkPumps.notifyTraffic();
         }
     }
 
@@ -288,10 +323,21 @@ public final class NetworkConnectorBlockEntity extends ModBlockEntity {
         NetworkCableRenderer.addNetworkConnector(this);
     }
 
+    @Override
+    protected void loadServer() {
+        super.loadServer();
+
+        NetworkPumps.add(pump);
+        statistics.register();
+    }
+
     @Override
     protected void unloadServer(final boolean isRemove) {
         super.unloadServer(isRemove);
 
+        NetworkPumps.remove(pump);
+        statistics.unregister();
+
         if (isRemove) {
             // When we're being removed we want to break the actual link to any connected
             // connectors. This will also cause cables to be dropped.
@@ -310,12 +356,42 @@ public final class NetworkConnectorBlockEntity extends ModBlockEntity {
                 if (connector.connectorPositions.contains(pos)) {
                     connector.dirtyConnectors.add(pos);
                 }
+                connector.invalidateForwarding();
             }
         }
     }
 
     ///////////////////////////////////////////////////////////////////
 
+    private boolean pumpFrames() {
+        if (isRemoved()) {
+            return false;
+        }
+
+        final NetworkInterface source = adjacentInterface.orElse(NullNetworkInterface.INSTANCE);
+
+        // Only read frames we may actually send; frames we can't send yet stay queued in the source.
+        boolean didMoveFrames = false;
+        byte[] frame;
+        while (ingressBucket.hasTokens() && (frame = source.readEthernetFrame()) != null) {
+            ingressBucket.consume(Math.max(frame.length, MIN_ETHERNET_FRAME_SIZE)); // Avoid bogus packets messing with us.
+            networkInterface.writeEthernetFrame(source, frame, INITIAL_PACKET_TIME_TO_LIVE);
+            didMoveFrames = true;
+        }
+
+        // Pumps run many times per tick, so only count running out of tokens, not every pass without any.
+        if (!ingressBucket.hasTokens()) {
+            if (!isThrottled) {
+                isThrottled = true;
+                statistics.recordThrottled();
+            }
+        } else {
+            isThrottled = false;
+        }
+
+        return didMoveFrames;
+    }
+
     private void resolveLocalInterface() {
         assert level != null;
 
@@ -345,7 +421,9 @@ public final class NetworkConnectorBlockEntity extends ModBlockEntity {
     }
 
     private void resolveConnectedInterface(final BlockPos connectedPosition) {
-        connectors.remove(connectedPosition);
+        if (connectors.remove(connectedPosition) != null) {
+            invalidateForwarding();
+        }
 
         if (isRemoved()) {
             return;
@@ -380,6 +458,70 @@ public final class NetworkConnectorBlockEntity extends ModBlockEntity {
         }
 
         connectors.put(connectedPosition, networkConnector);
+        invalidateForwarding();
+    }
+
+    private void invalidateForwarding() {
+        // Include the current forwarding links, so that we reach connectors that used to be in the
+        // same network before a connection got removed.
+        for (final NetworkConnectorBlockEntity connector : collectNetwork(true)) {
+            connector.isForwardingDirty = true;
+        }
+    }
+
+    private void validateForwarding() {
+        if (!isForwardingDirty) {
+            return;
+        }
+
+        // Build a spanning tree over the network via breadth-first search. Which tree exactly does
+        // not matter, as long as all connectors in the network agree on it, so we rebuild it for
+        // all of them at once.
+        final ArrayList<NetworkConnectorBlockEntity> network = collectNetwork(false);
+        for (final NetworkConnectorBlockEntity connector : network) {
+            connector.forwardingConnectors.clear();
+            connector.isForwardingDirty = false;
+        }
+
+        final HashSet<NetworkConnectorBlockEntity> visited = new HashSet<>();
+        final ArrayDeque<NetworkConnectorBlockEntity> open = new ArrayDeque<>();
+        visited.add(this);
+        open.add(this);
+        while (!open.isEmpty()) {
+            final NetworkConnectorBlockEntity connector = open.poll();
+            for (final NetworkConnectorBlockEntity neighbor : connector.connectors.values()) {
+                if (!neighbor.isRemoved() && visited.add(neighbor)) {
+                    connector.forwardingConnectors.add(neighbor);
+                    neighbor.forwardingConnectors.add(connector);
+                    open.add(neighbor);
+                }
+            }
+        }
+    }
+
+    private ArrayList<NetworkConnectorBlockEntity> collectNetwork(final boolean includeForwarding) {
+        final ArrayList<NetworkConnectorBlockEntity> network = new ArrayList<>();
+        final HashSet<NetworkConnectorBlockEntity> visited = new HashSet<>();
+        final ArrayDeque<NetworkConnectorBlockEntity> open = new ArrayDeque<>();
+        visited.add(this);
+        open.add(this);
+        while (!open.isEmpty()) {
+            final NetworkConnectorBlockEntity connector = open.poll();
+            network.add(connector);
+            for (final NetworkConnectorBlockEntity neighbor : connector.connectors.values()) {
+                if (visited.add(neighbor)) {
+                    open.add(neighbor);
+                }
+            }
+            if (includeForwarding) {
+                for (final NetworkConnectorBlockEntity neighbor : connector.forwardingConnectors) {
+                    if (visited.add(neighbor)) {
+                        open.add(neighbor);
+                    }
+                }
+            }
+        }
+        return network;
     }
 
     private static boolean isObstructed(final Level level, final BlockPos a, final BlockPos b) {
@@ -439,21 +581,27 @@ public final class NetworkConnectorBlockEntity extends ModBlockEntity {
 
         @Override
         public void writeEthernetFrame(final NetworkInterface source, final byte[] frame, final int timeToLive) {
+            statistics.recordReceived(frame);
+
             if (timeToLive <= 0) {
+                statistics.recordDroppedTimeToLive();
                 return;
             }
 
             adjacentInterface.ifPresent(dst -> {
-                if (dst == source) {
+                if (dst == source || !EthernetFrameUtils.acceptsVlan(dst, EthernetFrameUtils.getVlanId(frame))) {
                     return;
                 }
+                statistics.recordSent(frame);
                 dst.writeEthernetFrame(this, frame, timeToLive - TTL_COST);
             });
 
-            for (final NetworkConnectorBlockEntity dst : connectors.values()) {
+            validateForwarding();
+            for (final NetworkConnectorBlockEntity dst : forwardingConnectors) {
                 if (dst.isRemoved() || dst.networkInterface == source) {
                     continue;
                 }
+                statistics.recordSent(frame);
                 dst.networkInterface.writeEthernetFrame(this, frame, timeToLive - TTL_COST);
             }
         }
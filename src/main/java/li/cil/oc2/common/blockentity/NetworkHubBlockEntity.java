@@ -1,10 +1,12 @@
 package li.cil.oc2.common.blockentity;
 
+import li.cil.oc2.api.bus.device.object.Callback;
+import li.cil.oc2.api.bus.device.object.DocumentedDevice;
+import li.cil.oc2.api.bus.device.object.NamedDevice;
 import li.cil.oc2.api.capabilities.NetworkInterface;
 import li.cil.oc2.common.Constants;
 import li.cil.oc2.common.capabilities.Capabilities;
-import li.cil.oc2.common.util.LazyOptionalUtils;
-import li.cil.oc2.common.util.LevelUtils;
+import li.cil.oc2.common.util.*;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.world.level.block.entity.BlockEntity;
@@ -12,18 +14,32 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.minecraftforge.common.util.LazyOptional;
 
 import javax.annotation.Nullable;
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.stream.Stream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
 
-public final class NetworkHubBlockEntity extends ModBlockEntity implements NetworkInterface {
+import static java.util.Collections.singletonList;
+
+public final class NetworkHubBlockEntity extends ModBlockEntity implements NetworkInterface, NamedDevice, DocumentedDevice {
     private static final int TTL_COST = 1;
+    private static final int MAX_LEARNED_ADDRESS_COUNT = 1024;
+    private static final int LEARNED_ADDRESS_MAX_AGE = TickUtils.toTicks(Duration.ofMinutes(5));
+
+    private static final String GET_STATISTICS = "getStatistics";
+    private static final String GET_SWITCH_STATISTICS = "getSwitchStatistics";
 
     ///////////////////////////////////////////////////////////////////
 
     private final NetworkInterface[] adjacentBlockInterfaces = new NetworkInterface[Constants.BLOCK_FACE_COUNT];
+    private final MacAddressTable<NetworkInterface> learnedAddresses = new MacAddressTable<>(MAX_LEARNED_ADDRESS_COUNT, LEARNED_ADDRESS_MAX_AGE);
+    private final NetworkStatistics statistics = new NetworkStatistics("network_hub", LocationSupplierUtils.of(this), false);
     private boolean haveAdjacentBlocksChanged = true;
 
+    // Same as the counters in NetworkStatistics, so these may be updated from any thread.
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder floodCount = new LongAdder();
+
     ///////////////////////////////////////////////////////////////////
 
     public NetworkHubBlockEntity(final BlockPos pos, final BlockState state) {
@@ -43,11 +59,92 @@ public final class NetworkHubBlockEntity extends ModBlockEntity implements Netwo
 
     @Override
     public void writeEthernetFrame(final NetworkInterface source, final byte[] frame, final int timeToLive) {
-        getAdjacentInterfaces().forEach(adjacentInterface -> {
-            if (adjacentInterface != source) {
+        validateAdjacentBlocks();
+        statistics.recordReceived(frame);
+
+        // Ports restricted to a single VLAN would discard frames of other VLANs, so skip them.
+        final int vlanId = EthernetFrameUtils.getVlanId(frame);
+
+        if (level != null && EthernetFrameUtils.hasHeader(frame)) {
+            final long now = level.getGameTime();
+            if (isAdjacentInterface(source)) {
+                learnedAddresses.learn(vlanId, EthernetFrameUtils.getSource(frame), source, now);
+            }
+
+            final long destinationAddress = EthernetFrameUtils.getDestination(frame);
+            if (!EthernetFrameUtils.isGroupAddress(destinationAddress)) {
+                final NetworkInterface destination = learnedAddresses.get(vlanId, destinationAddress, now);
+                if (destination != null) {
+                    hitCount.increment();
+                    // If the destination is on the port the frame came from, it already got it.
+                    if (destination != source && EthernetFrameUtils.acceptsVlan(destination, vlanId)) {
+                        statistics.recordSent(frame);
+                        destination.writeEthernetFrame(this, frame, timeToLive - TTL_COST);
+                    }
+                    return;
+                }
+
+                missCount.increment();
+            }
+        }
+
+        floodCount.increment();
+        for (final NetworkInterface adjacentInterface : adjacentBlockInterfaces) {
+            if (adjacentInterface != null && adjacentInterface != source && EthernetFrameUtils.acceptsVlan(adjacentInterface, vlanId)) {
+                statistics.recordSent(frame);
                 adjacentInterface.writeEthernetFrame(this, frame, timeToLive - TTL_COST);
             }
-        });
+        }
+    }
+
+    /**
+     * The number of unicast frames forwarded to a single, learned port.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * The number of unicast frames that had to be flooded, because their destination was unknown.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * The number of frames flooded to all ports, be it due to unknown destinations or because
+     * they were broadcast or multicast frames.
+     */
+    public long getFloodCount() {
+        return floodCount.sum();
+    }
+
+    @Callback(name = GET_STATISTICS)
+    public NetworkStatistics.Snapshot getStatistics() {
+        return statistics.snapshot();
+    }
+
+    @Callback(name = GET_SWITCH_STATISTICS)
+    public SwitchStatistics getSwitchStatistics() {
+        return new SwitchStatistics(hitCount.sum(), missCount.sum(), floodCount.sum(), learnedAddresses.size());
+    }
+
+    @Override
+    public Collection<String> getDeviceTypeNames() {
+        return singletonList("network_hub");
+    }
+
+    @Override
+    public void getDeviceDocumentation(final DeviceVisitor visitor) {
+        visitor.visitCallback(GET_STATISTICS)
+            .description("Get the traffic counters of this hub. Sent frames are counted once per " +
+                "adjacent block they are forwarded to.")
+            .returnValueDescription("the received and sent frame and byte counts.");
+        visitor.visitCallback(GET_SWITCH_STATISTICS)
+            .description("Get the counters of the address learning of this hub.")
+            .returnValueDescription("the number of frames forwarded to a single, learned side (hits), " +
+                "the number of frames with unknown destination (misses), the number of frames sent to " +
+                "all sides (floods) and the number of currently known addresses.");
     }
 
     ///////////////////////////////////////////////////////////////////
@@ -57,11 +154,29 @@ public final class NetworkHubBlockEntity extends ModBlockEntity implements Netwo
         collector.offer(Capabilities.NETWORK_INTERFACE, this);
     }
 
+    @Override
+    protected void loadServer() {
+        super.loadServer();
+
+        statistics.register();
+    }
+
+    @Override
+    protected void unloadServer(final boolean isRemove) {
+        super.unloadServer(isRemove);
+
+        statistics.unregister();
+    }
+
     ///////////////////////////////////////////////////////////////////
 
-    private Stream<NetworkInterface> getAdjacentInterfaces() {
-        validateAdjacentBlocks();
-        return Arrays.stream(adjacentBlockInterfaces).filter(Objects::nonNull);
+    private boolean isAdjacentInterface(final NetworkInterface networkInterface) {
+        for (final NetworkInterface adjacentInterface : adjacentBlockInterfaces) {
+            if (adjacentInterface == networkInterface) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private void validateAdjacentBlocks() {
@@ -73,6 +188,9 @@ public final class NetworkHubBlockEntity extends ModBlockEntity implements Netwo
             adjacentBlockInterfaces[side.get3DDataValue()] = null;
         }
 
+        // Ports may now lead elsewhere, so relearn everything.
+        learnedAddresses.clear();
+
         haveAdjacentBlocksChanged = false;
 
         if (level == null || level.isClientSide()) {
@@ -91,4 +209,20 @@ public final class NetworkHubBlockEntity extends ModBlockEntity implements Netwo
             }
         }
     }
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static final class SwitchStatistics {
+        public final long hits;
+        public final long misses;
+        public final long floods;
+        public final int learnedAddresses;
+
+        public SwitchStatistics(final long hits, final long misses, final long floods, final int learnedAddresses) {
+            this.hits = hits;
+            this.misses = misses;
+            this.floods = floods;
+            this.learnedAddresses = learnedAddresses;
+        }
+    }
 }
@@ -72,7 +72,7 @@ public abstract class AbstractDeviceBusElement implements DeviceBusElement {
     @Override
     public void scheduleScan() {
         for (final DeviceBusController controller : controllers) {
-            controller.scheduleBusScan();
+            controller.scheduleBusScan(this);
         }
     }
 
@@ -80,7 +80,7 @@ public abstract class AbstractDeviceBusElement implements DeviceBusElement {
 
     protected void scanDevices() {
         for (final DeviceBusController controller : controllers) {
-            controller.scanDevices();
+            controller.scheduleDeviceScan();
         }
     }
 }
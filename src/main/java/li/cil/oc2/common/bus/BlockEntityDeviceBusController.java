@@ -2,6 +2,7 @@ package li.cil.oc2.common.bus;
 
 import li.cil.oc2.api.bus.BlockDeviceBusElement;
 import li.cil.oc2.api.bus.DeviceBusElement;
+import li.cil.oc2.common.util.Location;
 import li.cil.oc2.common.util.ServerScheduler;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
@@ -23,7 +24,7 @@ public final class BlockEntityDeviceBusController extends CommonDeviceBusControl
     ///////////////////////////////////////////////////////////////////
 
     public BlockEntityDeviceBusController(final DeviceBusElement root, final int baseEnergyConsumption, final BlockEntity blockEntity) {
-        super(root, baseEnergyConsumption);
+        super(root, baseEnergyConsumption, () -> Location.of(blockEntity));
         this.blockEntity = blockEntity;
     }
 
@@ -12,6 +12,7 @@ import li.cil.oc2.common.bus.device.util.BlockDeviceInfo;
 import li.cil.oc2.common.bus.device.util.Devices;
 import li.cil.oc2.common.capabilities.Capabilities;
 import li.cil.oc2.common.util.LevelUtils;
+import li.cil.oc2.common.util.Location;
 import li.cil.oc2.common.util.ServerScheduler;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
@@ -29,6 +30,7 @@ import static li.cil.oc2.common.util.RegistryUtils.optionalKey;
 
 public class BlockEntityDeviceBusElement extends AbstractGroupingDeviceBusElement<BlockEntityDeviceBusElement.BlockEntry> implements BlockDeviceBusElement {
     private final BlockEntity blockEntity;
+    private final EnumSet<Direction> changedNeighbors = EnumSet.noneOf(Direction.class);
 
     ///////////////////////////////////////////////////////////////////
 
@@ -96,10 +98,13 @@ public class BlockEntityDeviceBusElement extends AbstractGroupingDeviceBusElemen
             return;
         }
 
-        final HashSet<BlockEntry> newDevices = collectDevices(level, pos, direction);
+        // Bulk world edits may change the same neighbor many times in a single tick, so we
+        // only collect devices once per changed side, after things have settled.
+        if (changedNeighbors.isEmpty()) {
+            ServerScheduler.schedule(level, this::updateChangedNeighbors);
+        }
 
-        final int index = direction.get3DDataValue();
-        setEntriesForGroup(index, newDevices);
+        changedNeighbors.add(direction);
     }
 
     public void initialize() {
@@ -111,9 +116,28 @@ public class BlockEntityDeviceBusElement extends AbstractGroupingDeviceBusElemen
 
             scanNeighborsForDevices();
             scheduleBusScanInAdjacentBusElements();
+            updateConnectivity();
         });
     }
 
+    public void dispose() {
+        BusConnectivityIndex.get(this).ifPresent(index -> index.remove(this));
+    }
+
+    public void updateConnectivity() {
+        if (blockEntity.isRemoved()) {
+            return;
+        }
+
+        getNeighbors().ifPresent(neighbors -> BusConnectivityIndex.get(this).ifPresent(index -> {
+            final ArrayList<DeviceBusElement> elements = new ArrayList<>();
+            for (final LazyOptional<DeviceBusElement> neighbor : neighbors) {
+                neighbor.ifPresent(elements::add);
+            }
+            index.setNeighbors(this, elements);
+        }));
+    }
+
     ///////////////////////////////////////////////////////////////////
 
     protected boolean canScanContinueTowards(@Nullable final Direction direction) {
@@ -163,10 +187,38 @@ public class BlockEntityDeviceBusElement extends AbstractGroupingDeviceBusElemen
 
     private void scanNeighborsForDevices() {
         for (final Direction direction : Constants.DIRECTIONS) {
-            handleNeighborChanged(blockEntity.getBlockPos().relative(direction));
+            updateNeighbor(direction);
+        }
+    }
+
+    private void updateChangedNeighbors() {
+        final EnumSet<Direction> directions = EnumSet.copyOf(changedNeighbors);
+        changedNeighbors.clear();
+
+        if (blockEntity.isRemoved()) {
+            return;
+        }
+
+        for (final Direction direction : directions) {
+            updateNeighbor(direction);
         }
     }
 
+    private void updateNeighbor(final Direction direction) {
+        final Level level = blockEntity.getLevel();
+        final BlockPos pos = blockEntity.getBlockPos().relative(direction);
+        if (level == null || level.isClientSide() || !level.isLoaded(pos)) {
+            return;
+        }
+
+        final BusProfiler.CollectDevicesEvent profilerEvent = BusProfiler.beginCollectDevices();
+        final HashSet<BlockEntry> newDevices = collectDevices(level, pos, direction);
+        BusProfiler.endCollectDevices(profilerEvent, getControllers(), new Location(level, pos), newDevices.size());
+
+        final int index = direction.get3DDataValue();
+        setEntriesForGroup(index, newDevices);
+    }
+
     private void scheduleBusScanInAdjacentBusElements() {
         final Level level = requireNonNull(blockEntity.getLevel());
         final BlockPos pos = blockEntity.getBlockPos();
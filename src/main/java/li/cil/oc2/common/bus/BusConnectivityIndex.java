@@ -0,0 +1,316 @@
+package li.cil.oc2.common.bus;
+
+import li.cil.oc2.api.bus.BlockDeviceBusElement;
+import li.cil.oc2.api.bus.DeviceBusController;
+import li.cil.oc2.api.bus.DeviceBusElement;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.LevelAccessor;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+import java.util.*;
+
+import static java.util.Collections.emptySet;
+
+/**
+ * Per-level index of which {@link BlockDeviceBusElement}s are connected to each other.
+ * <p>
+ * Connectivity is tracked using a union-find structure over the known elements, so checking which
+ * elements and controllers share a bus is near-constant time. Connections are fed in by bus elements
+ * when their connectivity changes and by controllers as they scan. Removed connections and elements
+ * mark the affected bus, which is then split lazily, on the next query touching it. So removing many
+ * elements of a bus, e.g. when a chunk unloads, only splits it once.
+ * <p>
+ * Indices are keyed by dimension and strongly reference the elements in them, which in turn reference
+ * their level, so they are explicitly dropped when their level unloads or the server stops.
+ */
+public final class BusConnectivityIndex {
+    private static final HashMap<ResourceKey<Level>, BusConnectivityIndex> INDICES = new HashMap<>();
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final HashMap<DeviceBusElement, Set<DeviceBusElement>> neighbors = new HashMap<>();
+    private final HashMap<DeviceBusElement, DeviceBusElement> parents = new HashMap<>();
+    private final HashMap<DeviceBusElement, Component> components = new HashMap<>();
+    private final HashMap<DeviceBusElement, DeviceBusController> controllers = new HashMap<>();
+
+    // Removed elements may be inner nodes of the union-find tree, so they stay in there until their
+    // bus is split, but are otherwise treated as unknown.
+    private final HashSet<DeviceBusElement> removed = new HashSet<>();
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static void initialize() {
+        MinecraftForge.EVENT_BUS.register(EventHandler.class);
+    }
+
+    public static Optional<BusConnectivityIndex> get(final DeviceBusElement element) {
+        if (element instanceof final BlockDeviceBusElement blockElement) {
+            final LevelAccessor level = blockElement.getLevel();
+            if (level instanceof final Level dimension && !level.isClientSide()) {
+                return Optional.of(INDICES.computeIfAbsent(dimension.dimension(), unused -> new BusConnectivityIndex()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    BusConnectivityIndex() {
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Updates the known neighbors of the specified element.
+     * <p>
+     * Only neighbors that are {@link BlockDeviceBusElement}s are tracked, others are private to the
+     * element that provides them and cannot be shared between buses.
+     *
+     * @param element          the element to update the neighbors for.
+     * @param elementNeighbors the current neighbors of the element.
+     */
+    public void setNeighbors(final DeviceBusElement element, final Collection<DeviceBusElement> elementNeighbors) {
+        final HashSet<DeviceBusElement> newNeighbors = new HashSet<>();
+        for (final DeviceBusElement neighbor : elementNeighbors) {
+            if (neighbor instanceof BlockDeviceBusElement && neighbor != element) {
+                newNeighbors.add(neighbor);
+            }
+        }
+
+        add(element);
+        final Set<DeviceBusElement> oldNeighbors = neighbors.put(element, newNeighbors);
+
+        for (final DeviceBusElement neighbor : newNeighbors) {
+            add(neighbor);
+            union(element, neighbor);
+        }
+
+        if (oldNeighbors != null && !newNeighbors.containsAll(oldNeighbors)) {
+            components.get(find(element)).needsSplit = true;
+        }
+    }
+
+    /**
+     * Removes the specified element from the index, e.g. because it was removed from the world.
+     *
+     * @param element the element to remove.
+     */
+    public void remove(final DeviceBusElement element) {
+        if (!isKnown(element)) {
+            return;
+        }
+
+        final DeviceBusElement root = find(element);
+        final Component component = components.get(root);
+
+        component.members.remove(element);
+        for (final DeviceBusElement member : component.members) {
+            final Set<DeviceBusElement> memberNeighbors = neighbors.get(member);
+            if (memberNeighbors != null) {
+                memberNeighbors.remove(element);
+            }
+        }
+
+        neighbors.remove(element);
+        controllers.remove(element);
+
+        removed.add(element);
+        component.removed.add(element);
+        component.needsSplit = true;
+
+        // Nothing left to query the bus, so nothing left pointing to the removed elements either.
+        if (component.members.isEmpty()) {
+            components.remove(root);
+            dropRemoved(component);
+        }
+    }
+
+    public void setController(final DeviceBusElement root, final DeviceBusController controller) {
+        add(root);
+        controllers.put(root, controller);
+    }
+
+    public void removeController(final DeviceBusElement root, final DeviceBusController controller) {
+        controllers.remove(root, controller);
+    }
+
+    /**
+     * Returns the controllers of all buses the specified element is connected to.
+     * <p>
+     * Controllers are derived from the current members of the bus, so controllers whose root element
+     * left the bus, or was removed from the index, are never reported.
+     *
+     * @param element the element to get the connected controllers for.
+     * @return the controllers connected to the element.
+     */
+    public Set<DeviceBusController> getControllers(final DeviceBusElement element) {
+        if (!isKnown(element)) {
+            return emptySet();
+        }
+
+        final HashSet<DeviceBusController> result = new HashSet<>();
+        for (final DeviceBusElement member : getComponent(element).members) {
+            final DeviceBusController controller = controllers.get(member);
+            if (controller != null) {
+                result.add(controller);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all elements the specified element is connected to, including itself.
+     *
+     * @param element the element to get the connected elements for.
+     * @return the elements connected to the element.
+     */
+    public Set<DeviceBusElement> getElements(final DeviceBusElement element) {
+        if (!isKnown(element)) {
+            return emptySet();
+        }
+        return Collections.unmodifiableSet(getComponent(element).members);
+    }
+
+    public boolean isConnected(final DeviceBusElement a, final DeviceBusElement b) {
+        if (!isKnown(a) || !isKnown(b)) {
+            return false;
+        }
+
+        getComponent(a);
+        getComponent(b);
+        return find(a) == find(b);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private boolean isKnown(final DeviceBusElement element) {
+        return parents.containsKey(element) && !removed.contains(element);
+    }
+
+    private void add(final DeviceBusElement element) {
+        // Added again before its old bus was split, so get it out of the old tree first.
+        if (removed.contains(element)) {
+            final DeviceBusElement root = find(element);
+            split(root, components.get(root));
+        }
+
+        if (!parents.containsKey(element)) {
+            parents.put(element, element);
+            components.put(element, new Component(element));
+        }
+    }
+
+    private Component getComponent(final DeviceBusElement element) {
+        final DeviceBusElement root = find(element);
+        final Component component = components.get(root);
+        if (!component.needsSplit) {
+            return component;
+        }
+
+        split(root, component);
+        return components.get(find(element));
+    }
+
+    private DeviceBusElement find(final DeviceBusElement element) {
+        DeviceBusElement root = element;
+        DeviceBusElement parent;
+        while ((parent = parents.get(root)) != root) {
+            root = parent;
+        }
+
+        // Path compression.
+        DeviceBusElement current = element;
+        while (current != root) {
+            final DeviceBusElement next = parents.get(current);
+            parents.put(current, root);
+            current = next;
+        }
+
+        return root;
+    }
+
+    private void union(final DeviceBusElement a, final DeviceBusElement b) {
+        DeviceBusElement rootA = find(a);
+        DeviceBusElement rootB = find(b);
+        if (rootA == rootB) {
+            return;
+        }
+
+        Component componentA = components.get(rootA);
+        Component componentB = components.get(rootB);
+        if (componentA.members.size() < componentB.members.size()) {
+            final DeviceBusElement swapRoot = rootA;
+            rootA = rootB;
+            rootB = swapRoot;
+            final Component swapComponent = componentA;
+            componentA = componentB;
+            componentB = swapComponent;
+        }
+
+        parents.put(rootB, rootA);
+        components.remove(rootB);
+
+        componentA.members.addAll(componentB.members);
+        componentA.removed.addAll(componentB.removed);
+        componentA.needsSplit |= componentB.needsSplit;
+    }
+
+    private void split(final DeviceBusElement root, final Component component) {
+        components.remove(root);
+
+        for (final DeviceBusElement member : component.members) {
+            parents.put(member, member);
+            components.put(member, new Component(member));
+        }
+
+        // No member points to removed elements anymore, so they can finally go.
+        dropRemoved(component);
+
+        for (final DeviceBusElement member : component.members) {
+            for (final DeviceBusElement neighbor : neighbors.getOrDefault(member, emptySet())) {
+                if (isKnown(neighbor)) {
+                    union(member, neighbor);
+                }
+            }
+        }
+    }
+
+    private void dropRemoved(final Component component) {
+        for (final DeviceBusElement element : component.removed) {
+            parents.remove(element);
+            components.remove(element);
+            removed.remove(element);
+        }
+        component.removed.clear();
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static final class Component {
+        public final HashSet<DeviceBusElement> members = new HashSet<>();
+        public final ArrayList<DeviceBusElement> removed = new ArrayList<>();
+        public boolean needsSplit;
+
+        public Component(final DeviceBusElement element) {
+            members.add(element);
+        }
+    }
+
+    private static final class EventHandler {
+        @SubscribeEvent
+        public static void handleServerStoppedEvent(final ServerStoppedEvent event) {
+            INDICES.clear();
+        }
+
+        @SubscribeEvent
+        public static void handleLevelUnload(final WorldEvent.Unload event) {
+            if (event.getWorld() instanceof final Level level) {
+                INDICES.remove(level.dimension());
+            }
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package li.cil.oc2.common.bus;
+
+import jdk.jfr.*;
+import li.cil.oc2.api.bus.DeviceBusController;
+import li.cil.oc2.api.bus.device.provider.BlockDeviceProvider;
+import li.cil.oc2.common.util.Location;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Collects timings of bus scans, device scans and device collection.
+ * <p>
+ * Timings are aggregated per bus controller and per device provider, for quick overviews via
+ * command. Additionally, each measured section is emitted as a JFR event, for deep dives using
+ * a flight recording.
+ * <p>
+ * Profiling is off by default and has to be started via command. While it is off, the begin
+ * methods return {@code null} and the end methods return immediately, so nothing is measured,
+ * allocated or looked up. Buses are tracked per controller, not per position, so robots moving
+ * around count as a single bus, and buses no longer loaded are dropped along with their
+ * controllers.
+ * <p>
+ * All recording happens on the server thread.
+ */
+public final class BusProfiler {
+    private static final WeakHashMap<DeviceBusController, BusStats> BUSES = new WeakHashMap<>();
+    private static final IdentityHashMap<BlockDeviceProvider, ProviderStats> PROVIDERS = new IdentityHashMap<>();
+
+    private static boolean isEnabled;
+    @Nullable private static BusScanEvent currentBusScan;
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static void initialize() {
+        MinecraftForge.EVENT_BUS.addListener(BusProfiler::handleServerStopped);
+    }
+
+    public static boolean isEnabled() {
+        return isEnabled;
+    }
+
+    public static void start() {
+        isEnabled = true;
+    }
+
+    public static void stop() {
+        isEnabled = false;
+        currentBusScan = null;
+    }
+
+    public static void reset() {
+        BUSES.clear();
+        PROVIDERS.clear();
+    }
+
+    public static List<BusStats> getSlowestBuses(final int count) {
+        return BUSES.values().stream()
+            .sorted(Comparator.comparingLong(BusStats::getTotalNanos).reversed())
+            .limit(count)
+            .toList();
+    }
+
+    public static List<ProviderStats> getSlowestProviders(final int count) {
+        return PROVIDERS.values().stream()
+            .sorted(Comparator.comparingLong(ProviderStats::getTotalNanos).reversed())
+            .limit(count)
+            .toList();
+    }
+
+    @Nullable
+    public static BusScanEvent beginBusScan() {
+        if (!isEnabled) {
+            return null;
+        }
+
+        final BusScanEvent event = new BusScanEvent();
+        event.parent = currentBusScan;
+        currentBusScan = event;
+        event.start();
+        return event;
+    }
+
+    public static void endBusScan(@Nullable final BusScanEvent event, final CommonDeviceBusController controller, final int elementCount) {
+        if (event == null) {
+            return;
+        }
+
+        final long duration = event.stop();
+        currentBusScan = event.parent;
+        if (currentBusScan != null) {
+            currentBusScan.nestedNanos += duration;
+        }
+
+        // Device scans triggered by the bus scan are tracked separately, don't count them twice.
+        final BusStats stats = getBusStats(controller);
+        if (stats != null) {
+            stats.busScans.add(duration - event.nestedNanos);
+        }
+
+        if (event.shouldCommit()) {
+            event.setPosition(stats != null ? stats.position : null);
+            event.elementCount = elementCount;
+            event.commit();
+        }
+    }
+
+    @Nullable
+    public static DeviceScanEvent beginDeviceScan() {
+        if (!isEnabled) {
+            return null;
+        }
+
+        final DeviceScanEvent event = new DeviceScanEvent();
+        event.start();
+        return event;
+    }
+
+    public static void endDeviceScan(@Nullable final DeviceScanEvent event, final CommonDeviceBusController controller, final int deviceCount) {
+        if (event == null) {
+            return;
+        }
+
+        final long duration = event.stop();
+        if (currentBusScan != null) {
+            currentBusScan.nestedNanos += duration;
+        }
+
+        final BusStats stats = getBusStats(controller);
+        if (stats != null) {
+            stats.deviceScans.add(duration);
+        }
+
+        if (event.shouldCommit()) {
+            event.setPosition(stats != null ? stats.position : null);
+            event.deviceCount = deviceCount;
+            event.commit();
+        }
+    }
+
+    @Nullable
+    public static CollectDevicesEvent beginCollectDevices() {
+        if (!isEnabled) {
+            return null;
+        }
+
+        final CollectDevicesEvent event = new CollectDevicesEvent();
+        event.start();
+        return event;
+    }
+
+    public static void endCollectDevices(@Nullable final CollectDevicesEvent event, final Collection<DeviceBusController> controllers, final Location location, final int deviceCount) {
+        if (event == null) {
+            return;
+        }
+
+        final long duration = event.stop();
+        for (final DeviceBusController controller : controllers) {
+            if (controller instanceof final CommonDeviceBusController busController) {
+                final BusStats stats = getBusStats(busController);
+                if (stats != null) {
+                    stats.collectDevices.add(duration);
+                }
+            }
+        }
+
+        if (event.shouldCommit()) {
+            event.setPosition(BusPosition.of(location));
+            event.deviceCount = deviceCount;
+            event.commit();
+        }
+    }
+
+    @Nullable
+    public static DeviceProviderEvent beginGetDevice() {
+        if (!isEnabled) {
+            return null;
+        }
+
+        final DeviceProviderEvent event = new DeviceProviderEvent();
+        event.start();
+        return event;
+    }
+
+    public static void endGetDevice(@Nullable final DeviceProviderEvent event, final BlockDeviceProvider provider, final boolean isPresent) {
+        if (event == null) {
+            return;
+        }
+
+        final long duration = event.stop();
+
+        // Providers are registry singletons, so their names only need to be looked up once.
+        final ProviderStats stats = PROVIDERS.computeIfAbsent(provider, ProviderStats::new);
+        stats.add(duration);
+
+        if (event.shouldCommit()) {
+            event.provider = stats.name;
+            event.isPresent = isPresent;
+            event.commit();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static void handleServerStopped(final ServerStoppedEvent event) {
+        stop();
+        reset();
+    }
+
+    @Nullable
+    private static BusStats getBusStats(final CommonDeviceBusController controller) {
+        // Controllers of robots move around, so keep track of where they were last seen.
+        final BusStats stats = BUSES.get(controller);
+        final Optional<Location> location = controller.getLocation();
+        if (location.isEmpty()) {
+            return stats;
+        }
+
+        if (stats == null) {
+            final BusStats newStats = new BusStats(BusPosition.of(location.get()));
+            BUSES.put(controller, newStats);
+            return newStats;
+        }
+
+        if (!stats.position.pos().equals(location.get().pos())) {
+            stats.position = BusPosition.of(location.get());
+        }
+
+        return stats;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    public record BusPosition(String dimension, BlockPos pos) {
+        public static BusPosition of(final Location location) {
+            final String dimension = location.level() instanceof final Level level
+                ? level.dimension().location().toString() : "unknown";
+            return new BusPosition(dimension, location.pos());
+        }
+    }
+
+    public static class Stats {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getAverageNanos() {
+            return count > 0 ? totalNanos / count : 0;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        void add(final long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+    }
+
+    public static final class ProviderStats extends Stats {
+        private final String name;
+
+        private ProviderStats(final BlockDeviceProvider provider) {
+            this.name = String.valueOf(provider.getRegistryName());
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static final class BusStats {
+        public final Stats busScans = new Stats();
+        public final Stats deviceScans = new Stats();
+        public final Stats collectDevices = new Stats();
+        private BusPosition position;
+
+        private BusStats(final BusPosition position) {
+            this.position = position;
+        }
+
+        /**
+         * The position the bus controller was at when last profiled.
+         *
+         * @return the last known position of the controller.
+         */
+        public BusPosition getPosition() {
+            return position;
+        }
+
+        public long getTotalNanos() {
+            return busScans.totalNanos + deviceScans.totalNanos + collectDevices.totalNanos;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    @Category({"OpenComputers II", "Device Bus"})
+    private abstract static class TimedEvent extends Event {
+        private transient long startNanos;
+
+        protected void start() {
+            startNanos = System.nanoTime();
+            begin();
+        }
+
+        protected long stop() {
+            end();
+            return System.nanoTime() - startNanos;
+        }
+    }
+
+    private abstract static class PositionedEvent extends TimedEvent {
+        @Label("Dimension") String dimension;
+        @Label("X") int x;
+        @Label("Y") int y;
+        @Label("Z") int z;
+
+        protected void setPosition(@Nullable final BusPosition position) {
+            if (position != null) {
+                dimension = position.dimension();
+                x = position.pos().getX();
+                y = position.pos().getY();
+                z = position.pos().getZ();
+            }
+        }
+    }
+
+    @Name("li.cil.oc2.BusScan")
+    @Label("Bus Scan")
+    @Description("Scan for the elements of a device bus, position is the last known one of the bus controller.")
+    public static final class BusScanEvent extends PositionedEvent {
+        @Label("Element Count") int elementCount;
+
+        @Nullable private transient BusScanEvent parent;
+        private transient long nestedNanos;
+    }
+
+    @Name("li.cil.oc2.DeviceScan")
+    @Label("Device Scan")
+    @Description("Collection of the devices of all elements of a device bus, position is the last known one of the bus controller.")
+    public static final class DeviceScanEvent extends PositionedEvent {
+        @Label("Device Count") int deviceCount;
+    }
+
+    @Name("li.cil.oc2.CollectDevices")
+    @Label("Collect Devices")
+    @Description("Query for the devices in a block adjacent to a bus element, position is that of the block.")
+    public static final class CollectDevicesEvent extends PositionedEvent {
+        @Label("Device Count") int deviceCount;
+    }
+
+    @Name("li.cil.oc2.GetDevice")
+    @Label("Get Device")
+    @Description("Query of a single block device provider.")
+    public static final class DeviceProviderEvent extends TimedEvent {
+        @Label("Provider") String provider;
+        @Label("Device Present") boolean isPresent;
+    }
+}
@@ -3,14 +3,19 @@ package li.cil.oc2.common.bus;
 import li.cil.oc2.api.bus.DeviceBusController;
 import li.cil.oc2.api.bus.DeviceBusElement;
 import li.cil.oc2.api.bus.device.Device;
+import li.cil.oc2.common.Config;
 import li.cil.oc2.common.util.Event;
 import li.cil.oc2.common.util.LazyOptionalUtils;
+import li.cil.oc2.common.util.Location;
 import li.cil.oc2.common.util.ParameterizedEvent;
 import li.cil.oc2.common.util.TickUtils;
 import net.minecraftforge.common.util.LazyOptional;
 
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
 import java.time.Duration;
 import java.util.*;
+import java.util.function.Supplier;
 
 import static java.util.Collections.emptySet;
 
@@ -25,7 +30,6 @@ public class CommonDeviceBusController implements DeviceBusController {
 
     ///////////////////////////////////////////////////////////////////
 
-    private static final int MAX_BUS_ELEMENT_COUNT = 128;
     private static final int INCOMPLETE_RETRY_INTERVAL = TickUtils.toTicks(Duration.ofSeconds(10));
     private static final int BAD_CONFIGURATION_RETRY_INTERVAL = TickUtils.toTicks(Duration.ofSeconds(5));
 
@@ -34,32 +38,43 @@ public class CommonDeviceBusController implements DeviceBusController {
     public final Event onAfterBusScan = new Event();
     public final Event onBeforeScan = new Event();
     public final ParameterizedEvent<AfterDeviceScanEvent> onAfterDeviceScan = new ParameterizedEvent<>();
-    public final ParameterizedEvent<DevicesChangedEvent> onDevicesAdded = new ParameterizedEvent<>();
-    public final ParameterizedEvent<DevicesChangedEvent> onDevicesRemoved = new ParameterizedEvent<>();
+    public final ParameterizedEvent<DevicesChangedEvent> onDevicesChanged = new ParameterizedEvent<>();
 
     private final DeviceBusElement root;
     private final int baseEnergyConsumption;
+    private final Supplier<Optional<Location>> location;
 
-    private final Set<DeviceBusElement> elements = new HashSet<>();
+    private final HashMap<DeviceBusElement, Set<DeviceBusElement>> elements = new HashMap<>();
+    private final HashSet<DeviceBusElement> dirtyElements = new HashSet<>();
+    private final Set<LazyOptional<DeviceBusElement>> listenedNeighbors = Collections.newSetFromMap(new WeakHashMap<>());
     private final HashSet<Device> devices = new HashSet<>();
     private final HashMap<Device, Set<UUID>> deviceIds = new HashMap<>();
 
     private BusState state = BusState.SCAN_PENDING;
+    private boolean needsFullScan = true;
     private int scanDelay;
+    private int deviceScanDelay = -1;
 
     private int energyConsumption;
 
     ///////////////////////////////////////////////////////////////////
 
     public CommonDeviceBusController(final DeviceBusElement root, final int baseEnergyConsumption) {
+        this(root, baseEnergyConsumption, Optional::empty);
+    }
+
+    public CommonDeviceBusController(final DeviceBusElement root, final int baseEnergyConsumption, final Supplier<Optional<Location>> location) {
         this.root = root;
         this.baseEnergyConsumption = baseEnergyConsumption;
+        this.location = location;
     }
 
     ///////////////////////////////////////////////////////////////////
 
     public void dispose() {
-        for (final DeviceBusElement element : elements) {
+        BusConnectivityIndex.get(root).ifPresent(index -> index.removeController(root, this));
+
+        for (final DeviceBusElement element : elements.keySet()) {
             element.removeController(this);
             for (final DeviceBusController controller : element.getControllers()) {
                 controller.scheduleBusScan();
@@ -77,19 +92,96 @@ public class CommonDeviceBusController implements DeviceBusController {
         return energyConsumption;
     }
 
+    /**
+     * The location of the block or entity hosting this controller, if any. Used to attribute
+     * profiling data to buses.
+     *
+     * @return the location of this controller.
+     */
+    public Optional<Location> getLocation() {
+        return location.get();
+    }
+
     @Override
     public void scheduleBusScan() {
-        scanDelay = 0; // scan as soon as possible
+        scanDelay = debounce(scanDelay);
+        needsFullScan = true;
         state = BusState.SCAN_PENDING;
     }
 
+    @Override
+    public void scheduleBusScan(final DeviceBusElement element) {
+        // We can only patch a valid bus. If we're in some error state, or don't even know the
+        // element, we need to start from scratch.
+        if (needsFullScan || state != BusState.READY || !elements.containsKey(element)) {
+            scheduleBusScan();
+            return;
+        }
+
+        dirtyElements.add(element);
+        scanDelay = debounce(scanDelay);
+    }
+
+    @Override
+    public void scheduleDeviceScan() {
+        deviceScanDelay = debounce(deviceScanDelay);
+    }
+
     @Override
     public void scanDevices() {
-        onBeforeScan();
+        deviceScanDelay = -1;
+
+        final BusProfiler.DeviceScanEvent profilerEvent = BusProfiler.beginDeviceScan();
+        try {
+            updateDevices();
+        } finally {
+            BusProfiler.endDeviceScan(profilerEvent, this, devices.size());
+        }
+    }
+
+    @Override
+    public Set<Device> getDevices() {
+        return devices;
+    }
+
+    @Override
+    public Set<UUID> getDeviceIdentifiers(final Device device) {
+        return deviceIds.getOrDefault(device, emptySet());
+    }
+
+    public void scan() {
+        scanBus();
+        scanDevicesIfScheduled();
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    protected Collection<DeviceBusElement> getElements() {
+        return elements.keySet();
+    }
 
+    protected void onAfterBusScan() {
+        onAfterBusScan.run();
+    }
+
+    protected void onBeforeScan() {
+        onBeforeScan.run();
+    }
+
+    protected void onAfterDeviceScan(final boolean didDevicesChange) {
+        onAfterDeviceScan.accept(new AfterDeviceScanEvent(didDevicesChange));
+    }
+
+    protected void onDevicesChanged(final Collection<Device> addedDevices, final Collection<Device> removedDevices) {
+        onDevicesChanged.accept(new DevicesChangedEvent(addedDevices, removedDevices));
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private void updateDevices() {
         final HashSet<Device> newDevices = new HashSet<>();
         final HashMap<Device, Set<UUID>> newDeviceIds = new HashMap<>();
-        for (final DeviceBusElement element : elements) {
+        for (final DeviceBusElement element : elements.keySet()) {
             for (final Device device : element.getLocalDevices()) {
                 newDevices.add(device);
                 element.getDeviceIdentifier(device).ifPresent(identifier -> newDeviceIds
@@ -99,43 +191,34 @@ public class CommonDeviceBusController implements DeviceBusController {
 
         final HashSet<Device> removedDevices = new HashSet<>(devices);
         removedDevices.removeAll(newDevices);
-        onDevicesRemoved(removedDevices);
 
         final HashSet<Device> addedDevices = new HashSet<>(newDevices);
         addedDevices.removeAll(devices);
-        onDevicesAdded(addedDevices);
 
         final boolean didDevicesChange = !removedDevices.isEmpty() || !addedDevices.isEmpty();
-        final boolean didDeviceIdsChange;
-        if (didDevicesChange) {
-            devices.clear();
-            devices.addAll(newDevices);
+        final boolean didDeviceIdsChange = !deviceIds.equals(newDeviceIds);
 
-            didDeviceIdsChange = true;
-        } else {
-            didDeviceIdsChange = deviceIds.entrySet().stream().anyMatch(entry ->
-                !Objects.equals(entry.getValue(), newDeviceIds.get(entry.getKey())));
+        // Don't bother listeners if nothing changed. This avoids pausing VMs for no reason.
+        if (!didDevicesChange && !didDeviceIdsChange) {
+            return;
         }
 
-        if (didDeviceIdsChange) {
-            deviceIds.clear();
-            deviceIds.putAll(newDeviceIds);
-        }
+        onBeforeScan();
 
-        onAfterDeviceScan(didDevicesChange || didDeviceIdsChange);
-    }
+        if (didDevicesChange) {
+            onDevicesChanged(addedDevices, removedDevices);
 
-    @Override
-    public Set<Device> getDevices() {
-        return devices;
-    }
+            devices.clear();
+            devices.addAll(newDevices);
+        }
 
-    @Override
-    public Set<UUID> getDeviceIdentifiers(final Device device) {
-        return deviceIds.getOrDefault(device, emptySet());
+        deviceIds.clear();
+        deviceIds.putAll(newDeviceIds);
+
+        onAfterDeviceScan(true);
     }
 
-    public void scan() {
+    private void scanBus() {
         if (scanDelay < 0) {
             return;
         }
@@ -146,53 +229,114 @@ public class CommonDeviceBusController implements DeviceBusController {
 
         assert scanDelay == -1;
 
-        // We stay registered with elements until we scan so that other controllers on the same bus
-        // can detect us in the meantime (for multiple controller detection).
-        clearElements();
+        final BusProfiler.BusScanEvent profilerEvent = BusProfiler.beginBusScan();
+        try {
+            scanBusElements();
+        } finally {
+            BusProfiler.endBusScan(profilerEvent, this, elements.size());
+        }
+    }
 
-        final HashSet<DeviceBusElement> closed = new HashSet<>();
+    private void scanBusElements() {
+        final boolean isFullScan = needsFullScan;
+        final HashSet<DeviceBusElement> addedElements = new HashSet<>();
+        final HashSet<DeviceBusElement> visited = new HashSet<>();
         final Stack<DeviceBusElement> open = new Stack<>();
-        final ArrayList<LazyOptional<DeviceBusElement>> optionals = new ArrayList<>();
+        final ArrayList<NeighborListener> listeners = new ArrayList<>();
+        boolean didRemoveEdges = false;
 
-        closed.add(root);
-        open.add(root);
+        if (isFullScan) {
+            // We stay registered with elements until we scan so that other controllers on the same bus
+            // can detect us in the meantime (for multiple controller detection).
+            clearElements();
+
+            elements.put(root, new HashSet<>());
+            addedElements.add(root);
+            open.add(root);
+        } else {
+            // Only re-query elements that reported a change, and their known neighbors, since the
+            // edges pointing towards a changed element are stored with those neighbors.
+            for (final DeviceBusElement element : dirtyElements) {
+                final Set<DeviceBusElement> neighbors = elements.get(element);
+                if (neighbors != null) {
+                    open.add(element);
+                    open.addAll(neighbors);
+                }
+            }
+        }
+
+        dirtyElements.clear();
 
         while (!open.isEmpty()) {
             final DeviceBusElement element = open.pop();
+            if (!visited.add(element)) {
+                continue;
+            }
 
             final Optional<Collection<LazyOptional<DeviceBusElement>>> elementNeighbors = element.getNeighbors();
             if (elementNeighbors.isEmpty()) {
-                scanDelay = INCOMPLETE_RETRY_INTERVAL;
-                state = BusState.INCOMPLETE;
+                handleScanFailed(BusState.INCOMPLETE, INCOMPLETE_RETRY_INTERVAL);
                 return;
             }
 
-            elementNeighbors.ifPresent(neighbors -> {
-                for (final LazyOptional<DeviceBusElement> neighbor : neighbors) {
-                    neighbor.ifPresent(neighborElement -> {
-                        if (closed.add(neighborElement)) {
-                            open.add(neighborElement);
-                            optionals.add(neighbor);
-                        }
-                    });
-                }
-            });
+            final HashSet<DeviceBusElement> neighbors = new HashSet<>();
+            for (final LazyOptional<DeviceBusElement> neighbor : elementNeighbors.get()) {
+                neighbor.ifPresent(neighborElement -> {
+                    neighbors.add(neighborElement);
+                    if (!elements.containsKey(neighborElement)) {
+                        elements.put(neighborElement, new HashSet<>());
+                        addedElements.add(neighborElement);
+                        open.add(neighborElement);
+                    }
+                    if (!listenedNeighbors.contains(neighbor)) {
+                        listeners.add(new NeighborListener(neighbor, element));
+                    }
+                });
+            }
+
+            BusConnectivityIndex.get(element).ifPresent(index -> index.setNeighbors(element, neighbors));
 
-            if (closed.size() > MAX_BUS_ELEMENT_COUNT) {
-                scanDelay = BAD_CONFIGURATION_RETRY_INTERVAL;
-                state = BusState.TOO_COMPLEX;
+            final Set<DeviceBusElement> oldNeighbors = elements.put(element, neighbors);
+            if (oldNeighbors != null && !neighbors.containsAll(oldNeighbors)) {
+                didRemoveEdges = true;
+            }
+
+            if (elements.size() > Config.maxBusElementCount) {
+                handleScanFailed(BusState.TOO_COMPLEX, BAD_CONFIGURATION_RETRY_INTERVAL);
                 return;
             }
         }
 
+        // Dropped connections may have split off parts of the bus, those are no longer ours.
+        final HashSet<DeviceBusElement> removedElements = new HashSet<>();
+        if (didRemoveEdges) {
+            final HashSet<DeviceBusElement> reachable = collectReachableElements();
+            for (final DeviceBusElement element : elements.keySet()) {
+                if (!reachable.contains(element)) {
+                    removedElements.add(element);
+                }
+            }
+
+            for (final DeviceBusElement element : removedElements) {
+                elements.remove(element);
+                addedElements.remove(element);
+                element.removeController(this);
+            }
+        }
+
         final HashSet<DeviceBusController> controllers = new HashSet<>();
-        for (final DeviceBusElement element : closed) {
+        for (final DeviceBusElement element : addedElements) {
             controllers.addAll(element.getControllers());
             element.addController(this);
         }
 
+        // The shared index also knows about controllers that have not scanned their bus yet.
+        BusConnectivityIndex.get(root).ifPresent(index -> {
+            index.setController(root, this);
+            controllers.addAll(index.getControllers(root));
+        });
+
         controllers.remove(this); // Just in case...
-        elements.addAll(closed);
 
         // If there's any controllers on the bus that are not this one, enter error state and
         // trigger a scan for those controllers, too, so they may enter error state.
@@ -201,67 +345,96 @@ public class CommonDeviceBusController implements DeviceBusController {
                 controller.scheduleBusScan();
             }
 
+            needsFullScan = true;
             state = BusState.MULTIPLE_CONTROLLERS;
             scanDelay = BAD_CONFIGURATION_RETRY_INTERVAL;
             return;
         }
 
-        // Rescan if any bus element gets invalidated.
-        for (final LazyOptional<DeviceBusElement> optional : optionals) {
-            assert optional.isPresent();
-
-            // Don't have bus elements keep this instance alive, only notify us on change if we still exist.
-            LazyOptionalUtils.addWeakListener(optional, this, (controller, unused) -> controller.scheduleBusScan());
+        // Update the affected part of the bus if any bus element gets invalidated.
+        for (final NeighborListener listener : listeners) {
+            listener.register(this);
         }
 
-        onAfterBusScan();
+        if (isFullScan || !addedElements.isEmpty() || !removedElements.isEmpty()) {
+            onAfterBusScan();
 
-        scanDevices();
+            scanDevices();
+        } else if (deviceScanDelay >= 0) {
+            // Piggyback pending device scans, we're updating this tick anyway.
+            scanDevices();
+        }
 
         updateEnergyConsumption();
 
+        needsFullScan = false;
         state = BusState.READY;
     }
 
-    ///////////////////////////////////////////////////////////////////
+    private void scanDevicesIfScheduled() {
+        // Device changes on an invalid bus will be picked up by the next successful bus scan.
+        if (deviceScanDelay < 0 || state != BusState.READY) {
+            return;
+        }
 
-    protected Collection<DeviceBusElement> getElements() {
-        return elements;
-    }
+        if (deviceScanDelay-- > 0) {
+            return;
+        }
 
-    protected void onAfterBusScan() {
-        onAfterBusScan.run();
+        scanDevices();
     }
 
-    protected void onBeforeScan() {
-        onBeforeScan.run();
-    }
+    private void clearElements() {
+        for (final DeviceBusElement element : elements.keySet()) {
+            element.removeController(this);
+        }
 
-    protected void onAfterDeviceScan(final boolean didDevicesChange) {
-        onAfterDeviceScan.accept(new AfterDeviceScanEvent(didDevicesChange));
+        elements.clear();
     }
 
-    protected void onDevicesAdded(final Collection<Device> devices) {
-        onDevicesAdded.accept(new DevicesChangedEvent(devices));
+    private void handleScanFailed(final BusState failedState, final int retryDelay) {
+        clearElements();
+        needsFullScan = true;
+        state = failedState;
+        scanDelay = retryDelay;
     }
 
-    protected void onDevicesRemoved(final Collection<Device> devices) {
-        onDevicesRemoved.accept(new DevicesChangedEvent(devices));
+    private static int debounce(final int currentDelay) {
+        // Requests start a new window if there is none, but never extend an already running one, so
+        // that a steady stream of requests cannot postpone the scan indefinitely.
+        return currentDelay < 0 ? Config.busScanDebounceTicks : Math.min(currentDelay, Config.busScanDebounceTicks);
     }
 
-    ///////////////////////////////////////////////////////////////////
+    private HashSet<DeviceBusElement> collectReachableElements() {
+        final HashSet<DeviceBusElement> closed = new HashSet<>();
+        final Stack<DeviceBusElement> open = new Stack<>();
 
-    private void clearElements() {
-        for (final DeviceBusElement element : elements) {
-            element.removeController(this);
+        closed.add(root);
+        open.add(root);
+
+        while (!open.isEmpty()) {
+            final DeviceBusElement element = open.pop();
+            for (final DeviceBusElement neighbor : elements.getOrDefault(element, emptySet())) {
+                if (closed.add(neighbor)) {
+                    open.add(neighbor);
+                }
+            }
         }
 
-        elements.clear();
+        return closed;
+    }
+
+    private void handleNeighborInvalidated(@Nullable final DeviceBusElement element) {
+        if (element != null) {
+            scheduleBusScan(element);
+        } else {
+            scheduleBusScan();
+        }
     }
 
     private void updateEnergyConsumption() {
         double accumulator = baseEnergyConsumption;
-        for (final DeviceBusElement element : elements) {
+        for (final DeviceBusElement element : elements.keySet()) {
             accumulator += Math.max(0, element.getEnergyConsumption());
         }
 
@@ -276,5 +449,16 @@ public class CommonDeviceBusController implements DeviceBusController {
 
     public record AfterDeviceScanEvent(boolean didDevicesChange) { }
 
-    public record DevicesChangedEvent(Collection<Device> devices) { }
+    public record DevicesChangedEvent(Collection<Device> addedDevices, Collection<Device> removedDevices) { }
+
+    private record NeighborListener(LazyOptional<DeviceBusElement> neighbor, DeviceBusElement source) {
+        public void register(final CommonDeviceBusController controller) {
+            controller.listenedNeighbors.add(neighbor);
+
+            // Don't have bus elements keep this instance or the element that found them alive,
+            // only notify us on change if we still exist.
+            final WeakReference<DeviceBusElement> weakSource = new WeakReference<>(source);
+            LazyOptionalUtils.addWeakListener(neighbor, controller, (busController, unused) -> busController.handleNeighborInvalidated(weakSource.get()));
+        }
+    }
 }
@@ -10,35 +10,70 @@ import net.minecraftforge.registries.ForgeRegistryEntry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Optional;
 
 public final class BuildrootBlockDeviceData extends ForgeRegistryEntry<BlockDeviceData> implements BlockDeviceData {
     private static final Logger LOGGER = LogManager.getLogger();
 
     ///////////////////////////////////////////////////////////////////
 
-    private static final ByteBufferBlockDevice INSTANCE;
+    private static final String ROOT_FILESYSTEM_NAME = "rootfs.ext2";
 
-    static {
-        ByteBufferBlockDevice instance;
-        try {
-            instance = ByteBufferBlockDevice.createFromStream(Buildroot.getRootFilesystem(), true);
-        } catch (final IOException e) {
-            LOGGER.error(e);
-            instance = ByteBufferBlockDevice.create(0, true);
-        }
-        INSTANCE = instance;
-    }
+    ///////////////////////////////////////////////////////////////////
+
+    private static ByteBufferBlockDevice instance;
+    @Nullable private static String identity;
 
     ///////////////////////////////////////////////////////////////////
 
     @Override
     public BlockDevice getBlockDevice() {
-        return INSTANCE;
+        synchronized (BuildrootBlockDeviceData.class) {
+            if (instance == null) {
+                createBlockDevice();
+            }
+            return instance;
+        }
+    }
+
+    @Override
+    public Optional<String> getIdentity() {
+        synchronized (BuildrootBlockDeviceData.class) {
+            if (instance == null) {
+                createBlockDevice();
+            }
+            return Optional.ofNullable(identity);
+        }
     }
 
     @Override
     public Component getDisplayName() {
         return new TextComponent("Linux");
     }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static void createBlockDevice() {
+        try {
+            instance = ByteBufferBlockDevice.wrap(BuildrootImages.get(ROOT_FILESYSTEM_NAME, Buildroot::getRootFilesystem), true);
+            identity = BuildrootImages.getHash(ROOT_FILESYSTEM_NAME, Buildroot::getRootFilesystem);
+            return;
+        } catch (final IOException e) {
+            LOGGER.error("Failed loading cached root filesystem, falling back to reading it into memory.", e);
+        }
+
+        try (final InputStream stream = Buildroot.getRootFilesystem()) {
+            final ByteBuffer data = ByteBuffer.wrap(stream.readAllBytes());
+            instance = ByteBufferBlockDevice.wrap(data, true);
+            identity = BuildrootImages.hash(data.duplicate());
+        } catch (final IOException e) {
+            LOGGER.error(e);
+            instance = ByteBufferBlockDevice.create(0, true);
+            identity = null;
+        }
+    }
 }
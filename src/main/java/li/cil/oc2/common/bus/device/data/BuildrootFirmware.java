@@ -1,21 +1,53 @@
 package li.cil.oc2.common.bus.device.data;
 
 import li.cil.oc2.api.bus.device.data.Firmware;
+import li.cil.sedna.api.memory.MemoryAccessException;
 import li.cil.sedna.api.memory.MemoryMap;
 import li.cil.sedna.buildroot.Buildroot;
 import li.cil.sedna.memory.MemoryMaps;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.TextComponent;
 import net.minecraftforge.registries.ForgeRegistryEntry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 
 public final class BuildrootFirmware extends ForgeRegistryEntry<Firmware> implements Firmware {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static final String FIRMWARE_NAME = "fw_jump.bin";
+    private static final String LINUX_IMAGE_NAME = "Image";
+    private static final long LINUX_IMAGE_OFFSET = 0x200000;
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Loads the firmware and kernel images in the background, so that computers booting right after
+     * the server started only need to copy them into their memory.
+     */
+    public static void preloadImages() {
+        BuildrootImages.preload(FIRMWARE_NAME, Buildroot::getFirmware);
+        BuildrootImages.preload(LINUX_IMAGE_NAME, Buildroot::getLinuxImage);
+    }
+
     @Override
     public boolean run(final MemoryMap memory, final long startAddress) {
+        try {
+            MemoryMaps.store(memory, startAddress, BuildrootImages.get(FIRMWARE_NAME, Buildroot::getFirmware));
+            MemoryMaps.store(memory, startAddress + LINUX_IMAGE_OFFSET, BuildrootImages.get(LINUX_IMAGE_NAME, Buildroot::getLinuxImage));
+            return true;
+        } catch (final MemoryAccessException e) {
+            return false;
+        } catch (final IOException e) {
+            LOGGER.error("Failed loading cached images, falling back to reading them directly.", e);
+        }
+
         try {
             MemoryMaps.store(memory, startAddress, Buildroot.getFirmware());
-            MemoryMaps.store(memory, startAddress + 0x200000, Buildroot.getLinuxImage());
+            MemoryMaps.store(memory, startAddress + LINUX_IMAGE_OFFSET, Buildroot.getLinuxImage());
             return true;
         } catch (final IOException e) {
             return false;
@@ -0,0 +1,237 @@
+package li.cil.oc2.common.bus.device.data;
+
+import li.cil.oc2.api.API;
+import net.minecraftforge.fml.ModList;
+import net.minecraftforge.fml.loading.FMLPaths;
+import net.minecraftforge.forgespi.language.IModFileInfo;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Buildroot images, extracted to a cache directory and memory-mapped read-only.
+ * <p>
+ * Images are extracted once per version of their source, together with the hash of their contents.
+ * The source version combines the Sedna version with the size and modification time of the file Sedna
+ * was loaded from, since the version alone does not change for development builds or repackaged jars.
+ * Cached images are checked against their hash before they are used, so partially written or damaged
+ * files are replaced. Since images are mapped instead of read into the heap, they only take up memory
+ * while in use, and processes using the same cache directory share the page cache.
+ * <p>
+ * The hash also identifies the contents of an image, see {@link #getHash}.
+ * <p>
+ * Loaded images are kept for the lifetime of the process, so all virtual machines booting from
+ * the same image copy from the same, already resident, memory.
+ */
+final class BuildrootImages {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CACHE_FOLDER_NAME = API.MOD_ID + "-cache";
+    private static final String SEDNA_MOD_ID = "sedna";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String HASH_EXTENSION = ".sha256";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final int SOURCE_VERSION_HASH_LENGTH = 8;
+
+    private static final Map<String, Image> IMAGES = new ConcurrentHashMap<>();
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r);
+        thread.setDaemon(true);
+        thread.setName("Buildroot Image Loader");
+        return thread;
+    });
+
+    ///////////////////////////////////////////////////////////////////
+
+    @FunctionalInterface
+    interface ImageSource {
+        InputStream open() throws IOException;
+    }
+
+    private record Image(MappedByteBuffer data, String hash) { }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the image with the specified name, extracting it from the specified source if it is
+     * not in the cache yet.
+     *
+     * @param name   the file name of the image in the cache.
+     * @param source the source to extract the image from.
+     * @return a read-only view of the image.
+     * @throws IOException if the image could neither be loaded from the cache nor extracted.
+     */
+    static ByteBuffer get(final String name, final ImageSource source) throws IOException {
+        // Images are shared, so hand out views with their own position.
+        return getOrLoad(name, source).data().duplicate();
+    }
+
+    /**
+     * Returns the hash of the contents of the image with the specified name, loading it first if necessary.
+     *
+     * @param name   the file name of the image in the cache.
+     * @param source the source to extract the image from.
+     * @return the hex encoded hash of the image.
+     * @throws IOException if the image could neither be loaded from the cache nor extracted.
+     */
+    static String getHash(final String name, final ImageSource source) throws IOException {
+        return getOrLoad(name, source).hash();
+    }
+
+    /**
+     * Computes the hash of the specified data, in the same format as {@link #getHash}.
+     *
+     * @param data the data to hash.
+     * @return the hex encoded hash of the data.
+     */
+    static String hash(final ByteBuffer data) {
+        final MessageDigest digest = createDigest();
+        digest.update(data);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Loads the image with the specified name in the background, and reads it into physical memory,
+     * so that later calls to {@link #get(String, ImageSource)} do not have to wait for disk I/O.
+     *
+     * @param name   the file name of the image in the cache.
+     * @param source the source to extract the image from.
+     */
+    static void preload(final String name, final ImageSource source) {
+        LOADER.execute(() -> {
+            try {
+                getOrLoad(name, source).data().load();
+            } catch (final IOException e) {
+                LOGGER.error("Failed preloading image [{}].", name, e);
+            }
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static Image getOrLoad(final String name, final ImageSource source) throws IOException {
+        final Image cached = IMAGES.get(name);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Lock per image, so loading a large image does not hold up others.
+        synchronized (LOCKS.computeIfAbsent(name, key -> new Object())) {
+            Image image = IMAGES.get(name);
+            if (image == null) {
+                image = load(name, source);
+                IMAGES.put(name, image);
+            }
+            return image;
+        }
+    }
+
+    private static Image load(final String name, final ImageSource source) throws IOException {
+        final Path directory = getCacheDirectory(source);
+        final Path imagePath = directory.resolve(name);
+        final Path hashPath = directory.resolve(name + HASH_EXTENSION);
+
+        if (Files.isRegularFile(imagePath) && Files.isRegularFile(hashPath)) {
+            final MappedByteBuffer image = map(imagePath);
+            final String hash = hash(image.duplicate());
+            if (Files.readString(hashPath).trim().equals(hash)) {
+                return new Image(image, hash);
+            }
+
+            LOGGER.warn("Cached image [{}] does not match its hash, extracting it again.", imagePath);
+        }
+
+        final String hash = extract(source, imagePath, hashPath);
+        return new Image(map(imagePath), hash);
+    }
+
+    private static String extract(final ImageSource source, final Path imagePath, final Path hashPath) throws IOException {
+        Files.createDirectories(imagePath.getParent());
+
+        // Other processes may use the same cache, so only ever replace files atomically.
+        final Path temporaryImagePath = getTemporaryPath(imagePath);
+        final Path temporaryHashPath = getTemporaryPath(hashPath);
+        try {
+            final MessageDigest digest = createDigest();
+            try (final InputStream stream = new DigestInputStream(source.open(), digest)) {
+                Files.copy(stream, temporaryImagePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            final String hash = HexFormat.of().formatHex(digest.digest());
+            Files.writeString(temporaryHashPath, hash);
+
+            Files.move(temporaryImagePath, imagePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(temporaryHashPath, hashPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            return hash;
+        } finally {
+            Files.deleteIfExists(temporaryImagePath);
+            Files.deleteIfExists(temporaryHashPath);
+        }
+    }
+
+    private static MappedByteBuffer map(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static Path getCacheDirectory(final ImageSource source) throws IOException {
+        return FMLPaths.GAMEDIR.get().resolve(CACHE_FOLDER_NAME).resolve("buildroot-" + getSourceVersion(source));
+    }
+
+    private static String getSourceVersion(final ImageSource source) throws IOException {
+        final String version = ModList.get().getModContainerById(SEDNA_MOD_ID)
+            .map(container -> container.getModInfo().getVersion().toString())
+            .orElse("unknown");
+
+        final MessageDigest digest = createDigest();
+        final IModFileInfo modFile = ModList.get().getModFileById(SEDNA_MOD_ID);
+        final Path modFilePath = modFile != null ? modFile.getFile().getFilePath() : null;
+        if (modFilePath != null && Files.isRegularFile(modFilePath)) {
+            digest.update(ByteBuffer.allocate(2 * Long.BYTES)
+                .putLong(Files.size(modFilePath))
+                .putLong(Files.getLastModifiedTime(modFilePath).toMillis())
+                .flip());
+        } else {
+            // Not loaded from a jar, e.g. in a development environment, so all we can go by is the data itself.
+            try (final InputStream stream = new DigestInputStream(source.open(), digest)) {
+                stream.transferTo(OutputStream.nullOutputStream());
+            }
+        }
+
+        // Only used to tell versions apart, so a short prefix of the hash is plenty.
+        return version + "-" + HexFormat.of().formatHex(digest.digest(), 0, SOURCE_VERSION_HASH_LENGTH);
+    }
+
+    private static Path getTemporaryPath(final Path path) {
+        return path.resolveSibling(path.getFileName() + "." + ProcessHandle.current().pid() + TEMPORARY_EXTENSION);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
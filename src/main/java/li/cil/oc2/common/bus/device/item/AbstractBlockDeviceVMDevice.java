@@ -4,15 +4,22 @@ import li.cil.oc2.api.bus.device.ItemDevice;
 import li.cil.oc2.api.bus.device.vm.VMDevice;
 import li.cil.oc2.api.bus.device.vm.VMDeviceLoadResult;
 import li.cil.oc2.api.bus.device.vm.context.VMContext;
+import li.cil.oc2.common.Config;
 import li.cil.oc2.common.Constants;
 import li.cil.oc2.common.bus.device.util.IdentityProxy;
 import li.cil.oc2.common.bus.device.util.OptionalAddress;
 import li.cil.oc2.common.bus.device.util.OptionalInterrupt;
 import li.cil.oc2.common.serialization.BlobStorage;
 import li.cil.oc2.common.serialization.NBTSerialization;
-import li.cil.oc2.common.util.Event;
+import li.cil.oc2.common.util.DiskStatistics;
+import li.cil.oc2.common.util.DiskThrottle;
+import li.cil.oc2.common.util.Location;
 import li.cil.oc2.common.util.NBTTagIds;
+import li.cil.oc2.common.util.NBTUtils;
+import li.cil.oc2.common.vm.VMRunner;
+import li.cil.oc2.common.vm.block.CompressedBlockDevice;
 import li.cil.sedna.api.device.BlockDevice;
+import li.cil.sedna.device.block.ByteBufferBlockDevice;
 import li.cil.sedna.device.virtio.VirtIOBlockDevice;
 import net.minecraft.nbt.CompoundTag;
 import org.apache.logging.log4j.LogManager;
@@ -22,7 +29,11 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
 public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TIdentity> extends IdentityProxy<TIdentity> implements VMDevice, ItemDevice {
     private static final Logger LOGGER = LogManager.getLogger();
@@ -31,10 +42,13 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
     private static final String ADDRESS_TAG_NAME = "address";
     private static final String INTERRUPT_TAG_NAME = "interrupt";
     private static final String BLOB_HANDLE_TAG_NAME = "blob";
+    private static final String BLOB_FORMAT_TAG_NAME = "blobFormat";
 
     ///////////////////////////////////////////////////////////////
 
     protected VirtIOBlockDevice device;
+    private final DiskStatistics statistics;
+    private DiskThrottle throttle = new DiskThrottle(0, 0);
 
     ///////////////////////////////////////////////////////////////
 
@@ -45,11 +59,19 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
 
     // Offline persisted data.
     @Nullable protected UUID blobHandle;
+    @Nullable protected BlobFormat blobFormat;
 
     ///////////////////////////////////////////////////////////////
 
-    protected AbstractBlockDeviceVMDevice(final TIdentity identity) {
+    protected AbstractBlockDeviceVMDevice(final TIdentity identity, final String type, final Supplier<Optional<Location>> location) {
         super(identity);
+        this.statistics = new DiskStatistics(type, location);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    public DiskStatistics getStatistics() {
+        return statistics;
     }
 
     ///////////////////////////////////////////////////////////////////
@@ -76,11 +98,14 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
             NBTSerialization.deserialize(deviceTag, device);
         }
 
+        statistics.register();
+
         return VMDeviceLoadResult.success();
     }
 
     @Override
     public void unmount() {
+        statistics.unregister();
         suspend();
         deviceTag = null;
         address.clear();
@@ -89,6 +114,10 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
 
     @Override
     public void suspend() {
+        if (device == null) {
+            return;
+        }
+
         closeBlockDevice();
 
         if (blobHandle != null) {
@@ -100,6 +129,7 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
     public void exportToItemStack(final CompoundTag nbt) {
         if (blobHandle != null) {
             nbt.putUUID(BLOB_HANDLE_TAG_NAME, blobHandle);
+            NBTUtils.putEnum(nbt, BLOB_FORMAT_TAG_NAME, blobFormat);
         }
     }
 
@@ -107,6 +137,7 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
     public void importFromItemStack(final CompoundTag nbt) {
         if (nbt.hasUUID(BLOB_HANDLE_TAG_NAME)) {
             blobHandle = nbt.getUUID(BLOB_HANDLE_TAG_NAME);
+            blobFormat = NBTUtils.getEnum(nbt, BLOB_FORMAT_TAG_NAME, BlobFormat.class);
         }
     }
 
@@ -116,6 +147,7 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
 
         if (blobHandle != null) {
             tag.putUUID(BLOB_HANDLE_TAG_NAME, blobHandle);
+            NBTUtils.putEnum(tag, BLOB_FORMAT_TAG_NAME, blobFormat);
         }
 
         if (device != null) {
@@ -138,6 +170,7 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
     public void deserializeNBT(final CompoundTag tag) {
         if (tag.hasUUID(BLOB_HANDLE_TAG_NAME)) {
             blobHandle = tag.getUUID(BLOB_HANDLE_TAG_NAME);
+            blobFormat = NBTUtils.getEnum(tag, BLOB_FORMAT_TAG_NAME, BlobFormat.class);
         }
 
         if (tag.contains(DEVICE_TAG_NAME, NBTTagIds.TAG_COMPOUND)) {
@@ -155,6 +188,82 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
 
     protected abstract TBlock createBlockDevice() throws IOException;
 
+    /**
+     * Creates the rate limit for accesses to the block device of this device. Called whenever the
+     * device is mounted, so configuration changes apply to devices mounted after the change.
+     *
+     * @return the rate limit of this device.
+     */
+    protected DiskThrottle createThrottle() {
+        return new DiskThrottle(0, 0);
+    }
+
+    /**
+     * Opens the blob of this device as a block device with the specified capacity.
+     * <p>
+     * New blobs are stored compressed if devices with this capacity are configured to be, see
+     * {@link Config#minCompressedDriveSize}. Existing blobs keep the format they were created with,
+     * see {@link #blobFormat}.
+     *
+     * @param capacity the capacity of the block device.
+     * @param readonly whether the block device should be read-only.
+     * @return the block device.
+     * @throws IOException if opening the blob fails.
+     */
+    protected BlockDevice createBlobBlockDevice(final int capacity, final boolean readonly) throws IOException {
+        final FileChannel channel = openBlob();
+        try {
+            if (blobFormat == null) {
+                final boolean isNewCompressed = channel.size() == 0 &&
+                    Config.minCompressedDriveSize > 0 && capacity >= Config.minCompressedDriveSize;
+                blobFormat = isNewCompressed ? BlobFormat.COMPRESSED : BlobFormat.RAW;
+            }
+            if (blobFormat == BlobFormat.COMPRESSED) {
+                return CompressedBlockDevice.open(channel, capacity, readonly);
+            }
+        } catch (final IOException e) {
+            BlobStorage.close(blobHandle);
+            throw e;
+        }
+
+        // Mapping takes its own reference, so release ours, but only after, to keep the blob open.
+        try {
+            return ByteBufferBlockDevice.wrap(BlobStorage.map(blobHandle, capacity), readonly);
+        } finally {
+            BlobStorage.close(blobHandle);
+        }
+    }
+
+    /**
+     * Opens the blob of this device, allocating a new one if there is none yet.
+     * <p>
+     * This acquires a reference to the blob, which must be released by calling {@link BlobStorage#close(UUID)}.
+     *
+     * @return the file channel of the blob.
+     * @throws IOException if opening the blob fails.
+     */
+    protected FileChannel openBlob() throws IOException {
+        final UUID handle = BlobStorage.validateHandle(blobHandle);
+        if (!handle.equals(blobHandle)) {
+            // New blob, so any recorded format is stale.
+            blobHandle = handle;
+            blobFormat = null;
+        }
+        return BlobStorage.getOrOpen(blobHandle);
+    }
+
+    /**
+     * Replaces the block device backing the mounted device, e.g. when changing media.
+     *
+     * @param block the new block device.
+     * @throws IOException if the virtual device fails to switch to the new block device.
+     */
+    protected void setBlockDevice(final BlockDevice block) throws IOException {
+        if (device != null) {
+            device.setBlock(wrapBlockDevice(block));
+        }
+    }
+
     protected void closeBlockDevice() {
         if (device == null) {
             return;
@@ -169,6 +278,10 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
         device = null;
     }
 
+    /**
+     * Called for every request to the block device of this device, on the thread running the
+     * virtual machine. Implementations must be cheap and thread-safe, e.g. only set a flag.
+     */
     protected void handleDataAccess() {
     }
 
@@ -180,9 +293,8 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
         }
 
         try {
-            final ListenableBlockDevice listenableData = new ListenableBlockDevice(createBlockDevice());
-            listenableData.onAccess.add(this::handleDataAccess);
-            device = new VirtIOBlockDevice(context.getMemoryMap(), listenableData);
+            throttle = createThrottle();
+            device = new VirtIOBlockDevice(context.getMemoryMap(), wrapBlockDevice(createBlockDevice()));
         } catch (final IOException e) {
             LOGGER.error(e);
             return false;
@@ -191,15 +303,42 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
         return true;
     }
 
+    private BlockDevice wrapBlockDevice(final BlockDevice block) {
+        return new AccountingBlockDevice(block, throttle);
+    }
+
     ///////////////////////////////////////////////////////////////
 
-    private static final class ListenableBlockDevice implements BlockDevice {
-        private final BlockDevice inner;
+    /**
+     * The format of the data in a blob, recorded when the blob is created.
+     * <p>
+     * Raw blobs are mapped and handed to the guest as-is, so the guest controls all of their contents.
+     * The format is therefore never guessed from the data, only files known to be written by us are
+     * parsed. Blobs without a recorded format predate the other formats, and hold raw data.
+     */
+    protected enum BlobFormat {
+        RAW,
+        COMPRESSED,
+        OVERLAY,
+    }
 
-        public final Event onAccess = new Event();
+    /**
+     * Tracks accesses to a block device, for statistics, rate limiting and access notifications.
+     * <p>
+     * The virtual device opens a stream per request. To avoid allocating per request, the wrapping
+     * streams are reused once closed.
+     */
+    private final class AccountingBlockDevice implements BlockDevice {
+        private final BlockDevice inner;
+        private final DiskThrottle throttle;
+        private final BooleanSupplier canResume = this::canResume;
+        private final AccountingInputStream inputStream = new AccountingInputStream();
+        private final AccountingOutputStream outputStream = new AccountingOutputStream();
+        private volatile boolean isThrottled;
 
-        private ListenableBlockDevice(final BlockDevice inner) {
+        private AccountingBlockDevice(final BlockDevice inner, final DiskThrottle throttle) {
             this.inner = inner;
+            this.throttle = throttle;
         }
 
         @Override
@@ -214,15 +353,21 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
 
         @Override
         public InputStream getInputStream(final long offset) {
-            final ListenableInputStream stream = new ListenableInputStream(inner.getInputStream(offset));
-            stream.onAccess.add(onAccess);
+            statistics.recordReadOperation();
+            handleOperation();
+
+            final AccountingInputStream stream = inputStream.isOpen() ? new AccountingInputStream() : inputStream;
+            stream.open(inner.getInputStream(offset));
             return stream;
         }
 
         @Override
         public OutputStream getOutputStream(final long offset) {
-            final ListenableOutputStream stream = new ListenableOutputStream(inner.getOutputStream(offset));
-            stream.onAccess.add(onAccess);
+            statistics.recordWriteOperation();
+            handleOperation();
+
+            final AccountingOutputStream stream = outputStream.isOpen() ? new AccountingOutputStream() : outputStream;
+            stream.open(inner.getOutputStream(offset));
             return stream;
         }
 
@@ -235,111 +380,149 @@ public abstract class AbstractBlockDeviceVMDevice<TBlock extends BlockDevice, TI
         public void close() throws IOException {
             inner.close();
         }
-    }
-
-    private static final class ListenableInputStream extends InputStream {
-        private final InputStream inner;
 
-        public final Event onAccess = new Event();
-
-        private ListenableInputStream(final InputStream inner) {
-            this.inner = inner;
+        private void handleOperation() {
+            handleDataAccess();
+            if (throttle.isEnabled()) {
+                handleConsumed(throttle.consumeOperation());
+            }
         }
 
-        @Override
-        public int read() throws IOException {
-            onAccess();
-            return inner.read();
+        private void handleRead(final int count) {
+            if (count > 0) {
+                statistics.recordRead(count);
+                if (throttle.isEnabled()) {
+                    handleConsumed(throttle.consumeBytes(count));
+                }
+            }
         }
 
-        @Override
-        public int read(final byte[] b) throws IOException {
-            onAccess();
-            return inner.read(b);
+        private void handleWritten(final int count) {
+            statistics.recordWritten(count);
+            if (throttle.isEnabled()) {
+                handleConsumed(throttle.consumeBytes(count));
+            }
         }
 
-        @Override
-        public int read(final byte[] b, final int off, final int len) throws IOException {
-            onAccess();
-            return inner.read(b, off, len);
-        }
+        private void handleConsumed(final boolean hasCapacity) {
+            if (hasCapacity) {
+                return;
+            }
 
-        @Override
-        public long skip(final long n) throws IOException {
-            onAccess();
-            return inner.skip(n);
+            // Requests are processed synchronously by the virtual device, so we cannot hold them
+            // back without blocking the runner thread. Let this one pass and suspend the VM instead.
+            if (!isThrottled) {
+                isThrottled = true;
+                statistics.recordThrottled();
+            }
+            VMRunner.yieldUntil(canResume);
         }
 
-        @Override
-        public int available() throws IOException {
-            return inner.available();
-        }
-
-        @Override
-        public void close() throws IOException {
-            inner.close();
-        }
-
-        @Override
-        public synchronized void mark(final int limit) {
-            inner.mark(limit);
-        }
-
-        @Override
-        public synchronized void reset() throws IOException {
-            onAccess();
-            inner.reset();
-        }
-
-        @Override
-        public boolean markSupported() {
-            return inner.markSupported();
-        }
-
-        private void onAccess() {
-            onAccess.run();
-        }
-    }
-
-    private static final class ListenableOutputStream extends OutputStream {
-        private final OutputStream inner;
-
-        public final Event onAccess = new Event();
-
-        private ListenableOutputStream(final OutputStream inner) {
-            this.inner = inner;
-        }
-
-        @Override
-        public void write(final int b) throws IOException {
-            onAccess();
-            inner.write(b);
-        }
-
-        @Override
-        public void write(final byte[] b) throws IOException {
-            onAccess();
-            inner.write(b);
-        }
-
-        @Override
-        public void write(final byte[] b, final int off, final int len) throws IOException {
-            onAccess();
-            inner.write(b, off, len);
-        }
-
-        @Override
-        public void flush() throws IOException {
-            inner.flush();
-        }
-
-        @Override
-        public void close() throws IOException {
-            inner.close();
+        private boolean canResume() {
+            if (throttle.hasCapacity()) {
+                isThrottled = false;
+                return true;
+            }
+            return false;
         }
 
-        private void onAccess() {
-            onAccess.run();
+        private final class AccountingInputStream extends InputStream {
+            @Nullable private InputStream stream;
+
+            public boolean isOpen() {
+                return stream != null;
+            }
+
+            public void open(final InputStream stream) {
+                this.stream = stream;
+            }
+
+            @Override
+            public int read() throws IOException {
+                final int result = getStream().read();
+                handleRead(result >= 0 ? 1 : 0);
+                return result;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int result = getStream().read(b, off, len);
+                handleRead(result);
+                return result;
+            }
+
+            @Override
+            public long skip(final long n) throws IOException {
+                return getStream().skip(n);
+            }
+
+            @Override
+            public int available() throws IOException {
+                return getStream().available();
+            }
+
+            @Override
+            public void close() throws IOException {
+                final InputStream value = stream;
+                stream = null;
+                if (value != null) {
+                    value.close();
+                }
+            }
+
+            private InputStream getStream() throws IOException {
+                final InputStream value = stream;
+                if (value == null) {
+                    throw new IOException("Stream closed");
+                }
+                return value;
+            }
+        }
+
+        private final class AccountingOutputStream extends OutputStream {
+            @Nullable private OutputStream stream;
+
+            public boolean isOpen() {
+                return stream != null;
+            }
+
+            public void open(final OutputStream stream) {
+                this.stream = stream;
+            }
+
+            @Override
+            public void write(final int b) throws IOException {
+                getStream().write(b);
+                handleWritten(1);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                getStream().write(b, off, len);
+                handleWritten(len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                getStream().flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                final OutputStream value = stream;
+                stream = null;
+                if (value != null) {
+                    value.close();
+                }
+            }
+
+            private OutputStream getStream() throws IOException {
+                final OutputStream value = stream;
+                if (value == null) {
+                    throw new IOException("Stream closed");
+                }
+                return value;
+            }
         }
     }
 }
@@ -14,7 +14,9 @@ import li.cil.oc2.common.bus.device.util.OptionalAddress;
 import li.cil.oc2.common.bus.device.util.OptionalInterrupt;
 import li.cil.oc2.common.capabilities.Capabilities;
 import li.cil.oc2.common.serialization.NBTSerialization;
+import li.cil.oc2.common.util.Location;
 import li.cil.oc2.common.util.NBTTagIds;
+import li.cil.oc2.common.util.NetworkStatistics;
 import li.cil.sedna.device.virtio.VirtIONetworkDevice;
 import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
@@ -25,6 +27,8 @@ import net.minecraftforge.common.util.LazyOptional;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 public abstract class AbstractNetworkInterfaceItemDevice extends IdentityProxy<ItemStack> implements VMDevice, ItemDevice, ICapabilityProvider {
     private static final String DEVICE_TAG_NAME = "device";
@@ -33,9 +37,13 @@ public abstract class AbstractNetworkInterfaceItemDevice extends IdentityProxy<I
 
     ///////////////////////////////////////////////////////////////
 
-    private VirtIONetworkDevice device;
+    // Serialization may happen off the thread moving frames. All accesses to the device, including
+    // replacing it, go through the lock, so frames never touch a device that is being serialized.
+    private final Object deviceLock = new Object();
+    private volatile VirtIONetworkDevice device;
     private final NetworkInterface networkInterface = new NetworkInterfaceImpl();
-    private boolean isRunning;
+    private final NetworkStatistics statistics;
+    private volatile boolean isRunning;
 
     private final OptionalAddress address = new OptionalAddress();
     private final OptionalInterrupt interrupt = new OptionalInterrupt();
@@ -43,8 +51,9 @@ public abstract class AbstractNetworkInterfaceItemDevice extends IdentityProxy<I
 
     ///////////////////////////////////////////////////////////////
 
-    protected AbstractNetworkInterfaceItemDevice(final ItemStack identity) {
+    protected AbstractNetworkInterfaceItemDevice(final ItemStack identity, final String type, final Supplier<Optional<Location>> location) {
         super(identity);
+        this.statistics = new NetworkStatistics(type, location, true);
     }
 
     ///////////////////////////////////////////////////////////////
@@ -61,29 +70,35 @@ public abstract class AbstractNetworkInterfaceItemDevice extends IdentityProxy<I
 
     @Override
     public VMDeviceLoadResult mount(final VMContext context) {
-        device = new VirtIONetworkDevice(context.getMemoryMap());
+        final VirtIONetworkDevice newDevice = new VirtIONetworkDevice(context.getMemoryMap());
 
-        if (!address.claim(context, device)) {
+        if (!address.claim(context, newDevice)) {
             return VMDeviceLoadResult.fail();
         }
 
         if (interrupt.claim(context)) {
-            device.getInterrupt().set(interrupt.getAsInt(), context.getInterruptController());
+            newDevice.getInterrupt().set(interrupt.getAsInt(), context.getInterruptController());
         } else {
             return VMDeviceLoadResult.fail();
         }
 
         if (deviceTag != null) {
-            NBTSerialization.deserialize(deviceTag, device);
+            NBTSerialization.deserialize(deviceTag, newDevice);
+        }
+
+        synchronized (deviceLock) {
+            device = newDevice;
         }
 
         context.getEventBus().register(this);
+        statistics.register();
 
         return VMDeviceLoadResult.success();
     }
 
     @Override
     public void unmount() {
+        statistics.unregister();
         suspend();
         isRunning = false;
         address.clear();
@@ -92,7 +107,9 @@ public abstract class AbstractNetworkInterfaceItemDevice extends IdentityProxy<I
 
     @Override
     public void suspend() {
-        device = null;
+        synchronized (deviceLock) {
+            device = null;
+        }
     }
 
     @Subscribe
@@ -114,8 +131,10 @@ public abstract class AbstractNetworkInterfaceItemDevice extends IdentityProxy<I
     public CompoundTag serializeNBT() {
         final CompoundTag tag = new CompoundTag();
 
-        if (device != null) {
-            deviceTag = NBTSerialization.serialize(device);
+        synchronized (deviceLock) {
+            if (device != null) {
+                deviceTag = NBTSerialization.serialize(device);
+            }
         }
         if (deviceTag != null) {
             tag.put(DEVICE_TAG_NAME, deviceTag);
@@ -149,22 +168,37 @@ public abstract class AbstractNetworkInterfaceItemDevice extends IdentityProxy<I
         return networkInterface;
     }
 
+    protected NetworkStatistics getStatistics() {
+        return statistics;
+    }
+
     ///////////////////////////////////////////////////////////////
 
     private final class NetworkInterfaceImpl implements NetworkInterface {
         @Override
         public byte[] readEthernetFrame() {
-            if (device != null && isRunning) {
-                return device.readEthernetFrame();
-            } else {
-                return null;
+            synchronized (deviceLock) {
+                if (device == null || !isRunning) {
+                    return null;
+                }
+
+                final byte[] frame = device.readEthernetFrame();
+                if (frame != null) {
+                    statistics.recordSent(frame);
+                }
+                return frame;
             }
         }
 
         @Override
         public void writeEthernetFrame(final NetworkInterface source, final byte[] frame, final int timeToLive) {
-            if (device != null && isRunning) {
-                device.writeEthernetFrame(frame);
+            synchronized (deviceLock) {
+                if (device != null && isRunning) {
+                    statistics.recordReceived(frame);
+                    device.writeEthernetFrame(frame);
+                } else {
+                    statistics.recordDroppedNotRunning();
+                }
             }
         }
     }
@@ -1,28 +1,27 @@
 package li.cil.oc2.common.bus.device.item;
 
-import li.cil.oc2.common.serialization.BlobStorage;
+import li.cil.oc2.common.Config;
+import li.cil.oc2.common.util.DiskThrottle;
 import li.cil.oc2.common.util.Location;
 import li.cil.oc2.common.util.SoundEvents;
 import li.cil.oc2.common.util.ThrottledSoundEmitter;
-import li.cil.sedna.device.block.ByteBufferBlockDevice;
+import li.cil.sedna.api.device.BlockDevice;
 import net.minecraft.world.item.ItemStack;
 
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.time.Duration;
 import java.util.Optional;
 import java.util.function.Supplier;
 
-public class HardDriveVMDevice extends AbstractBlockDeviceVMDevice<ByteBufferBlockDevice, ItemStack> {
+public class HardDriveVMDevice extends AbstractBlockDeviceVMDevice<BlockDevice, ItemStack> {
     private final int size;
-    private final boolean readonly;
+    protected final boolean readonly;
     private final ThrottledSoundEmitter soundEmitter;
 
     ///////////////////////////////////////////////////////////////////
 
     public HardDriveVMDevice(final ItemStack identity, final int size, final boolean readonly, final Supplier<Optional<Location>> location) {
-        super(identity);
+        super(identity, "hard_drive", location);
         this.size = size;
         this.readonly = readonly;
         this.soundEmitter = new ThrottledSoundEmitter(location, SoundEvents.HDD_ACCESS.get())
@@ -32,15 +31,17 @@ public class HardDriveVMDevice extends AbstractBlockDeviceVMDevice<ByteBufferBlo
     ///////////////////////////////////////////////////////////////////
 
     @Override
-    protected ByteBufferBlockDevice createBlockDevice() throws IOException {
-        blobHandle = BlobStorage.validateHandle(blobHandle);
-        final FileChannel channel = BlobStorage.getOrOpen(blobHandle);
-        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
-        return ByteBufferBlockDevice.wrap(buffer, readonly);
+    protected BlockDevice createBlockDevice() throws IOException {
+        return createBlobBlockDevice(size, readonly);
+    }
+
+    @Override
+    protected DiskThrottle createThrottle() {
+        return new DiskThrottle(Config.hardDriveBytesPerSecond, Config.hardDriveOperationsPerSecond);
     }
 
     @Override
     protected void handleDataAccess() {
-        soundEmitter.play();
+        soundEmitter.request();
     }
 }
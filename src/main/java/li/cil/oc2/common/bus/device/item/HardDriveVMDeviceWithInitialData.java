@@ -1,90 +1,57 @@
 package li.cil.oc2.common.bus.device.item;
 
-import com.google.common.eventbus.Subscribe;
-import com.google.common.io.ByteStreams;
-import li.cil.oc2.api.bus.device.vm.event.VMResumedRunningEvent;
+import li.cil.oc2.common.serialization.BlobStorage;
 import li.cil.oc2.common.util.Location;
+import li.cil.oc2.common.vm.block.OverlayBlockDevice;
 import li.cil.sedna.api.device.BlockDevice;
-import li.cil.sedna.device.block.ByteBufferBlockDevice;
 import net.minecraft.world.item.ItemStack;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.function.Supplier;
 
 public final class HardDriveVMDeviceWithInitialData extends HardDriveVMDevice {
-    private static final Logger LOGGER = LogManager.getLogger();
-    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(r -> {
-        final Thread thread = new Thread(r, "Hard Drive Initializer");
-        thread.setDaemon(false);
-        return thread;
-    });
-
     private final BlockDevice base;
-    private Future<Void> copyJob;
+    @Nullable private final String baseIdentity;
 
     ///////////////////////////////////////////////////////////////////
 
-    public HardDriveVMDeviceWithInitialData(final ItemStack identity, final BlockDevice base, final boolean readonly, final Supplier<Optional<Location>> location) {
+    public HardDriveVMDeviceWithInitialData(final ItemStack identity, final BlockDevice base, @Nullable final String baseIdentity, final boolean readonly, final Supplier<Optional<Location>> location) {
         super(identity, (int) base.getCapacity(), readonly, location);
         this.base = base;
-    }
-
-    @Subscribe
-    public void handleResumedRunningEvent(final VMResumedRunningEvent event) {
-        joinCopyJob();
+        this.baseIdentity = baseIdentity;
     }
 
     ///////////////////////////////////////////////////////////////////
 
     @Override
-    protected ByteBufferBlockDevice createBlockDevice() throws IOException {
-        final boolean isInitializing = blobHandle == null;
-        final ByteBufferBlockDevice device = super.createBlockDevice();
-        if (isInitializing) {
-            copyJob = CompletableFuture.runAsync(() -> {
-                try {
-                    try (final InputStream input = base.getInputStream(0);
-                         final OutputStream output = device.getOutputStream(0)) {
-                        ByteStreams.copy(input, output);
-                    }
-                } catch (final IOException e) {
-                    LOGGER.error(e);
-                }
-            }, WORKERS);
-        }
-        return device;
-    }
-
-    @Override
-    protected void closeBlockDevice() {
-        // Join the copy job before releasing the device to avoid writes from thread to closed device.
-        // Since we use memory mapped memory, closing the device leads to it holding a dead pointer, meaning
-        // further access to it will hard-crash the JVM.
-        joinCopyJob();
+    protected BlockDevice createBlockDevice() throws IOException {
+        final FileChannel channel = openBlob();
 
-        super.closeBlockDevice();
-    }
-
-    ///////////////////////////////////////////////////////////////////
+        try {
+            // Drives initialized before overlays were a thing hold a full copy of the base data.
+            if (blobFormat == null) {
+                blobFormat = channel.size() == 0 ? BlobFormat.OVERLAY : BlobFormat.RAW;
+            }
 
-    private void joinCopyJob() {
-        if (copyJob != null) {
-            try {
-                copyJob.get();
-            } catch (final Throwable e) {
-                LOGGER.error(e);
-            } finally {
-                copyJob = null;
+            // Only the blocks written by the guest are stored in the blob, everything else is read from
+            // the shared base data, so the drive is usable immediately, without copying the base first.
+            // Fails for overlays of a different base, the drive can't be used then, but is left intact.
+            if (blobFormat == BlobFormat.OVERLAY) {
+                return OverlayBlockDevice.open(base, baseIdentity, channel, readonly);
             }
+        } catch (final IOException e) {
+            BlobStorage.close(blobHandle);
+            throw e;
+        }
+
+        // Mapping takes its own reference, so release ours, but only after, to keep the blob open.
+        try {
+            return super.createBlockDevice();
+        } finally {
+            BlobStorage.close(blobHandle);
         }
     }
 }
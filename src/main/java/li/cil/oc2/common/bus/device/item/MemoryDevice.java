@@ -18,7 +18,6 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.util.UUID;
 
 public final class MemoryDevice extends IdentityProxy<ItemStack> implements VMDevice, ItemDevice {
@@ -76,12 +75,14 @@ public final class MemoryDevice extends IdentityProxy<ItemStack> implements VMDe
 
     @Override
     public void suspend() {
-        if (device != null) {
-            try {
-                device.close();
-            } catch (final Exception e) {
-                LOGGER.error(e);
-            }
+        if (device == null) {
+            return;
+        }
+
+        try {
+            device.close();
+        } catch (final Exception e) {
+            LOGGER.error(e);
         }
 
         if (blobHandle != null) {
@@ -124,8 +125,7 @@ public final class MemoryDevice extends IdentityProxy<ItemStack> implements VMDe
 
         try {
             blobHandle = BlobStorage.validateHandle(blobHandle);
-            final FileChannel channel = BlobStorage.getOrOpen(blobHandle);
-            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            final MappedByteBuffer buffer = BlobStorage.map(blobHandle, size);
             device = new ByteBufferMemory(size, buffer);
         } catch (final IOException e) {
             return false;
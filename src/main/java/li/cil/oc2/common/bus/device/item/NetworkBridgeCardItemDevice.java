@@ -0,0 +1,246 @@
+package li.cil.oc2.common.bus.device.item;
+
+import li.cil.oc2.api.bus.device.object.Callback;
+import li.cil.oc2.api.bus.device.object.DocumentedDevice;
+import li.cil.oc2.api.capabilities.NetworkInterface;
+import li.cil.oc2.common.Config;
+import li.cil.oc2.common.capabilities.Capabilities;
+import li.cil.oc2.common.util.Location;
+import li.cil.oc2.common.util.NetworkPumps;
+import li.cil.oc2.common.util.NetworkStatistics;
+import li.cil.oc2.common.util.UdpFrameBridge;
+import net.minecraft.core.Direction;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.common.capabilities.Capability;
+import net.minecraftforge.common.capabilities.ICapabilityProvider;
+import net.minecraftforge.common.util.LazyOptional;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Connects the network the card is attached to with a network in another server instance on the same machine.
+ * <p>
+ * Only a single bridge card per server is active at any time, the one mounted first, using a {@link UdpFrameBridge}
+ * with the ports configured by the server admin. It sends the frames it receives to the other server, and passes
+ * on the frames from the other server. Other bridge cards do neither, and drop the frames they receive, since
+ * there is no telling whether they are in the same network as the active card, which would lead to duplicated
+ * frames. They stand by, and the one mounted next becomes active when the active card is unmounted. Bridge cards
+ * only do this while the computer they are installed in is running.
+ * <p>
+ * Frames passed on from the other server are remembered, and never sent back to it, in case they find their way
+ * back to the active card, e.g. via a loop in the network.
+ */
+public final class NetworkBridgeCardItemDevice extends AbstractItemRPCDevice implements DocumentedDevice, ICapabilityProvider {
+    private static final String GET_STATISTICS = "getStatistics";
+    private static final String IS_ACTIVE = "isActive";
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final NetworkInterface networkInterface = new NetworkInterfaceImpl();
+    private final NetworkStatistics statistics;
+    private final ArrayBlockingQueue<byte[]> receivedFrames = new ArrayBlockingQueue<>(Config.networkBridgeQueueSize);
+    private volatile boolean isMounted;
+
+    ///////////////////////////////////////////////////////////////////
+
+    public NetworkBridgeCardItemDevice(final ItemStack identity, final Supplier<Optional<Location>> location) {
+        super(identity, "network_bridge");
+        this.statistics = new NetworkStatistics("network_bridge_card", location, true);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    @Nonnull
+    @Override
+    public <T> LazyOptional<T> getCapability(@Nonnull final Capability<T> capability, @Nullable final Direction side) {
+        if (capability == Capabilities.NETWORK_INTERFACE && side != null) {
+            return LazyOptional.of(() -> networkInterface).cast();
+        }
+
+        return LazyOptional.empty();
+    }
+
+    @Override
+    public void mount() {
+        isMounted = true;
+        statistics.register();
+        BridgeManager.registerEndpoint(this);
+    }
+
+    @Override
+    public void unmount() {
+        BridgeManager.unregisterEndpoint(this);
+        statistics.unregister();
+        isMounted = false;
+        receivedFrames.clear();
+    }
+
+    @Override
+    public void suspend() {
+        unmount();
+    }
+
+    @Callback(name = GET_STATISTICS, synchronize = false)
+    public NetworkStatistics.Snapshot getStatistics() {
+        return statistics.snapshot();
+    }
+
+    @Callback(name = IS_ACTIVE, synchronize = false)
+    public boolean isActive() {
+        return BridgeManager.isActiveEndpoint(this);
+    }
+
+    @Override
+    public void getDeviceDocumentation(final DeviceVisitor visitor) {
+        visitor.visitCallback(IS_ACTIVE)
+            .description("Get whether this is the active bridge card. Only one bridge card per server is active, " +
+                "other bridge cards drop all frames.")
+            .returnValueDescription("true if this card bridges frames; false otherwise.");
+        visitor.visitCallback(GET_STATISTICS)
+            .description("Get the traffic counters of this bridge. Received frames are frames sent to the other " +
+                "server, sent frames are frames received from the other server.")
+            .returnValueDescription("the received and sent frame and byte counts.");
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private void handleBridgedFrame(final byte[] frame) {
+        if (!receivedFrames.offer(frame)) {
+            statistics.recordThrottled();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final class NetworkInterfaceImpl implements NetworkInterface {
+        @Nullable
+        @Override
+        public byte[] readEthernetFrame() {
+            final byte[] frame = receivedFrames.poll();
+            if (frame != null) {
+                statistics.recordSent(frame);
+            }
+            return frame;
+        }
+
+        @Override
+        public void writeEthernetFrame(final NetworkInterface source, final byte[] frame, final int timeToLive) {
+            if (!isMounted || !BridgeManager.isActiveEndpoint(NetworkBridgeCardItemDevice.this)) {
+                statistics.recordDroppedNotRunning();
+                return;
+            }
+
+            // Frames are shared by reference, so this catches frames we passed on ourselves.
+            if (timeToLive <= 0 || BridgeManager.isBridgedFrame(frame)) {
+                return;
+            }
+
+            statistics.recordReceived(frame);
+            if (!BridgeManager.send(frame)) {
+                statistics.recordThrottled();
+            }
+        }
+    }
+
+    @Mod.EventBusSubscriber
+    private static final class BridgeManager {
+        private static final Logger LOGGER = LogManager.getLogger();
+
+        // Guards opening and closing the bridge. Endpoints are read without it, from the receiver thread of the bridge.
+        private static final Object LOCK = new Object();
+        // The first endpoint is the active one, the others stand by in mount order.
+        private static final List<NetworkBridgeCardItemDevice> ENDPOINTS = new CopyOnWriteArrayList<>();
+        // Weak keys compare arrays by identity, so this tracks exactly the frames we passed on.
+        private static final Set<byte[]> BRIDGED_FRAMES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+        @Nullable private static volatile UdpFrameBridge bridge;
+
+        public static void registerEndpoint(final NetworkBridgeCardItemDevice endpoint) {
+            if (Config.networkBridgeLocalPort == 0 || Config.networkBridgeRemotePort == 0) {
+                return;
+            }
+
+            synchronized (LOCK) {
+                if (!ENDPOINTS.contains(endpoint)) {
+                    ENDPOINTS.add(endpoint);
+                    if (ENDPOINTS.size() > 1) {
+                        LOGGER.warn("Network bridge card mounted while another one is active. Only one bridge card per server is active, this one will drop all frames.");
+                    }
+                }
+
+                if (bridge == null) {
+                    try {
+                        bridge = new UdpFrameBridge(Config.networkBridgeLocalPort, Config.networkBridgeRemotePort,
+                            Config.networkBridgeQueueSize, BridgeManager::handleFrame);
+                    } catch (final IOException e) {
+                        LOGGER.error("Failed opening network bridge on port {}: {}", Config.networkBridgeLocalPort, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        public static void unregisterEndpoint(final NetworkBridgeCardItemDevice endpoint) {
+            synchronized (LOCK) {
+                ENDPOINTS.remove(endpoint);
+                if (ENDPOINTS.isEmpty()) {
+                    close();
+                }
+            }
+        }
+
+        public static boolean isActiveEndpoint(final NetworkBridgeCardItemDevice endpoint) {
+            final Iterator<NetworkBridgeCardItemDevice> iterator = ENDPOINTS.iterator();
+            return iterator.hasNext() && iterator.next() == endpoint;
+        }
+
+        public static boolean isBridgedFrame(final byte[] frame) {
+            return BRIDGED_FRAMES.contains(frame);
+        }
+
+        public static boolean send(final byte[] frame) {
+            final UdpFrameBridge value = bridge;
+            return value != null && value.send(frame);
+        }
+
+        @SubscribeEvent
+        public static void handleServerStopped(final ServerStoppedEvent event) {
+            synchronized (LOCK) {
+                ENDPOINTS.clear();
+                close();
+            }
+            BRIDGED_FRAMES.clear();
+        }
+
+        private static void handleFrame(final byte[] frame) {
+            // Frames only enter through the active card, other cards could be in the same network and add duplicates.
+            final Iterator<NetworkBridgeCardItemDevice> iterator = ENDPOINTS.iterator();
+            if (!iterator.hasNext()) {
+                return;
+            }
+
+            BRIDGED_FRAMES.add(frame);
+            iterator.next().handleBridgedFrame(frame);
+
+            // Have connectors pick up the frames in between ticks. Only sets a flag, so this is safe to call from
+            // the receiver thread.
+            NetworkPumps.notifyTraffic();
+        }
+
+        private static void close() {
+            if (bridge != null) {
+                bridge.close();
+                bridge = null;
+            }
+        }
+    }
+}
@@ -1,6 +1,12 @@
 package li.cil.oc2.common.bus.device.item;
 
+import li.cil.oc2.api.capabilities.NetworkInterface;
+import li.cil.oc2.common.Constants;
+import li.cil.oc2.common.capabilities.Capabilities;
 import li.cil.oc2.common.item.NetworkInterfaceCardItem;
+import li.cil.oc2.common.util.EthernetFrameUtils;
+import li.cil.oc2.common.util.Location;
+import li.cil.oc2.common.util.VlanPort;
 import net.minecraft.core.Direction;
 import net.minecraft.world.item.ItemStack;
 import net.minecraftforge.common.capabilities.Capability;
@@ -8,10 +14,31 @@ import net.minecraftforge.common.util.LazyOptional;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public final class NetworkInterfaceCardItemDevice extends AbstractNetworkInterfaceItemDevice {
-    public NetworkInterfaceCardItemDevice(final ItemStack identity) {
-        super(identity);
+    // Sides nobody reads from would otherwise collect frames indefinitely.
+    private static final int MAX_PENDING_FRAMES_PER_SIDE = 32;
+
+    // Connected sides are polled every tick, so anything not read from for longer has no cable.
+    private static final long READER_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    ///////////////////////////////////////////////////////////////
+
+    private final SideNetworkInterface[] sideInterfaces = new SideNetworkInterface[Constants.BLOCK_FACE_COUNT];
+
+    ///////////////////////////////////////////////////////////////
+
+    public NetworkInterfaceCardItemDevice(final ItemStack identity, final Supplier<Optional<Location>> location) {
+        super(identity, "network_interface_card", location);
+
+        for (final Direction side : Constants.DIRECTIONS) {
+            final int vlanId = NetworkInterfaceCardItem.getSideVlanId(identity, side);
+            sideInterfaces[side.get3DDataValue()] = new SideNetworkInterface(side, vlanId);
+        }
     }
 
     ///////////////////////////////////////////////////////////////
@@ -19,10 +46,122 @@ public final class NetworkInterfaceCardItemDevice extends AbstractNetworkInterfa
     @Nonnull
     @Override
     public <T> LazyOptional<T> getCapability(final Capability<T> cap, @Nullable final Direction side) {
-        if (NetworkInterfaceCardItem.getSideConfiguration(identity, side)) {
-            return super.getCapability(cap, side);
+        if (!NetworkInterfaceCardItem.getSideConfiguration(identity, side)) {
+            return LazyOptional.empty();
+        }
+
+        if (cap == Capabilities.NETWORK_INTERFACE && side != null) {
+            final SideNetworkInterface sideInterface = sideInterfaces[side.get3DDataValue()];
+            return LazyOptional.of(() -> sideInterface).cast();
+        }
+
+        return super.getCapability(cap, side);
+    }
+
+    @Override
+    public void suspend() {
+        super.suspend();
+        synchronized (sideInterfaces) {
+            for (final SideNetworkInterface sideInterface : sideInterfaces) {
+                sideInterface.pendingFrames.clear();
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////
+
+    /**
+     * The network interface exposed on a single side of the card.
+     * <p>
+     * All sides share the same underlying interface. Frames sent by the virtual machine go out on
+     * all enabled sides something reads from: the side that reads a frame first also puts it into
+     * the queues of all other sides read from recently. Sides without a connection thus don't
+     * collect stale frames, which would be sent once something is connected.
+     * <p>
+     * If a side is assigned to a VLAN, frames sent via that side get tagged with the VLAN id, and
+     * only frames of that VLAN are received, with the tag removed again before they reach the
+     * virtual machine. Frames the virtual machine tagged itself are not sent via such sides, since
+     * they could otherwise be used to reach VLANs not assigned to any side. Sides on the default
+     * VLAN pass all frames as-is, so guests can still use VLANs themselves.
+     */
+    private final class SideNetworkInterface implements NetworkInterface, VlanPort {
+        private final Direction side;
+        private final int vlanId;
+        private final ArrayDeque<byte[]> pendingFrames = new ArrayDeque<>();
+        private long lastReadTime = System.nanoTime() - READER_TIMEOUT_NANOS;
+
+        public SideNetworkInterface(final Direction side, final int vlanId) {
+            this.side = side;
+            this.vlanId = vlanId;
+        }
+
+        @Override
+        public int getVlanId() {
+            return vlanId;
+        }
+
+        @Nullable
+        @Override
+        public byte[] readEthernetFrame() {
+            synchronized (sideInterfaces) {
+                final long now = System.nanoTime();
+                lastReadTime = now;
+
+                final byte[] pendingFrame = pendingFrames.poll();
+                if (pendingFrame != null) {
+                    return pendingFrame;
+                }
+
+                byte[] frame;
+                while ((frame = getNetworkInterface().readEthernetFrame()) != null) {
+                    for (final SideNetworkInterface sideInterface : sideInterfaces) {
+                        if (sideInterface != this && sideInterface.isReading(now) &&
+                            NetworkInterfaceCardItem.getSideConfiguration(identity, sideInterface.side)) {
+                            sideInterface.enqueue(frame);
+                        }
+                    }
+
+                    if (accepts(frame)) {
+                        return EthernetFrameUtils.addVlanTag(frame, vlanId);
+                    }
+                }
+
+                return null;
+            }
         }
 
-        return LazyOptional.empty();
+        @Override
+        public void writeEthernetFrame(final NetworkInterface source, final byte[] frame, final int timeToLive) {
+            if (vlanId == EthernetFrameUtils.DEFAULT_VLAN_ID) {
+                getNetworkInterface().writeEthernetFrame(source, frame, timeToLive);
+                return;
+            }
+
+            if (EthernetFrameUtils.getVlanId(frame) != vlanId) {
+                return;
+            }
+
+            getNetworkInterface().writeEthernetFrame(source, EthernetFrameUtils.removeVlanTag(frame), timeToLive);
+        }
+
+        private boolean isReading(final long now) {
+            return now - lastReadTime < READER_TIMEOUT_NANOS;
+        }
+
+        private boolean accepts(final byte[] frame) {
+            return vlanId == EthernetFrameUtils.DEFAULT_VLAN_ID || !EthernetFrameUtils.isVlanTagged(frame);
+        }
+
+        private void enqueue(final byte[] frame) {
+            if (!accepts(frame)) {
+                return;
+            }
+
+            if (pendingFrames.size() < MAX_PENDING_FRAMES_PER_SIDE) {
+                pendingFrames.add(EthernetFrameUtils.addVlanTag(frame, vlanId));
+            } else {
+                getStatistics().recordThrottled();
+            }
+        }
     }
 }
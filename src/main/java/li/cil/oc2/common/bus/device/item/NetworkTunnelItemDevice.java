@@ -1,12 +1,15 @@
 package li.cil.oc2.common.bus.device.item;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import li.cil.oc2.api.bus.device.vm.VMDeviceLoadResult;
 import li.cil.oc2.api.bus.device.vm.context.VMContext;
 import li.cil.oc2.api.capabilities.NetworkInterface;
+import li.cil.oc2.common.Config;
 import li.cil.oc2.common.item.NetworkTunnelItem;
+import li.cil.oc2.common.util.Location;
+import li.cil.oc2.common.util.NetworkPumps;
+import li.cil.oc2.common.util.NetworkStatistics;
 import li.cil.oc2.common.util.TickUtils;
+import li.cil.oc2.common.util.TokenBucket;
 import net.minecraft.core.Direction;
 import net.minecraft.world.item.ItemStack;
 import net.minecraftforge.common.capabilities.Capability;
@@ -20,10 +23,11 @@ import org.jetbrains.annotations.Nullable;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.function.Supplier;
 
 public final class NetworkTunnelItemDevice extends AbstractNetworkInterfaceItemDevice {
-    public NetworkTunnelItemDevice(final ItemStack identity) {
-        super(identity);
+    public NetworkTunnelItemDevice(final ItemStack identity, final Supplier<Optional<Location>> location) {
+        super(identity, "network_tunnel", location);
     }
 
     ///////////////////////////////////////////////////////////////
@@ -39,7 +43,7 @@ public final class NetworkTunnelItemDevice extends AbstractNetworkInterfaceItemD
         final VMDeviceLoadResult result = super.mount(context);
         if (result.wasSuccessful()) {
             NetworkTunnelItem.getTunnelId(identity).ifPresent(id ->
-                TunnelManager.registerEndpoint(id, getNetworkInterface()));
+                TunnelManager.registerEndpoint(id, getNetworkInterface(), getStatistics()));
         }
         return result;
     }
@@ -52,58 +56,200 @@ public final class NetworkTunnelItemDevice extends AbstractNetworkInterfaceItemD
 
     ///////////////////////////////////////////////////////////////
 
+    /**
+     * Moves frames between the endpoints of tunnels.
+     * <p>
+     * Everything in here runs on the server thread: endpoints are (un)registered when virtual
+     * machines (un)mount their devices, and frames are pumped once per tick, and in between ticks
+     * while there is traffic, via {@link NetworkPumps}.
+     * <p>
+     * Only tunnels with recent traffic are pumped. Whether the virtual machine behind an endpoint
+     * has frames to send can only be found out by asking it, so idle tunnels are polled in turns,
+     * each once every few ticks, and become active when they have frames. Active tunnels go back to
+     * being idle once they have not moved frames for a while. Token buckets are refilled lazily,
+     * when a tunnel is pumped, so the cost per tick scales with the number of active tunnels.
+     */
     @Mod.EventBusSubscriber
     private static final class TunnelManager {
-        private static final int BYTES_PER_TICK = 32 * 1024 / TickUtils.toTicks(Duration.ofSeconds(1)); // bytes / sec -> bytes / tick
         private static final int MIN_ETHERNET_FRAME_SIZE = 42;
+        private static final int IDLE_POLL_INTERVAL_TICKS = 4;
+        private static final int ACTIVE_TICKS_AFTER_TRAFFIC = TickUtils.toTicks(Duration.ofSeconds(1));
 
-        private static final BiMap<UUID, Set<NetworkInterface>> TUNNELS = HashBiMap.create();
+        private static final HashMap<UUID, Tunnel> TUNNELS = new HashMap<>();
+        private static final HashMap<NetworkInterface, Tunnel> ENDPOINTS = new HashMap<>();
 
-        public static void registerEndpoint(final UUID id, final NetworkInterface networkInterface) {
-            TUNNELS.computeIfAbsent(id, unused -> new HashSet<>())
-                .add(networkInterface);
+        // Tunnels with more than one endpoint are in exactly one of these.
+        private static final ArrayDeque<Tunnel> IDLE_TUNNELS = new ArrayDeque<>();
+        private static final Set<Tunnel> ACTIVE_TUNNELS = new LinkedHashSet<>();
+
+        // Pumps are only weakly referenced, so keep ours alive.
+        private static final NetworkPumps.Pump PUMP = TunnelManager::pumpFrames;
+
+        private static long currentTick;
+
+        public static void registerEndpoint(final UUID id, final NetworkInterface networkInterface, final NetworkStatistics statistics) {
+            unregisterEndpoint(networkInterface);
+
+            final Tunnel tunnel = TUNNELS.computeIfAbsent(id, unused -> new Tunnel());
+            tunnel.endpoints.add(new Endpoint(networkInterface, statistics));
+            ENDPOINTS.put(networkInterface, tunnel);
+
+            // Frames can only go anywhere if there is more than one endpoint.
+            if (tunnel.endpoints.size() == 2) {
+                IDLE_TUNNELS.add(tunnel);
+            }
+
+            // Pumps are cleared when the server stops, so (re-)add ours whenever it may be needed.
+            NetworkPumps.add(PUMP);
         }
 
         public static void unregisterEndpoint(final NetworkInterface networkInterface) {
-            for (final Set<NetworkInterface> tunnel : TUNNELS.values()) {
-                tunnel.remove(networkInterface);
+            final Tunnel tunnel = ENDPOINTS.remove(networkInterface);
+            if (tunnel == null) {
+                return;
+            }
+
+            tunnel.endpoints.removeIf(endpoint -> endpoint.networkInterface == networkInterface);
+
+            if (tunnel.endpoints.size() <= 1) {
+                IDLE_TUNNELS.remove(tunnel);
+                ACTIVE_TUNNELS.remove(tunnel);
+            }
+            if (tunnel.endpoints.isEmpty()) {
+                TUNNELS.values().remove(tunnel);
+            }
+            if (ENDPOINTS.isEmpty()) {
+                NetworkPumps.remove(PUMP);
             }
         }
 
         @SubscribeEvent
         public static void handleServerTick(final TickEvent.ServerTickEvent event) {
-            if (event.phase == TickEvent.Phase.START) {
-                pumpMessages();
+            if (event.phase != TickEvent.Phase.START) {
+                return;
+            }
+
+            currentTick++;
+
+            boolean hasTraffic = false;
+
+            // Poll a share of the idle tunnels, so that each is polled every few ticks.
+            final int pollCount = (IDLE_TUNNELS.size() + IDLE_POLL_INTERVAL_TICKS - 1) / IDLE_POLL_INTERVAL_TICKS;
+            for (int i = 0; i < pollCount; i++) {
+                final Tunnel tunnel = IDLE_TUNNELS.remove();
+                if (tunnel.pumpMessages()) {
+                    tunnel.lastTrafficTick = currentTick;
+                    ACTIVE_TUNNELS.add(tunnel);
+                    hasTraffic = true;
+                } else {
+                    IDLE_TUNNELS.add(tunnel);
+                }
+            }
+
+            // Keep pumping in between ticks while there is traffic, to avoid adding up to a tick
+            // of latency to each frame.
+            hasTraffic |= pumpFrames();
+            if (hasTraffic) {
+                NetworkPumps.notifyTraffic();
             }
         }
 
         @SubscribeEvent
         public static void handleServerStopped(final ServerStoppedEvent event) {
             TUNNELS.clear();
+            ENDPOINTS.clear();
+            IDLE_TUNNELS.clear();
+            ACTIVE_TUNNELS.clear();
         }
 
-        private static void pumpMessages() {
-            final Iterator<Set<NetworkInterface>> iterator = TUNNELS.values().iterator();
+        private static boolean pumpFrames() {
+            boolean hasTraffic = false;
+            final Iterator<Tunnel> iterator = ACTIVE_TUNNELS.iterator();
             while (iterator.hasNext()) {
-                final Set<NetworkInterface> tunnel = iterator.next();
-                if (tunnel.isEmpty()) {
+                final Tunnel tunnel = iterator.next();
+                if (tunnel.pumpMessages()) {
+                    tunnel.lastTrafficTick = currentTick;
+                    hasTraffic = true;
+                } else if (currentTick - tunnel.lastTrafficTick > ACTIVE_TICKS_AFTER_TRAFFIC) {
                     iterator.remove();
-                } else {
-                    pumpMessages(tunnel);
+                    IDLE_TUNNELS.add(tunnel);
                 }
             }
+            return hasTraffic;
+        }
+
+        private static final class Endpoint {
+            public final NetworkInterface networkInterface;
+            public final NetworkStatistics statistics;
+            public final TokenBucket bucket = new TokenBucket(Config.networkTunnelBytesPerSecond, Config.networkTunnelBurstBytes);
+            public boolean isThrottled;
+
+            public Endpoint(final NetworkInterface networkInterface, final NetworkStatistics statistics) {
+                this.networkInterface = networkInterface;
+                this.statistics = statistics;
+            }
         }
 
-        private static void pumpMessages(final Collection<NetworkInterface> tunnel) {
-            for (final NetworkInterface source : tunnel) {
-                int byteBudget = BYTES_PER_TICK;
-                byte[] frame;
-                while ((frame = source.readEthernetFrame()) != null && byteBudget > 0) {
-                    byteBudget -= Math.max(frame.length, MIN_ETHERNET_FRAME_SIZE); // Avoid bogus packets messing with us.
-                    for (final NetworkInterface destination : tunnel) {
-                        if (destination != source) {
-                            destination.writeEthernetFrame(source, frame, 1);
+        private static final class Tunnel {
+            public final List<Endpoint> endpoints = new ArrayList<>();
+            public long lastRefillTick = currentTick;
+            public long lastTrafficTick;
+
+            /**
+             * Moves all pending frames, as far as the rate limits allow.
+             *
+             * @return {@code true} if frames were moved or are held back by rate limits; {@code false} otherwise.
+             */
+            public boolean pumpMessages() {
+                refill();
+
+                boolean hasTraffic = false;
+                final ArrayList<Endpoint> sources = new ArrayList<>(endpoints);
+
+                // Take turns, one frame per endpoint at a time, so busy endpoints don't delay others.
+                while (!sources.isEmpty()) {
+                    final Iterator<Endpoint> iterator = sources.iterator();
+                    while (iterator.hasNext()) {
+                        final Endpoint source = iterator.next();
+
+                        // Only read frames we may actually send; others stay queued in the source.
+                        // Pumps run many times per tick, so only count running out of tokens.
+                        if (!source.bucket.hasTokens()) {
+                            if (!source.isThrottled) {
+                                source.isThrottled = true;
+                                source.statistics.recordThrottled();
+                            }
+                            hasTraffic = true;
+                            iterator.remove();
+                            continue;
                         }
+                        source.isThrottled = false;
+
+                        final byte[] frame = source.networkInterface.readEthernetFrame();
+                        if (frame == null) {
+                            iterator.remove();
+                            continue;
+                        }
+
+                        source.bucket.consume(Math.max(frame.length, MIN_ETHERNET_FRAME_SIZE)); // Avoid bogus packets messing with us.
+                        for (final Endpoint destination : endpoints) {
+                            if (destination != source) {
+                                destination.networkInterface.writeEthernetFrame(source.networkInterface, frame, 1);
+                            }
+                        }
+                        hasTraffic = true;
+                    }
+                }
+
+                return hasTraffic;
+            }
+
+            private void refill() {
+                final long ticks = currentTick - lastRefillTick;
+                if (ticks > 0) {
+                    lastRefillTick = currentTick;
+                    for (final Endpoint endpoint : endpoints) {
+                        endpoint.bucket.refill(ticks);
                     }
                 }
             }
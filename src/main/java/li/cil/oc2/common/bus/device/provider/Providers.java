@@ -4,6 +4,7 @@ import li.cil.oc2.api.bus.device.provider.BlockDeviceProvider;
 import li.cil.oc2.api.bus.device.provider.ItemDeviceProvider;
 import li.cil.oc2.common.bus.device.provider.block.*;
 import li.cil.oc2.common.bus.device.provider.item.*;
+import li.cil.oc2.common.bus.device.util.BlockDeviceProviderIndex;
 import li.cil.oc2.common.util.RegistryUtils;
 import net.minecraftforge.registries.DeferredRegister;
 import net.minecraftforge.registries.IForgeRegistry;
@@ -17,7 +18,8 @@ public final class Providers {
 
     ///////////////////////////////////////////////////////////////////
 
-    public static final Supplier<IForgeRegistry<BlockDeviceProvider>> BLOCK_DEVICE_PROVIDER_REGISTRY = BLOCK_DEVICE_PROVIDERS.makeRegistry("block_device_providers", RegistryBuilder::new);
+    public static final Supplier<IForgeRegistry<BlockDeviceProvider>> BLOCK_DEVICE_PROVIDER_REGISTRY = BLOCK_DEVICE_PROVIDERS.makeRegistry("block_device_providers", () -> new RegistryBuilder<BlockDeviceProvider>()
+        .onBake((owner, stage) -> BlockDeviceProviderIndex.invalidate()));
     public static final Supplier<IForgeRegistry<ItemDeviceProvider>> ITEM_DEVICE_PROVIDER_REGISTRY = ITEM_DEVICE_PROVIDERS.makeRegistry("item_device_providers", RegistryBuilder::new);
 
     ///////////////////////////////////////////////////////////////////
@@ -40,6 +42,7 @@ public final class Providers {
         ITEM_DEVICE_PROVIDERS.register("redstone_interface_card", RedstoneInterfaceCardItemDeviceProvider::new);
         ITEM_DEVICE_PROVIDERS.register("network_interface_card", NetworkInterfaceCardItemDeviceProvider::new);
         ITEM_DEVICE_PROVIDERS.register("network_tunnel_card", NetworkTunnelCardItemDeviceProvider::new);
+        ITEM_DEVICE_PROVIDERS.register("network_bridge_card", NetworkBridgeCardItemDeviceProvider::new);
         ITEM_DEVICE_PROVIDERS.register("file_import_export_card", FileImportExportCardItemDeviceProvider::new);
         ITEM_DEVICE_PROVIDERS.register("sound_card", SoundCardItemDeviceProvider::new);
 
@@ -6,9 +6,17 @@ import li.cil.oc2.api.bus.device.object.ObjectDevice;
 import li.cil.oc2.api.bus.device.provider.BlockDeviceQuery;
 import li.cil.oc2.api.util.Invalidatable;
 import li.cil.oc2.common.bus.device.provider.util.AbstractBlockEntityDeviceProvider;
+import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.entity.BlockEntity;
 
+import javax.annotation.Nullable;
+
 public final class BlockEntityDeviceProvider extends AbstractBlockEntityDeviceProvider<BlockEntity> {
+    @Override
+    public boolean mayProvideDevice(final Block block, @Nullable final BlockEntity blockEntity) {
+        return super.mayProvideDevice(block, blockEntity) && Callbacks.hasMethods(blockEntity);
+    }
+
     @Override
     public Invalidatable<Device> getBlockDevice(final BlockDeviceQuery query, final BlockEntity blockEntity) {
         if (Callbacks.hasMethods(blockEntity)) {
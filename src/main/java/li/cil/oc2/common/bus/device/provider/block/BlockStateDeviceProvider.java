@@ -9,9 +9,17 @@ import li.cil.oc2.common.bus.device.provider.util.AbstractBlockDeviceProvider;
 import net.minecraft.core.BlockPos;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
 
+import javax.annotation.Nullable;
+
 public final class BlockStateDeviceProvider extends AbstractBlockDeviceProvider {
+    @Override
+    public boolean mayProvideDevice(final Block block, @Nullable final BlockEntity blockEntity) {
+        return Callbacks.hasMethods(block);
+    }
+
     @Override
     public Invalidatable<Device> getDevice(final BlockDeviceQuery query) {
         final Level level = query.getLevel();
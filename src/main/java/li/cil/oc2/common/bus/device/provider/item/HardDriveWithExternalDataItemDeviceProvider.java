@@ -29,7 +29,7 @@ public final class HardDriveWithExternalDataItemDeviceProvider extends AbstractI
             return Optional.empty();
         }
 
-        return Optional.of(new HardDriveVMDeviceWithInitialData(stack, data.getBlockDevice(), false, LocationSupplierUtils.of(query)));
+        return Optional.of(new HardDriveVMDeviceWithInitialData(stack, data.getBlockDevice(), data.getIdentity().orElse(null), false, LocationSupplierUtils.of(query)));
     }
 
     @Override
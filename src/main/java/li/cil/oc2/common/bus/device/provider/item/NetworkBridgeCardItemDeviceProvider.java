@@ -0,0 +1,29 @@
+package li.cil.oc2.common.bus.device.provider.item;
+
+import li.cil.oc2.api.bus.device.ItemDevice;
+import li.cil.oc2.api.bus.device.provider.ItemDeviceQuery;
+import li.cil.oc2.common.Config;
+import li.cil.oc2.common.bus.device.item.NetworkBridgeCardItemDevice;
+import li.cil.oc2.common.bus.device.provider.util.AbstractItemDeviceProvider;
+import li.cil.oc2.common.item.Items;
+import li.cil.oc2.common.util.LocationSupplierUtils;
+
+import java.util.Optional;
+
+public final class NetworkBridgeCardItemDeviceProvider extends AbstractItemDeviceProvider {
+    public NetworkBridgeCardItemDeviceProvider() {
+        super(Items.NETWORK_BRIDGE_CARD);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    @Override
+    protected Optional<ItemDevice> getItemDevice(final ItemDeviceQuery query) {
+        return Optional.of(new NetworkBridgeCardItemDevice(query.getItemStack(), LocationSupplierUtils.of(query)));
+    }
+
+    @Override
+    protected int getItemDeviceEnergyConsumption(final ItemDeviceQuery query) {
+        return Config.networkBridgeCardEnergyPerTick;
+    }
+}
@@ -6,6 +6,7 @@ import li.cil.oc2.common.Config;
 import li.cil.oc2.common.bus.device.item.NetworkInterfaceCardItemDevice;
 import li.cil.oc2.common.bus.device.provider.util.AbstractItemDeviceProvider;
 import li.cil.oc2.common.item.Items;
+import li.cil.oc2.common.util.LocationSupplierUtils;
 
 import java.util.Optional;
 
@@ -18,7 +19,7 @@ public final class NetworkInterfaceCardItemDeviceProvider extends AbstractItemDe
 
     @Override
     protected Optional<ItemDevice> getItemDevice(final ItemDeviceQuery query) {
-        return Optional.of(new NetworkInterfaceCardItemDevice(query.getItemStack()));
+        return Optional.of(new NetworkInterfaceCardItemDevice(query.getItemStack(), LocationSupplierUtils.of(query)));
     }
 
     @Override
@@ -6,6 +6,7 @@ import li.cil.oc2.common.Config;
 import li.cil.oc2.common.bus.device.item.NetworkTunnelItemDevice;
 import li.cil.oc2.common.bus.device.provider.util.AbstractItemDeviceProvider;
 import li.cil.oc2.common.item.Items;
+import li.cil.oc2.common.util.LocationSupplierUtils;
 
 import java.util.Optional;
 
@@ -18,7 +19,7 @@ public final class NetworkTunnelModuleItemDeviceProvider extends AbstractItemDev
 
     @Override
     protected Optional<ItemDevice> getItemDevice(final ItemDeviceQuery query) {
-        return Optional.of(new NetworkTunnelItemDevice(query.getItemStack()));
+        return Optional.of(new NetworkTunnelItemDevice(query.getItemStack(), LocationSupplierUtils.of(query)));
     }
 
     @Override
@@ -3,9 +3,12 @@ package li.cil.oc2.common.bus.device.provider.util;
 import li.cil.oc2.api.bus.device.Device;
 import li.cil.oc2.api.bus.device.provider.BlockDeviceQuery;
 import li.cil.oc2.api.util.Invalidatable;
+import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.entity.BlockEntityType;
 
+import javax.annotation.Nullable;
+
 public abstract class AbstractBlockEntityDeviceProvider<T extends BlockEntity> extends AbstractBlockDeviceProvider {
     private final BlockEntityType<T> blockEntityType;
 
@@ -36,6 +39,11 @@ public abstract class AbstractBlockEntityDeviceProvider<T extends BlockEntity> e
         return getBlockDevice(query, (T) blockEntity);
     }
 
+    @Override
+    public boolean mayProvideDevice(final Block block, @Nullable final BlockEntity blockEntity) {
+        return blockEntity != null && (blockEntityType == null || blockEntity.getType() == blockEntityType);
+    }
+
     ///////////////////////////////////////////////////////////////////
 
     protected abstract Invalidatable<Device> getBlockDevice(final BlockDeviceQuery query, final T blockEntity);
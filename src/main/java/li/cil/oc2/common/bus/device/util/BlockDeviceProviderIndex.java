@@ -0,0 +1,77 @@
+package li.cil.oc2.common.bus.device.util;
+
+import li.cil.oc2.api.bus.device.provider.BlockDeviceProvider;
+import li.cil.oc2.common.bus.device.provider.Providers;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.entity.BlockEntityType;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Caches which {@link BlockDeviceProvider}s may provide devices for a block and block entity type.
+ * <p>
+ * Entries are computed lazily, on the first query for a combination, using
+ * {@link BlockDeviceProvider#mayProvideDevice}. The cache is invalidated whenever the provider
+ * registry is baked.
+ */
+public final class BlockDeviceProviderIndex {
+    private static final BlockDeviceProviderIndex INSTANCE = new BlockDeviceProviderIndex(() ->
+        Providers.BLOCK_DEVICE_PROVIDER_REGISTRY.get().getValues());
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final Supplier<Collection<BlockDeviceProvider>> candidates;
+    private final ConcurrentHashMap<Key, List<BlockDeviceProvider>> providers = new ConcurrentHashMap<>();
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static void invalidate() {
+        INSTANCE.clear();
+    }
+
+    public static List<BlockDeviceProvider> getProviders(final Block block, @Nullable final BlockEntity blockEntity) {
+        return INSTANCE.get(block, blockEntity);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    BlockDeviceProviderIndex(final Supplier<Collection<BlockDeviceProvider>> candidates) {
+        this.candidates = candidates;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    void clear() {
+        providers.clear();
+    }
+
+    List<BlockDeviceProvider> get(final Block block, @Nullable final BlockEntity blockEntity) {
+        final Key key = new Key(block, blockEntity != null ? blockEntity.getType() : null);
+        return providers.computeIfAbsent(key, unused -> collectProviders(block, blockEntity));
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private List<BlockDeviceProvider> collectProviders(final Block block, @Nullable final BlockEntity blockEntity) {
+        // Keep registry order, device order on the bus depends on it.
+        final ArrayList<BlockDeviceProvider> result = new ArrayList<>();
+        for (final BlockDeviceProvider provider : candidates.get()) {
+            if (provider.mayProvideDevice(block, blockEntity)) {
+                result.add(provider);
+            }
+        }
+
+        result.trimToSize();
+        return result;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private record Key(Block block, @Nullable BlockEntityType<?> blockEntityType) { }
+}
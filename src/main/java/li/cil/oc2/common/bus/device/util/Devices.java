@@ -7,6 +7,7 @@ import li.cil.oc2.api.bus.device.provider.BlockDeviceQuery;
 import li.cil.oc2.api.bus.device.provider.ItemDeviceProvider;
 import li.cil.oc2.api.bus.device.provider.ItemDeviceQuery;
 import li.cil.oc2.api.util.Invalidatable;
+import li.cil.oc2.common.bus.BusProfiler;
 import li.cil.oc2.common.bus.device.provider.Providers;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
@@ -52,10 +53,16 @@ public final class Devices {
             return Collections.emptyList();
         }
 
-        final IForgeRegistry<BlockDeviceProvider> registry = Providers.BLOCK_DEVICE_PROVIDER_REGISTRY.get();
+        final Level level = query.getLevel();
+        final BlockPos pos = query.getQueryPosition();
+        final List<BlockDeviceProvider> providers = BlockDeviceProviderIndex.getProviders(
+            level.getBlockState(pos).getBlock(), level.getBlockEntity(pos));
+
         final ArrayList<Invalidatable<BlockDeviceInfo>> devices = new ArrayList<>();
-        for (final BlockDeviceProvider provider : registry.getValues()) {
+        for (final BlockDeviceProvider provider : providers) {
+            final BusProfiler.DeviceProviderEvent profilerEvent = BusProfiler.beginGetDevice();
             final Invalidatable<Device> device = provider.getDevice(query);
+            BusProfiler.endGetDevice(profilerEvent, provider, device.isPresent());
             if (device.isPresent()) {
                 devices.add(device.mapWithDependency(d -> new BlockDeviceInfo(provider, d)));
             }
@@ -0,0 +1,59 @@
+package li.cil.oc2.common.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import li.cil.oc2.api.API;
+import li.cil.oc2.common.util.Location;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.RegisterCommandsEvent;
+
+import java.util.Optional;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Registers the mod's administrative commands, all of which live under the {@code /oc2} root.
+ */
+public final class ModCommands {
+    private static final int PERMISSION_LEVEL = 2;
+    private static final int DEFAULT_ENTRY_COUNT = 10;
+    private static final int MAX_ENTRY_COUNT = 100;
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static void initialize() {
+        MinecraftForge.EVENT_BUS.addListener(ModCommands::handleRegisterCommands);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    static LiteralArgumentBuilder<CommandSourceStack> withCount(final LiteralArgumentBuilder<CommandSourceStack> builder, final ToIntBiFunction<CommandContext<CommandSourceStack>, Integer> command) {
+        return builder
+            .executes(context -> command.applyAsInt(context, DEFAULT_ENTRY_COUNT))
+            .then(Commands.argument("count", IntegerArgumentType.integer(1, MAX_ENTRY_COUNT))
+                .executes(context -> command.applyAsInt(context, IntegerArgumentType.getInteger(context, "count"))));
+    }
+
+    static String formatLocation(final Optional<Location> location) {
+        return location.map(value -> {
+            final String dimension = value.level() instanceof final Level level
+                ? level.dimension().location().toString() : "?";
+            return String.format("%s [%d, %d, %d]", dimension, value.pos().getX(), value.pos().getY(), value.pos().getZ());
+        }).orElse("?");
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static void handleRegisterCommands(final RegisterCommandsEvent event) {
+        final CommandDispatcher<CommandSourceStack> dispatcher = event.getDispatcher();
+        dispatcher.register(Commands.literal(API.MOD_ID)
+            .requires(source -> source.hasPermission(PERMISSION_LEVEL))
+            .then(ProfilerCommand.register())
+            .then(NetworkCommand.register())
+            .then(StorageCommand.register()));
+    }
+}
@@ -0,0 +1,109 @@
+package li.cil.oc2.common.command;
+
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import li.cil.oc2.common.Constants;
+import li.cil.oc2.common.util.NetworkStatistics;
+import li.cil.oc2.common.util.PacketCapture;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.commands.arguments.coordinates.BlockPosArgument;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.TranslatableComponent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.List;
+
+final class NetworkCommand {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static LiteralArgumentBuilder<CommandSourceStack> register() {
+        return Commands.literal("network")
+            .then(ModCommands.withCount(Commands.literal("top"), NetworkCommand::listTopTalkers))
+            .then(Commands.literal("capture")
+                .then(Commands.literal("start")
+                    .then(Commands.argument("pos", BlockPosArgument.blockPos())
+                        .executes(NetworkCommand::startCapture)))
+                .then(Commands.literal("stop")
+                    .then(Commands.argument("pos", BlockPosArgument.blockPos())
+                        .executes(NetworkCommand::stopCapture))));
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static int listTopTalkers(final CommandContext<CommandSourceStack> context, final int count) {
+        final CommandSourceStack source = context.getSource();
+        final List<NetworkStatistics> topTalkers = NetworkStatistics.getTopTalkers(count);
+        if (topTalkers.isEmpty()) {
+            source.sendSuccess(new TranslatableComponent(Constants.COMMAND_NETWORK_EMPTY), false);
+            return 0;
+        }
+
+        for (final NetworkStatistics statistics : topTalkers) {
+            final NetworkStatistics.Snapshot snapshot = statistics.snapshot();
+            source.sendSuccess(new TranslatableComponent(Constants.COMMAND_NETWORK_TOP_TALKER,
+                statistics.getType(), ModCommands.formatLocation(statistics.getLocation()),
+                snapshot.sentFrames, snapshot.sentBytes,
+                snapshot.receivedFrames, snapshot.receivedBytes,
+                snapshot.droppedTimeToLive + snapshot.droppedNotRunning, snapshot.throttled), false);
+        }
+
+        return topTalkers.size();
+    }
+
+    private static int startCapture(final CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
+        final CommandSourceStack source = context.getSource();
+        final BlockPos pos = BlockPosArgument.getLoadedBlockPos(context, "pos");
+        final List<NetworkStatistics> interfaces = NetworkStatistics.getAt(source.getLevel(), pos);
+        if (interfaces.isEmpty()) {
+            source.sendFailure(new TranslatableComponent(Constants.COMMAND_NETWORK_CAPTURE_NOT_FOUND));
+            return 0;
+        }
+
+        // Same positions in different dimensions must not share files. Dimension ids contain colons,
+        // and may contain slashes, neither of which are allowed in file names everywhere.
+        final String dimension = source.getLevel().dimension().location().toString().replaceAll("[^a-zA-Z0-9_.-]", "_");
+        for (int i = 0; i < interfaces.size(); i++) {
+            final NetworkStatistics statistics = interfaces.get(i);
+            final String name = String.format("%s_%s_%d_%d_%d_%d", statistics.getType(), dimension, pos.getX(), pos.getY(), pos.getZ(), i);
+            try {
+                final PacketCapture capture = PacketCapture.open(source.getServer(), name);
+                statistics.startCapture(capture);
+                source.sendSuccess(new TranslatableComponent(Constants.COMMAND_NETWORK_CAPTURE_STARTED,
+                    statistics.getType(), capture.getDirectory().resolve(name).toString()), true);
+            } catch (final IOException e) {
+                LOGGER.error(e);
+                source.sendFailure(new TranslatableComponent(Constants.COMMAND_NETWORK_CAPTURE_FAILED, e.getMessage()));
+                return 0;
+            }
+        }
+
+        return interfaces.size();
+    }
+
+    private static int stopCapture(final CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
+        final CommandSourceStack source = context.getSource();
+        final BlockPos pos = BlockPosArgument.getLoadedBlockPos(context, "pos");
+
+        int count = 0;
+        for (final NetworkStatistics statistics : NetworkStatistics.getAt(source.getLevel(), pos)) {
+            if (statistics.isCapturing()) {
+                statistics.stopCapture();
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            source.sendFailure(new TranslatableComponent(Constants.COMMAND_NETWORK_CAPTURE_NOT_FOUND));
+            return 0;
+        }
+
+        source.sendSuccess(new TranslatableComponent(Constants.COMMAND_NETWORK_CAPTURE_STOPPED, count), true);
+        return count;
+    }
+}
@@ -0,0 +1,91 @@
+package li.cil.oc2.common.command;
+
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import li.cil.oc2.common.Constants;
+import li.cil.oc2.common.bus.BusProfiler;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.TranslatableComponent;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+final class ProfilerCommand {
+    public static LiteralArgumentBuilder<CommandSourceStack> register() {
+        return Commands.literal("profiler")
+            .then(Commands.literal("start").executes(ProfilerCommand::start))
+            .then(Commands.literal("stop").executes(ProfilerCommand::stop))
+            .then(ModCommands.withCount(Commands.literal("buses"), ProfilerCommand::listBuses))
+            .then(ModCommands.withCount(Commands.literal("providers"), ProfilerCommand::listProviders))
+            .then(Commands.literal("reset").executes(ProfilerCommand::reset));
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static int listBuses(final CommandContext<CommandSourceStack> context, final int count) {
+        final CommandSourceStack source = context.getSource();
+        final List<BusProfiler.BusStats> buses = BusProfiler.getSlowestBuses(count);
+        if (buses.isEmpty()) {
+            sendEmpty(source);
+            return 0;
+        }
+
+        for (final BusProfiler.BusStats stats : buses) {
+            final BusProfiler.BusPosition position = stats.getPosition();
+            source.sendSuccess(new TranslatableComponent(Constants.COMMAND_PROFILER_BUS,
+                position.dimension(), position.pos().getX(), position.pos().getY(), position.pos().getZ(),
+                toMillis(stats.getTotalNanos()),
+                stats.busScans.getCount(), toMillis(stats.busScans.getAverageNanos()), toMillis(stats.busScans.getMaxNanos()),
+                stats.deviceScans.getCount(), toMillis(stats.deviceScans.getAverageNanos()), toMillis(stats.deviceScans.getMaxNanos()),
+                stats.collectDevices.getCount(), toMillis(stats.collectDevices.getAverageNanos()), toMillis(stats.collectDevices.getMaxNanos())), false);
+        }
+
+        return buses.size();
+    }
+
+    private static int listProviders(final CommandContext<CommandSourceStack> context, final int count) {
+        final CommandSourceStack source = context.getSource();
+        final List<BusProfiler.ProviderStats> providers = BusProfiler.getSlowestProviders(count);
+        if (providers.isEmpty()) {
+            sendEmpty(source);
+            return 0;
+        }
+
+        for (final BusProfiler.ProviderStats stats : providers) {
+            source.sendSuccess(new TranslatableComponent(Constants.COMMAND_PROFILER_PROVIDER,
+                stats.getName(), toMillis(stats.getTotalNanos()),
+                stats.getCount(), toMillis(stats.getAverageNanos()), toMillis(stats.getMaxNanos())), false);
+        }
+
+        return providers.size();
+    }
+
+    private static int start(final CommandContext<CommandSourceStack> context) {
+        BusProfiler.start();
+        context.getSource().sendSuccess(new TranslatableComponent(Constants.COMMAND_PROFILER_STARTED), true);
+        return 1;
+    }
+
+    private static int stop(final CommandContext<CommandSourceStack> context) {
+        BusProfiler.stop();
+        context.getSource().sendSuccess(new TranslatableComponent(Constants.COMMAND_PROFILER_STOPPED), true);
+        return 1;
+    }
+
+    private static int reset(final CommandContext<CommandSourceStack> context) {
+        BusProfiler.reset();
+        context.getSource().sendSuccess(new TranslatableComponent(Constants.COMMAND_PROFILER_RESET), true);
+        return 1;
+    }
+
+    private static void sendEmpty(final CommandSourceStack source) {
+        source.sendSuccess(new TranslatableComponent(BusProfiler.isEnabled()
+            ? Constants.COMMAND_PROFILER_EMPTY
+            : Constants.COMMAND_PROFILER_DISABLED), false);
+    }
+
+    private static String toMillis(final long nanos) {
+        return String.format("%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
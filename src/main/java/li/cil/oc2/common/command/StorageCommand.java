@@ -0,0 +1,68 @@
+package li.cil.oc2.common.command;
+
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import li.cil.oc2.common.Config;
+import li.cil.oc2.common.Constants;
+import li.cil.oc2.common.serialization.BlobStorage;
+import li.cil.oc2.common.util.DiskStatistics;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.TranslatableComponent;
+
+import java.util.List;
+
+final class StorageCommand {
+    public static LiteralArgumentBuilder<CommandSourceStack> register() {
+        return Commands.literal("storage")
+            .executes(StorageCommand::showStatistics)
+            .then(ModCommands.withCount(Commands.literal("top"), StorageCommand::listTopDisks))
+            .then(Commands.literal("purge").executes(StorageCommand::purgeQuarantine));
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static int showStatistics(final CommandContext<CommandSourceStack> context) {
+        final CommandSourceStack source = context.getSource();
+        if (Config.blobDeduplicationChunkSize <= 0) {
+            source.sendSuccess(new TranslatableComponent(Constants.COMMAND_STORAGE_DEDUPLICATION_DISABLED), false);
+        }
+
+        final long logicalSize = BlobStorage.getDeduplicatedSize();
+        final long storedSize = BlobStorage.getDeduplicatedStoredSize();
+        final String ratio = storedSize > 0 ? String.format("%.2f", logicalSize / (double) storedSize) : "-";
+        source.sendSuccess(new TranslatableComponent(Constants.COMMAND_STORAGE_DEDUPLICATION,
+            toMegabytes(logicalSize), toMegabytes(storedSize), ratio), false);
+        return 1;
+    }
+
+    private static int listTopDisks(final CommandContext<CommandSourceStack> context, final int count) {
+        final CommandSourceStack source = context.getSource();
+        final List<DiskStatistics> topDisks = DiskStatistics.getTopDisks(count);
+        if (topDisks.isEmpty()) {
+            source.sendSuccess(new TranslatableComponent(Constants.COMMAND_STORAGE_EMPTY), false);
+            return 0;
+        }
+
+        for (final DiskStatistics statistics : topDisks) {
+            final DiskStatistics.Snapshot snapshot = statistics.snapshot();
+            source.sendSuccess(new TranslatableComponent(Constants.COMMAND_STORAGE_TOP_DISK,
+                statistics.getType(), ModCommands.formatLocation(statistics.getLocation()),
+                snapshot.readOperations, snapshot.readBytes,
+                snapshot.writeOperations, snapshot.writtenBytes,
+                snapshot.throttled), false);
+        }
+
+        return topDisks.size();
+    }
+
+    private static int purgeQuarantine(final CommandContext<CommandSourceStack> context) {
+        final int count = BlobStorage.purgeQuarantine(System.currentTimeMillis());
+        context.getSource().sendSuccess(new TranslatableComponent(Constants.COMMAND_STORAGE_PURGE, count), true);
+        return count;
+    }
+
+    private static String toMegabytes(final long bytes) {
+        return String.format("%.2f", bytes / (double) Constants.MEGABYTE);
+    }
+}
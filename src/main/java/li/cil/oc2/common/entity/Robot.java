@@ -25,6 +25,7 @@ import li.cil.oc2.common.network.Network;
 import li.cil.oc2.common.network.message.*;
 import li.cil.oc2.common.serialization.NBTSerialization;
 import li.cil.oc2.common.util.LevelUtils;
+import li.cil.oc2.common.util.Location;
 import li.cil.oc2.common.util.NBTTagIds;
 import li.cil.oc2.common.util.NBTUtils;
 import li.cil.oc2.common.util.TerminalUtils;
@@ -128,7 +129,7 @@ public final class Robot extends Entity implements li.cil.oc2.api.capabilities.R
         this.blocksBuilding = true;
         setNoGravity(true);
 
-        final CommonDeviceBusController busController = new CommonDeviceBusController(busElement, Config.robotEnergyPerTick);
+        final CommonDeviceBusController busController = new CommonDeviceBusController(busElement, Config.robotEnergyPerTick, () -> Location.of(this));
         virtualMachine = new RobotVirtualMachine(busController);
         virtualMachine.state.builtinDevices.rtcMinecraft.setLevel(world);
     }
@@ -2,6 +2,7 @@ package li.cil.oc2.common.item;
 
 import li.cil.oc2.client.gui.NetworkInterfaceCardScreen;
 import li.cil.oc2.common.Constants;
+import li.cil.oc2.common.util.EthernetFrameUtils;
 import li.cil.oc2.common.util.ItemStackUtils;
 import li.cil.oc2.common.util.NBTTagIds;
 import net.minecraft.ChatFormatting;
@@ -9,6 +10,7 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.chat.Component;
+import net.minecraft.util.Mth;
 import net.minecraft.world.InteractionHand;
 import net.minecraft.world.InteractionResultHolder;
 import net.minecraft.world.entity.player.Player;
@@ -27,6 +29,7 @@ import static li.cil.oc2.common.util.TranslationUtils.text;
 
 public final class NetworkInterfaceCardItem extends ModItem {
     private static final String SIDE_CONFIGURATION_TAG_NAME = "sides";
+    private static final String SIDE_VLAN_TAG_NAME = "vlans";
     private static final Component IS_CONFIGURED_TEXT = withFormat(text("item.{mod}.network_interface_card.is_configured"), ChatFormatting.GREEN);
 
     ///////////////////////////////////////////////////////////////////
@@ -67,14 +70,58 @@ public final class NetworkInterfaceCardItem extends ModItem {
         return true;
     }
 
+    public static void setSideVlanId(final ItemStack stack, final Direction side, final int vlanId) {
+        final int index = side.get3DDataValue();
+
+        final CompoundTag tag = ItemStackUtils.getOrCreateModDataTag(stack);
+        final int[] values;
+        if (tag.contains(SIDE_VLAN_TAG_NAME, NBTTagIds.TAG_INT_ARRAY) &&
+            tag.getIntArray(SIDE_VLAN_TAG_NAME).length == Constants.BLOCK_FACE_COUNT) {
+            values = tag.getIntArray(SIDE_VLAN_TAG_NAME);
+        } else {
+            values = new int[Constants.BLOCK_FACE_COUNT];
+        }
+
+        values[index] = Mth.clamp(vlanId, EthernetFrameUtils.DEFAULT_VLAN_ID, EthernetFrameUtils.MAX_VLAN_ID);
+
+        tag.putIntArray(SIDE_VLAN_TAG_NAME, values);
+    }
+
+    public static int getSideVlanId(final ItemStack stack, @Nullable final Direction side) {
+        if (side == null) {
+            return EthernetFrameUtils.DEFAULT_VLAN_ID;
+        }
+
+        final int index = side.get3DDataValue();
+
+        final CompoundTag tag = ItemStackUtils.getModDataTag(stack);
+        if (tag.contains(SIDE_VLAN_TAG_NAME, NBTTagIds.TAG_INT_ARRAY)) {
+            final int[] values = tag.getIntArray(SIDE_VLAN_TAG_NAME);
+            if (index < values.length) {
+                return Mth.clamp(values[index], EthernetFrameUtils.DEFAULT_VLAN_ID, EthernetFrameUtils.MAX_VLAN_ID);
+            }
+        }
+
+        return EthernetFrameUtils.DEFAULT_VLAN_ID;
+    }
+
     public static boolean hasConfiguration(final ItemStack stack) {
-        final byte[] values = ItemStackUtils.getModDataTag(stack).getByteArray(SIDE_CONFIGURATION_TAG_NAME);
+        final CompoundTag tag = ItemStackUtils.getModDataTag(stack);
+
+        final byte[] values = tag.getByteArray(SIDE_CONFIGURATION_TAG_NAME);
         for (final byte value : values) {
             if (value == 0) {
                 return true;
             }
         }
 
+        final int[] vlanIds = tag.getIntArray(SIDE_VLAN_TAG_NAME);
+        for (final int vlanId : vlanIds) {
+            if (vlanId != EthernetFrameUtils.DEFAULT_VLAN_ID) {
+                return true;
+            }
+        }
+
         return false;
     }
 
@@ -13,13 +13,15 @@ public final class NetworkInterfaceCardConfigurationMessage extends AbstractMess
     private InteractionHand hand;
     private Direction side;
     private boolean value;
+    private int vlanId;
 
     ///////////////////////////////////////////////////////////////////
 
-    public NetworkInterfaceCardConfigurationMessage(final InteractionHand hand, final Direction side, final boolean value) {
+    public NetworkInterfaceCardConfigurationMessage(final InteractionHand hand, final Direction side, final boolean value, final int vlanId) {
         this.hand = hand;
         this.side = side;
         this.value = value;
+        this.vlanId = vlanId;
     }
 
     public NetworkInterfaceCardConfigurationMessage(final FriendlyByteBuf buffer) {
@@ -33,6 +35,7 @@ public final class NetworkInterfaceCardConfigurationMessage extends AbstractMess
         hand = buffer.readEnum(InteractionHand.class);
         side = buffer.readEnum(Direction.class);
         value = buffer.readBoolean();
+        vlanId = buffer.readVarInt();
     }
 
     @Override
@@ -40,6 +43,7 @@ public final class NetworkInterfaceCardConfigurationMessage extends AbstractMess
         buffer.writeEnum(hand);
         buffer.writeEnum(side);
         buffer.writeBoolean(value);
+        buffer.writeVarInt(vlanId);
     }
 
     ///////////////////////////////////////////////////////////////////
@@ -57,5 +61,6 @@ public final class NetworkInterfaceCardConfigurationMessage extends AbstractMess
         }
 
         NetworkInterfaceCardItem.setSideConfiguration(itemStack, side, value);
+        NetworkInterfaceCardItem.setSideVlanId(itemStack, side, vlanId);
     }
 }
@@ -0,0 +1,391 @@
+package li.cil.oc2.common.serialization;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store of fixed-size chunks, used to store blobs deduplicated while they are not in use.
+ * <p>
+ * A stored blob is split into chunks, which are stored in files named by the hash of their contents. The
+ * blob itself is represented by a chunk map, listing the hashes of its chunks. Blobs sharing data thus
+ * share the files of the chunks they have in common. Chunks are reference counted, and deleted once no
+ * chunk map references them anymore. Chunks consisting only of zeros are never stored.
+ * <p>
+ * Chunk files are never modified. Blobs in use are restored to a regular file, which is then accessed
+ * as usual, and stored again once they are no longer in use.
+ * <p>
+ * Blobs may be stored and deleted concurrently. Creating and deleting the file of a chunk happens under
+ * a lock for that chunk, together with the change of its reference count that caused it, so a chunk
+ * referenced again while it is being released is never deleted from under its new user.
+ */
+final class BlobChunkStore {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static final String CHUNKS_FOLDER_NAME = "chunks";
+    private static final String CHUNK_MAP_EXTENSION = ".chunks";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private static final int MAGIC = 0x4F433243; // OC2C
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int HASH_SIZE = 32;
+    private static final String ZERO_CHUNK = HexFormat.of().formatHex(new byte[HASH_SIZE]);
+    private static final int CHUNK_LOCK_COUNT = 256;
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final Path directory;
+    private final Path chunksDirectory;
+    private final HashMap<String, Integer> referenceCounts = new HashMap<>();
+    private final Object[] chunkLocks = new Object[CHUNK_LOCK_COUNT];
+    private long storedSize, logicalSize;
+
+    ///////////////////////////////////////////////////////////////////
+
+    private BlobChunkStore(final Path directory) {
+        this.directory = directory;
+        this.chunksDirectory = directory.resolve(CHUNKS_FOLDER_NAME);
+        for (int i = 0; i < chunkLocks.length; i++) {
+            chunkLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Opens the chunk store in the specified directory.
+     * <p>
+     * This reads all chunk maps to compute reference counts, and deletes chunks not referenced by any
+     * chunk map, e.g. because the process terminated while storing or deleting a blob.
+     *
+     * @param directory the directory blobs are stored in.
+     * @return the chunk store.
+     * @throws IOException if reading the chunk store failed.
+     */
+    public static BlobChunkStore open(final Path directory) throws IOException {
+        final BlobChunkStore store = new BlobChunkStore(directory);
+        Files.createDirectories(store.chunksDirectory);
+
+        try (final DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*" + CHUNK_MAP_EXTENSION)) {
+            for (final Path path : paths) {
+                try {
+                    final ChunkMap chunkMap = readChunkMap(path);
+                    store.logicalSize += chunkMap.size;
+                    for (final String chunk : chunkMap.chunks) {
+                        store.referenceCounts.merge(chunk, 1, Integer::sum);
+                    }
+                } catch (final IOException e) {
+                    LOGGER.error("Failed reading chunk map [{}]: {}", path, e.getMessage());
+                }
+            }
+        }
+
+        try (final Stream<Path> paths = Files.walk(store.chunksDirectory)) {
+            for (final Path path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+                final String chunk = path.getFileName().toString();
+                if (store.referenceCounts.containsKey(chunk)) {
+                    store.storedSize += Files.size(path);
+                } else {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+
+        return store;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * The sum of the sizes of all stored blobs.
+     */
+    public synchronized long getLogicalSize() {
+        return logicalSize;
+    }
+
+    /**
+     * The actual size of all chunks on disk.
+     */
+    public synchronized long getStoredSize() {
+        return storedSize;
+    }
+
+    public boolean contains(final UUID handle) {
+        return Files.exists(getChunkMapPath(handle));
+    }
+
+    /**
+     * Stores the specified file as the blob with the specified handle, replacing the blob if it already exists.
+     *
+     * @param handle    the handle of the blob to store.
+     * @param source    the file containing the data of the blob.
+     * @param chunkSize the size of the chunks to split the blob into.
+     * @throws IOException if storing the blob failed.
+     */
+    public void store(final UUID handle, final Path source, final int chunkSize) throws IOException {
+        final MessageDigest digest = createDigest();
+        final HexFormat hexFormat = HexFormat.of();
+        final ArrayList<String> chunks = new ArrayList<>();
+        final byte[] data = new byte[chunkSize];
+        long size = 0;
+
+        try (final InputStream stream = Files.newInputStream(source)) {
+            int length;
+            while ((length = stream.readNBytes(data, 0, chunkSize)) > 0) {
+                size += length;
+
+                if (isZero(data, length)) {
+                    chunks.add(ZERO_CHUNK);
+                    continue;
+                }
+
+                digest.update(data, 0, length);
+                final String chunk = hexFormat.formatHex(digest.digest());
+
+                // Reference the chunk right away, so nobody deletes it while we're still working. Holding
+                // the chunk lock until it is written means others referencing it can rely on it existing.
+                synchronized (getChunkLock(chunk)) {
+                    final boolean isNewChunk;
+                    synchronized (this) {
+                        isNewChunk = referenceCounts.merge(chunk, 1, Integer::sum) == 1;
+                        if (isNewChunk) {
+                            storedSize += length;
+                        }
+                    }
+                    if (isNewChunk) {
+                        try {
+                            writeAtomically(getChunkPath(chunk), ByteBuffer.wrap(data, 0, length));
+                        } catch (final IOException e) {
+                            synchronized (this) {
+                                referenceCounts.remove(chunk);
+                                storedSize -= length;
+                            }
+                            throw e;
+                        }
+                    }
+                }
+                chunks.add(chunk);
+            }
+        } catch (final IOException e) {
+            release(chunks);
+            throw e;
+        }
+
+        final Path chunkMapPath = getChunkMapPath(handle);
+        final ChunkMap oldChunkMap = Files.exists(chunkMapPath) ? readChunkMap(chunkMapPath) : null;
+        try {
+            writeChunkMap(chunkMapPath, new ChunkMap(size, chunkSize, chunks));
+        } catch (final IOException e) {
+            release(chunks);
+            throw e;
+        }
+
+        synchronized (this) {
+            logicalSize += size;
+        }
+        if (oldChunkMap != null) {
+            release(oldChunkMap);
+        }
+    }
+
+    /**
+     * Restores the blob with the specified handle to the specified file.
+     * <p>
+     * Chunks consisting only of zeros are not written, so the file is sparse where possible.
+     *
+     * @param handle the handle of the blob to restore.
+     * @param target the file to restore the blob to.
+     * @throws IOException if restoring the blob failed.
+     */
+    public void restore(final UUID handle, final Path target) throws IOException {
+        final ChunkMap chunkMap = readChunkMap(getChunkMapPath(handle));
+        final Path temporaryPath = getTemporaryPath(target);
+        try (final FileChannel channel = FileChannel.open(temporaryPath,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (final String chunk : chunkMap.chunks) {
+                if (!chunk.equals(ZERO_CHUNK)) {
+                    final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(getChunkPath(chunk)));
+                    while (data.hasRemaining()) {
+                        channel.write(data, position + data.position());
+                    }
+                }
+                position += chunkMap.chunkSize;
+            }
+
+            if (channel.size() < chunkMap.size) {
+                channel.write(ByteBuffer.allocate(1), chunkMap.size - 1);
+            }
+            channel.truncate(chunkMap.size);
+        }
+
+        Files.move(temporaryPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes the blob with the specified handle, releasing the chunks it references.
+     *
+     * @param handle the handle of the blob to delete.
+     * @throws IOException if deleting the blob failed.
+     */
+    public void delete(final UUID handle) throws IOException {
+        final Path chunkMapPath = getChunkMapPath(handle);
+        if (!Files.exists(chunkMapPath)) {
+            return;
+        }
+
+        final ChunkMap chunkMap = readChunkMap(chunkMapPath);
+        Files.delete(chunkMapPath);
+        release(chunkMap);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private void release(final ChunkMap chunkMap) {
+        synchronized (this) {
+            logicalSize -= chunkMap.size;
+        }
+        release(chunkMap.chunks);
+    }
+
+    private void release(final List<String> chunks) {
+        for (final String chunk : chunks) {
+            if (chunk.equals(ZERO_CHUNK)) {
+                continue;
+            }
+
+            // Delete under the chunk lock, so the chunk can't be referenced and written again in between.
+            synchronized (getChunkLock(chunk)) {
+                final boolean isUnreferenced;
+                synchronized (this) {
+                    isUnreferenced = referenceCounts.computeIfPresent(chunk, (unused, count) -> count > 1 ? count - 1 : null) == null;
+                }
+
+                if (isUnreferenced) {
+                    try {
+                        final Path path = getChunkPath(chunk);
+                        final long size = Files.size(path);
+                        Files.deleteIfExists(path);
+                        synchronized (this) {
+                            storedSize -= size;
+                        }
+                    } catch (final IOException e) {
+                        LOGGER.error("Failed deleting chunk [{}]: {}", chunk, e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private Object getChunkLock(final String chunk) {
+        return chunkLocks[Integer.parseInt(chunk, 0, 2, 16) % chunkLocks.length];
+    }
+
+    private Path getChunkMapPath(final UUID handle) {
+        return directory.resolve(handle + CHUNK_MAP_EXTENSION);
+    }
+
+    private Path getChunkPath(final String chunk) {
+        return chunksDirectory.resolve(chunk.substring(0, 2)).resolve(chunk);
+    }
+
+    private static Path getTemporaryPath(final Path path) {
+        return path.resolveSibling(path.getFileName() + TEMPORARY_EXTENSION);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isZero(final byte[] data, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (data[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeAtomically(final Path path, final ByteBuffer data) throws IOException {
+        Files.createDirectories(path.getParent());
+        final Path temporaryPath = getTemporaryPath(path);
+        try (final FileChannel channel = FileChannel.open(temporaryPath,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ChunkMap readChunkMap(final Path path) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Invalid chunk map.");
+        }
+
+        final long size = buffer.getLong();
+        final int chunkSize = buffer.getInt();
+        final int count = buffer.getInt();
+        if (buffer.remaining() != count * HASH_SIZE) {
+            throw new EOFException();
+        }
+
+        final HexFormat hexFormat = HexFormat.of();
+        final ArrayList<String> chunks = new ArrayList<>(count);
+        final byte[] hash = new byte[HASH_SIZE];
+        for (int i = 0; i < count; i++) {
+            buffer.get(hash);
+            chunks.add(hexFormat.formatHex(hash));
+        }
+
+        return new ChunkMap(size, chunkSize, chunks);
+    }
+
+    private static void writeChunkMap(final Path path, final ChunkMap chunkMap) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + chunkMap.chunks.size() * HASH_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(chunkMap.size).putInt(chunkMap.chunkSize).putInt(chunkMap.chunks.size());
+
+        final HexFormat hexFormat = HexFormat.of();
+        for (final String chunk : chunkMap.chunks) {
+            buffer.put(hexFormat.parseHex(chunk));
+        }
+
+        buffer.flip();
+        writeAtomically(path, buffer);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static final class ChunkMap {
+        public final long size;
+        public final int chunkSize;
+        public final List<String> chunks;
+
+        public ChunkMap(final long size, final int chunkSize, final List<String> chunks) {
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.chunks = chunks;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package li.cil.oc2.common.serialization;
+
+import li.cil.oc2.common.Config;
+import li.cil.oc2.common.entity.Robot;
+import li.cil.oc2.common.util.NBTTagIds;
+import li.cil.oc2.common.util.TickUtils;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.Container;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.EntityJoinWorldEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.world.ChunkDataEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks when blobs were last known to be referenced, and quarantines blobs that have not been for a while.
+ * <p>
+ * Blob handles are stored in the tags of items and block entities, which we cannot enumerate without
+ * loading the whole world. Instead, handles are recorded as they are seen: when blobs are opened, when
+ * chunks are loaded or saved, when entities carrying items join the world, and every few minutes for the
+ * inventories of online players. Chunks and players staying loaded for longer than the grace period are
+ * thus still seen. The time a handle was last seen is persisted in the blob directory, whenever the world
+ * is saved.
+ * <p>
+ * If {@link Config#blobGarbageCollectionGraceDays} is set, a background task walks the blob directory a
+ * few blobs at a time, and moves blobs that were not seen for that many days into a quarantine directory,
+ * see {@link BlobStorage#quarantineIfUnreferenced}. Handles are only seen where we look, so blobs still in
+ * use may be quarantined, e.g. blobs of items
+ * <ul>
+ * <li>in chunks or dimensions not loaded during the grace period,</li>
+ * <li>in inventories of players not online during the grace period,</li>
+ * <li>in containers of other mods, e.g. backpacks, or in saved data of other mods.</li>
+ * </ul>
+ * Quarantined blobs are moved back when they are opened again, so this does not lose data. They are only
+ * deleted after {@link Config#blobQuarantineExpiryDays}, if set, or when server admins purge them via
+ * command, once sure they are no longer needed.
+ */
+public final class BlobReferenceIndex {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static final String INDEX_FILE_NAME = "index.dat";
+    private static final String TEMPORARY_FILE_NAME = INDEX_FILE_NAME + ".tmp";
+    private static final String CHUNK_MAP_EXTENSION = ".chunks";
+    private static final String BLOB_HANDLE_TAG_NAME = "blob";
+    private static final String BLOCK_ENTITIES_TAG_NAME = "block_entities";
+
+    private static final int MAGIC = 0x4F433249; // OC2I
+    private static final int VERSION = 1;
+    private static final int ENTRY_SIZE = 3 * Long.BYTES;
+
+    private static final long SWEEP_INTERVAL_SECONDS = 60;
+    private static final int SWEEP_BATCH_SIZE = 64;
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int PLAYER_TOUCH_INTERVAL_TICKS = TickUtils.toTicks(Duration.ofMinutes(5));
+
+    ///////////////////////////////////////////////////////////////////
+
+    // Updated from the server thread and blob users, read by the sweeper; all access is via atomic operations.
+    private static final Map<UUID, Long> LAST_SEEN = new ConcurrentHashMap<>();
+
+    // Saving happens on the sweeper thread and when stopping, never let both write the file at once.
+    private static final Object SAVE_LOCK = new Object();
+
+    // Replaced with a new instance when the server starts, so a late, old sweeper never sees new state.
+    @Nullable private static volatile Sweeper sweeper;
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static void initialize() {
+        MinecraftForge.EVENT_BUS.register(EventHandler.class);
+    }
+
+    /**
+     * Loads the index from the directory blobs are currently stored in and starts the background sweeper.
+     * <p>
+     * Must be called after {@link BlobStorage#setServer}.
+     */
+    public static synchronized void start() {
+        stop();
+
+        final Path directory = BlobStorage.getDataDirectory();
+        LAST_SEEN.clear();
+        load(directory.resolve(INDEX_FILE_NAME));
+
+        sweeper = new Sweeper(directory);
+    }
+
+    /**
+     * Stops the background sweeper and saves the index.
+     */
+    public static synchronized void stop() {
+        final Sweeper current = sweeper;
+        if (current != null) {
+            sweeper = null;
+            current.stop();
+        }
+    }
+
+    /**
+     * Records that the blob with the specified handle is still referenced.
+     *
+     * @param handle the handle of the blob.
+     */
+    public static void touch(final UUID handle) {
+        LAST_SEEN.put(handle, System.currentTimeMillis());
+    }
+
+    /**
+     * Records all blob handles found in the specified tag, including nested tags.
+     *
+     * @param tag the tag to search for blob handles.
+     */
+    public static void touchAll(@Nullable final Tag tag) {
+        if (tag instanceof final CompoundTag compound) {
+            if (compound.hasUUID(BLOB_HANDLE_TAG_NAME)) {
+                touch(compound.getUUID(BLOB_HANDLE_TAG_NAME));
+            }
+            for (final String key : compound.getAllKeys()) {
+                final Tag child = compound.get(key);
+                if (child instanceof CompoundTag || child instanceof ListTag) {
+                    touchAll(child);
+                }
+            }
+        } else if (tag instanceof final ListTag list) {
+            // Lists are homogeneous, so if the first entry cannot hold handles, none can.
+            if (list.isEmpty() || !(list.get(0) instanceof CompoundTag || list.get(0) instanceof ListTag)) {
+                return;
+            }
+            for (final Tag child : list) {
+                touchAll(child);
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static void touchAll(final ItemStack stack) {
+        if (!stack.isEmpty()) {
+            touchAll(stack.getTag());
+        }
+    }
+
+    private static void touchAll(final Container container) {
+        for (int slot = 0; slot < container.getContainerSize(); slot++) {
+            touchAll(container.getItem(slot));
+        }
+    }
+
+    private static void touchAll(final Player player) {
+        touchAll(player.getInventory());
+        touchAll(player.getEnderChestInventory());
+    }
+
+    @Nullable
+    private static UUID parseHandle(final String fileName) {
+        final String name = fileName.endsWith(CHUNK_MAP_EXTENSION)
+            ? fileName.substring(0, fileName.length() - CHUNK_MAP_EXTENSION.length())
+            : fileName;
+        try {
+            return UUID.fromString(name);
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void load(final Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (buffer.remaining() < 3 * Integer.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Invalid blob index.");
+            }
+
+            final int count = buffer.getInt();
+            for (int i = 0; i < count && buffer.remaining() >= ENTRY_SIZE; i++) {
+                final UUID handle = new UUID(buffer.getLong(), buffer.getLong());
+                LAST_SEEN.merge(handle, buffer.getLong(), Math::max);
+            }
+        } catch (final IOException e) {
+            LOGGER.error("Failed loading blob index: {}", e.getMessage());
+        }
+    }
+
+    private static void save(final Path blobDirectory) {
+        synchronized (SAVE_LOCK) {
+            saveLocked(blobDirectory);
+        }
+    }
+
+    private static void saveLocked(final Path blobDirectory) {
+        final ArrayList<Map.Entry<UUID, Long>> entries = new ArrayList<>(LAST_SEEN.entrySet());
+        final ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES + entries.size() * ENTRY_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(entries.size());
+        for (final Map.Entry<UUID, Long> entry : entries) {
+            buffer.putLong(entry.getKey().getMostSignificantBits())
+                .putLong(entry.getKey().getLeastSignificantBits())
+                .putLong(entry.getValue());
+        }
+
+        try {
+            final Path temporaryPath = blobDirectory.resolve(TEMPORARY_FILE_NAME);
+            Files.write(temporaryPath, buffer.array());
+            Files.move(temporaryPath, blobDirectory.resolve(INDEX_FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            LOGGER.error("Failed saving blob index: {}", e.getMessage());
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Walks the blob directory in the background, owning all state of the walk.
+     */
+    private static final class Sweeper {
+        private final Path directory;
+        private final ScheduledExecutorService executor;
+
+        // Only accessed from the thread of the executor.
+        private final ArrayDeque<UUID> queue = new ArrayDeque<>();
+        private final HashSet<UUID> seen = new HashSet<>();
+        private long lastPurgeTime;
+
+        public Sweeper(final Path directory) {
+            this.directory = directory;
+            this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "Blob Collector");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+
+        public void scheduleSave() {
+            // Write on the sweeper thread to not block the world save.
+            try {
+                executor.execute(() -> save(directory));
+            } catch (final RejectedExecutionException ignored) {
+                // Stopped concurrently, which saves anyway.
+            }
+        }
+
+        public void stop() {
+            executor.shutdownNow();
+            try {
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    LOGGER.warn("Blob collector did not stop in time.");
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            save(directory);
+        }
+
+        private void sweep() {
+            try {
+                purgeExpired();
+
+                final int graceDays = Config.blobGarbageCollectionGraceDays;
+                if (graceDays <= 0) {
+                    return;
+                }
+
+                if (queue.isEmpty()) {
+                    finishPass(graceDays);
+                    listBlobs();
+                }
+
+                final long now = System.currentTimeMillis();
+                final long maxAge = TimeUnit.DAYS.toMillis(graceDays);
+                for (int i = 0; i < SWEEP_BATCH_SIZE && !queue.isEmpty() && !Thread.currentThread().isInterrupted(); i++) {
+                    final UUID handle = queue.poll();
+
+                    // Blobs we never saw before start their grace period now.
+                    LAST_SEEN.putIfAbsent(handle, now);
+
+                    final boolean quarantined = BlobStorage.quarantineIfUnreferenced(handle, () ->
+                        now - LAST_SEEN.getOrDefault(handle, now) > maxAge);
+                    if (quarantined) {
+                        LAST_SEEN.remove(handle);
+                        LOGGER.info("Quarantined blob [{}], which was not referenced for {} days.", handle, graceDays);
+                    }
+                }
+            } catch (final Throwable e) {
+                LOGGER.error(e);
+            }
+        }
+
+        private void purgeExpired() {
+            final int expiryDays = Config.blobQuarantineExpiryDays;
+            final long now = System.currentTimeMillis();
+            if (expiryDays <= 0 || now - lastPurgeTime < PURGE_INTERVAL_MILLIS) {
+                return;
+            }
+
+            lastPurgeTime = now;
+            final int count = BlobStorage.purgeQuarantine(now - TimeUnit.DAYS.toMillis(expiryDays));
+            if (count > 0) {
+                LOGGER.info("Deleted {} blobs that were quarantined for more than {} days.", count, expiryDays);
+            }
+        }
+
+        private void listBlobs() throws IOException {
+            seen.clear();
+            try (final DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+                for (final Path path : paths) {
+                    final UUID handle = parseHandle(path.getFileName().toString());
+                    if (handle != null && seen.add(handle)) {
+                        queue.add(handle);
+                    }
+                }
+            }
+        }
+
+        private void finishPass(final int graceDays) {
+            if (seen.isEmpty()) {
+                return;
+            }
+
+            // Forget handles of blobs that no longer exist, once we'd have quarantined them anyway.
+            final long expiry = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(graceDays);
+            LAST_SEEN.entrySet().removeIf(entry -> !seen.contains(entry.getKey()) && entry.getValue() < expiry);
+        }
+    }
+
+    private static final class EventHandler {
+        @SubscribeEvent
+        public static void handleChunkLoad(final ChunkDataEvent.Load event) {
+            touchAll(event.getData().getList(BLOCK_ENTITIES_TAG_NAME, NBTTagIds.TAG_COMPOUND));
+        }
+
+        @SubscribeEvent
+        public static void handleChunkSave(final ChunkDataEvent.Save event) {
+            // Chunks kept loaded, e.g. by chunk loaders, are never loaded again, but still saved regularly.
+            touchAll(event.getData().getList(BLOCK_ENTITIES_TAG_NAME, NBTTagIds.TAG_COMPOUND));
+        }
+
+        @SubscribeEvent
+        public static void handleEntityJoin(final EntityJoinWorldEvent event) {
+            if (event.getWorld().isClientSide()) {
+                return;
+            }
+
+            final Entity entity = event.getEntity();
+            if (entity instanceof final ItemEntity itemEntity) {
+                touchAll(itemEntity.getItem());
+            } else if (entity instanceof final Container container) {
+                touchAll(container);
+            } else if (entity instanceof Robot) {
+                touchAll(entity.saveWithoutId(new CompoundTag()));
+            }
+        }
+
+        @SubscribeEvent
+        public static void handlePlayerLoggedIn(final PlayerEvent.PlayerLoggedInEvent event) {
+            touchAll(event.getPlayer());
+        }
+
+        @SubscribeEvent
+        public static void handlePlayerTick(final TickEvent.PlayerTickEvent event) {
+            // Players may stay online for longer than the grace period, so look at them every now and then.
+            final Player player = event.player;
+            if (event.phase == TickEvent.Phase.END && !player.level.isClientSide() &&
+                player.tickCount % PLAYER_TOUCH_INTERVAL_TICKS == 0) {
+                touchAll(player);
+            }
+        }
+
+        @SubscribeEvent
+        public static void handleLevelSave(final WorldEvent.Save event) {
+            if (event.getWorld() instanceof final Level level && level.dimension() == Level.OVERWORLD) {
+                final Sweeper current = sweeper;
+                if (current != null) {
+                    current.scheduleSave();
+                }
+            }
+        }
+    }
+}
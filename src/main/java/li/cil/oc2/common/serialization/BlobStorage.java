@@ -1,6 +1,7 @@
 package li.cil.oc2.common.serialization;
 
 import li.cil.oc2.api.API;
+import li.cil.oc2.common.Config;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.world.level.storage.LevelResource;
 import org.apache.logging.log4j.LogManager;
@@ -9,15 +10,50 @@ import org.apache.logging.log4j.Logger;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
 
 /**
  * This class facilitates storing binary chunks of data in an efficient, parallelized fashion.
+ * <p>
+ * Blobs are reference counted. Each call to {@link #getOrOpen(UUID)} or {@link #map(UUID, long)} must be
+ * paired with a call to {@link #close(UUID)}, and once the last reference is released, the blob is closed.
+ * All methods may be called from any thread.
+ * <p>
+ * To keep the number of open files bounded, at most {@link Config#maxOpenBlobChannels} file channels of
+ * blobs only accessed through memory mapped buffers are kept open. Beyond that, the least recently used
+ * ones are closed. Their mapped buffers stay valid, and the channels are reopened when needed. Channels
+ * returned by {@link #getOrOpen(UUID)} are never closed while the blob is open.
+ * <p>
+ * Note that overlay and compressed drives access their blobs through {@link #getOrOpen(UUID)}, so they
+ * always pin their channel. The limit does not bound the number of open files for those.
+ * <p>
+ * When {@link Config#blobDeduplicationChunkSize} is set, blobs that are closed are moved into a
+ * {@link BlobChunkStore} in the background, so that identical data in different blobs is only stored once.
+ * Such blobs are restored to a regular file when they are opened again. Blobs in use are therefore always
+ * private files, which keeps random access and memory mapping of blobs unaffected by deduplication.
+ * <p>
+ * Mapped buffers cannot be invalidated, so a blob is only deduplicated once all references to it have been
+ * released, and with them all buffers mapped from it. Blobs closed while still referenced, e.g. by
+ * {@link #close()}, are kept as regular files, and deduplicated the next time they are released.
  */
 public final class BlobStorage {
     private static final Logger LOGGER = LogManager.getLogger();
@@ -25,9 +61,19 @@ public final class BlobStorage {
     ///////////////////////////////////////////////////////////////////
 
     private static final LevelResource BLOBS_FOLDER_NAME = new LevelResource(API.MOD_ID + "-blobs");
-    private static final Map<UUID, FileChannel> BLOBS = new HashMap<>();
+    private static final String QUARANTINE_FOLDER_NAME = "quarantine";
+    private static final Map<UUID, Blob> BLOBS = new ConcurrentHashMap<>();
+    private static final LinkedHashMap<UUID, Blob> EVICTABLE_CHANNELS = new LinkedHashMap<>(16, 0.75f, true);
 
-    private static Path dataDirectory; // Directory blobs get saved to.
+    private static final Map<UUID, Future<?>> PENDING_STORES = new ConcurrentHashMap<>();
+    private static final ExecutorService DEDUPLICATION_WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Blob Deduplicator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile Path dataDirectory; // Directory blobs get saved to.
+    @Nullable private static volatile BlobChunkStore chunkStore;
 
     ///////////////////////////////////////////////////////////////////
 
@@ -41,27 +87,48 @@ public final class BlobStorage {
      * @param server the currently active server.
      */
     public static void setServer(final MinecraftServer server) {
-        dataDirectory = server.getWorldPath(BLOBS_FOLDER_NAME);
-        try {
-            Files.createDirectories(dataDirectory);
-        } catch (final IOException e) {
-            LOGGER.error(e);
-        }
+        setDataDirectory(server.getWorldPath(BLOBS_FOLDER_NAME));
     }
 
     /**
-     * Closes all currently open blobs.
+     * Closes all currently open blobs, regardless of how many references to them remain.
+     * <p>
+     * Waits for blobs being deduplicated, so that all blobs are in a consistent state when this returns.
      */
     public static void close() {
-        for (final FileChannel blob : BLOBS.values()) {
-            try {
-                blob.close();
-            } catch (final IOException e) {
-                LOGGER.error(e);
+        for (final UUID handle : new ArrayList<>(BLOBS.keySet())) {
+            final Blob blob = BLOBS.remove(handle);
+            if (blob != null) {
+                blob.dispose(true);
             }
         }
 
-        BLOBS.clear();
+        for (final UUID handle : new ArrayList<>(PENDING_STORES.keySet())) {
+            awaitStore(handle);
+        }
+    }
+
+    /**
+     * The number of currently open blobs.
+     */
+    public static int getOpenCount() {
+        return BLOBS.size();
+    }
+
+    /**
+     * The sum of the sizes of all deduplicated blobs, excluding blobs currently in use.
+     */
+    public static long getDeduplicatedSize() {
+        final BlobChunkStore store = chunkStore;
+        return store != null ? store.getLogicalSize() : 0;
+    }
+
+    /**
+     * The space actually used on disk by deduplicated blobs.
+     */
+    public static long getDeduplicatedStoredSize() {
+        final BlobChunkStore store = chunkStore;
+        return store != null ? store.getStoredSize() : 0;
     }
 
     /**
@@ -92,53 +159,473 @@ public final class BlobStorage {
     /**
      * Get or opens a file channel for the blob with the specified handle.
      * <p>
-     * The returned file channel supports random access.
+     * The returned file channel supports random access. It stays open until the blob is closed.
+     * <p>
+     * This acquires a reference to the blob, which must be released by calling {@link #close(UUID)}.
      *
      * @param handle the handle to obtain the file channel for.
      * @return the file channel for the requested blob.
      * @throws IOException if opening the blob fails.
      */
     public static FileChannel getOrOpen(final UUID handle) throws IOException {
-        FileChannel blob = BLOBS.get(handle);
-        if (blob != null && blob.isOpen()) {
-            return blob;
+        final Blob blob = acquire(handle);
+        try {
+            return blob.getChannel(true);
+        } catch (final IOException e) {
+            close(handle);
+            throw e;
         }
+    }
 
-        final Path path = dataDirectory.resolve(handle.toString());
-        blob = new RandomAccessFile(path.toFile(), "rw").getChannel();
-        BLOBS.put(handle, blob);
-        return blob;
+    /**
+     * Maps the blob with the specified handle into memory, growing it to the specified size if necessary.
+     * <p>
+     * Prefer this over mapping the channel returned by {@link #getOrOpen(UUID)}, as it allows closing
+     * the file channel while the mapped buffer is in use.
+     * <p>
+     * This acquires a reference to the blob, which must be released by calling {@link #close(UUID)}.
+     *
+     * @param handle the handle of the blob to map.
+     * @param size   the number of bytes to map.
+     * @return the mapped buffer.
+     * @throws IOException if opening or mapping the blob fails.
+     */
+    public static MappedByteBuffer map(final UUID handle, final long size) throws IOException {
+        final Blob blob = acquire(handle);
+        final MappedByteBuffer buffer;
+        try {
+            buffer = blob.map(size);
+        } catch (final IOException e) {
+            close(handle);
+            throw e;
+        }
+
+        evictChannels();
+        return buffer;
     }
 
     /**
-     * Closes the blob with the specified handle.
+     * Releases a reference to the blob with the specified handle, closing it if it was the last one.
+     * <p>
+     * If deduplication is enabled, the blob will be deduplicated in the background once closed.
      *
      * @param handle the handle of the blob to close.
      */
     public static void close(final UUID handle) {
-        try {
-            final FileChannel blob = BLOBS.remove(handle);
-            if (blob != null) {
-                blob.close();
-            }
-        } catch (final IOException e) {
-            LOGGER.error(e);
+        final Blob blob = BLOBS.get(handle);
+        if (blob != null && blob.release()) {
+            BLOBS.remove(handle, blob);
         }
     }
 
     /**
      * Deletes the blob with the specified handle.
+     * <p>
+     * The blob is closed first, regardless of how many references to it remain.
      *
      * @param handle the handle of the blob to delete.
      */
     public static void delete(final UUID handle) {
-        close(handle);
+        final Blob blob = BLOBS.remove(handle);
+        if (blob != null) {
+            blob.dispose(false);
+        }
+
+        deleteFiles(handle);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Sets the directory blobs get stored in directly.
+     *
+     * @param directory the directory to store blobs in.
+     */
+    static void setDataDirectory(final Path directory) {
+        dataDirectory = directory;
+        try {
+            Files.createDirectories(dataDirectory);
+            chunkStore = BlobChunkStore.open(dataDirectory);
+        } catch (final IOException e) {
+            LOGGER.error(e);
+            chunkStore = null;
+        }
+    }
+
+    static Path getDataDirectory() {
+        return dataDirectory;
+    }
+
+    static Path getQuarantineDirectory() {
+        return dataDirectory.resolve(QUARANTINE_FOLDER_NAME);
+    }
+
+    /**
+     * The number of open channels of blobs only accessed through mapped buffers, which may be closed.
+     */
+    static int getEvictableChannelCount() {
+        synchronized (EVICTABLE_CHANNELS) {
+            return EVICTABLE_CHANNELS.size();
+        }
+    }
+
+    /**
+     * Moves the blob with the specified handle into the quarantine directory if it is not open and the
+     * specified condition holds.
+     * <p>
+     * The blob cannot be opened while the condition is checked and the blob is moved. Deduplicated blobs
+     * are restored to a regular file in the quarantine directory. Quarantined blobs are moved back
+     * automatically when they are opened again, so no data is lost if a blob was still referenced after
+     * all. Quarantined blobs are only deleted by {@link #purgeQuarantine(long)}.
+     *
+     * @param handle         the handle of the blob to quarantine.
+     * @param isUnreferenced checks whether the blob may be quarantined.
+     * @return {@code true} if the blob was quarantined; {@code false} otherwise.
+     */
+    static boolean quarantineIfUnreferenced(final UUID handle, final BooleanSupplier isUnreferenced) {
+        // Don't block other threads accessing the map while waiting for the store.
+        awaitStore(handle);
+        if (!isUnreferenced.getAsBoolean()) {
+            return false;
+        }
+
+        final Path path = dataDirectory.resolve(handle.toString());
+        final Path quarantinePath = getQuarantineDirectory().resolve(handle.toString());
+        final boolean isPrepared;
+        try {
+            Files.createDirectories(quarantinePath.getParent());
+
+            // Restoring may take a while, so do it up front, to not block the map either.
+            final BlobChunkStore store = chunkStore;
+            isPrepared = store != null && !Files.exists(path) && store.contains(handle);
+            if (isPrepared) {
+                store.restore(handle, quarantinePath);
+            }
+        } catch (final IOException e) {
+            LOGGER.error("Failed quarantining blob [{}]: {}", handle, e.getMessage());
+            return false;
+        }
+
+        final boolean[] quarantined = {false};
+        BLOBS.compute(handle, (unused, blob) -> {
+            // If a new store was scheduled since, the blob was just in use, so leave it be for now.
+            if (blob == null && !isStorePending(handle) && isUnreferenced.getAsBoolean()) {
+                try {
+                    // A regular file is newer than any stored copy, since blobs are stored when closed.
+                    if (Files.exists(path)) {
+                        Files.move(path, quarantinePath, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    final BlobChunkStore store = chunkStore;
+                    if (store != null) {
+                        store.delete(handle);
+                    }
+                    quarantined[0] = Files.exists(quarantinePath);
+
+                    // Moving keeps the time of the last write, but expiry counts from the quarantine.
+                    if (quarantined[0]) {
+                        Files.setLastModifiedTime(quarantinePath, FileTime.fromMillis(System.currentTimeMillis()));
+                    }
+                } catch (final IOException e) {
+                    LOGGER.error("Failed quarantining blob [{}]: {}", handle, e.getMessage());
+                }
+            }
+            return blob;
+        });
+
+        if (!quarantined[0] && isPrepared) {
+            try {
+                Files.deleteIfExists(quarantinePath);
+            } catch (final IOException e) {
+                LOGGER.error(e);
+            }
+        }
+
+        return quarantined[0];
+    }
+
+    /**
+     * Deletes quarantined blobs for good, if they were quarantined before the specified time.
+     * <p>
+     * Blobs that are opened at the same time are left alone, since that moves them out of quarantine.
+     *
+     * @param quarantinedBefore the time in milliseconds since the epoch blobs must have been quarantined before.
+     * @return the number of deleted blobs.
+     */
+    public static int purgeQuarantine(final long quarantinedBefore) {
+        final Path quarantineDirectory = getQuarantineDirectory();
+        if (!Files.isDirectory(quarantineDirectory)) {
+            return 0;
+        }
+
+        final int[] count = {0};
+        try (final DirectoryStream<Path> paths = Files.newDirectoryStream(quarantineDirectory)) {
+            for (final Path path : paths) {
+                final UUID handle;
+                try {
+                    handle = UUID.fromString(path.getFileName().toString());
+                } catch (final IllegalArgumentException e) {
+                    continue;
+                }
+
+                BLOBS.compute(handle, (unused, blob) -> {
+                    if (blob == null) {
+                        try {
+                            if (Files.getLastModifiedTime(path).toMillis() < quarantinedBefore) {
+                                Files.delete(path);
+                                count[0]++;
+                            }
+                        } catch (final NoSuchFileException ignored) {
+                            // Restored concurrently.
+                        } catch (final IOException e) {
+                            LOGGER.error("Failed deleting quarantined blob [{}]: {}", handle, e.getMessage());
+                        }
+                    }
+                    return blob;
+                });
+            }
+        } catch (final IOException e) {
+            LOGGER.error("Failed listing quarantined blobs: {}", e.getMessage());
+        }
+
+        return count[0];
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static void deleteFiles(final UUID handle) {
+        awaitStore(handle);
 
         try {
             final Path path = dataDirectory.resolve(handle.toString());
             Files.deleteIfExists(path);
+            Files.deleteIfExists(getQuarantineDirectory().resolve(handle.toString()));
+            final BlobChunkStore store = chunkStore;
+            if (store != null) {
+                store.delete(handle);
+            }
         } catch (final Throwable e) {
             LOGGER.error(e);
         }
     }
+
+    private static Blob acquire(final UUID handle) {
+        BlobReferenceIndex.touch(handle);
+
+        for (; ; ) {
+            final Blob blob = BLOBS.computeIfAbsent(handle, Blob::new);
+            if (blob.acquire()) {
+                return blob;
+            }
+
+            // Lost a race against the last reference being released, try again with a new instance.
+            BLOBS.remove(handle, blob);
+        }
+    }
+
+    private static void evictChannels() {
+        final List<Blob> evicted = new ArrayList<>();
+        synchronized (EVICTABLE_CHANNELS) {
+            final Iterator<Blob> iterator = EVICTABLE_CHANNELS.values().iterator();
+            while (EVICTABLE_CHANNELS.size() > Config.maxOpenBlobChannels && iterator.hasNext()) {
+                evicted.add(iterator.next());
+                iterator.remove();
+            }
+        }
+
+        // Closing takes the lock of the blob, so don't do it while holding on to the list.
+        for (final Blob blob : evicted) {
+            blob.closeEvictedChannel();
+        }
+    }
+
+    private static void scheduleStore(final UUID handle) {
+        final BlobChunkStore store = chunkStore;
+        final int chunkSize = Config.blobDeduplicationChunkSize;
+        if (store == null || chunkSize <= 0) {
+            return;
+        }
+
+        final Path path = dataDirectory.resolve(handle.toString());
+        PENDING_STORES.values().removeIf(Future::isDone);
+        PENDING_STORES.put(handle, DEDUPLICATION_WORKER.submit(() -> {
+            try {
+                if (Files.exists(path)) {
+                    store.store(handle, path, chunkSize);
+
+                    // Only remove the regular file once the chunk map is complete, so we never lose data.
+                    Files.delete(path);
+                }
+            } catch (final IOException e) {
+                LOGGER.error("Failed deduplicating blob [{}]: {}", handle, e.getMessage());
+            }
+        }));
+    }
+
+    private static boolean isStorePending(final UUID handle) {
+        final Future<?> pending = PENDING_STORES.get(handle);
+        return pending != null && !pending.isDone();
+    }
+
+    private static void awaitStore(final UUID handle) {
+        final Future<?> pending = PENDING_STORES.remove(handle);
+        if (pending == null) {
+            return;
+        }
+
+        try {
+            pending.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            LOGGER.error(e);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static final class Blob {
+        public final UUID handle;
+        private final List<MappedByteBuffer> mappedBuffers = new ArrayList<>();
+        @Nullable private FileChannel channel;
+        private int referenceCount;
+        private boolean isChannelInUse;
+        private boolean isRestored;
+        private boolean isDisposed;
+
+        public Blob(final UUID handle) {
+            this.handle = handle;
+        }
+
+        public synchronized boolean acquire() {
+            if (isDisposed) {
+                return false;
+            }
+
+            referenceCount++;
+            return true;
+        }
+
+        /**
+         * Releases a reference, disposing this blob if it was the last one.
+         *
+         * @return {@code true} if this blob was disposed; {@code false} otherwise.
+         */
+        public synchronized boolean release() {
+            if (isDisposed || --referenceCount > 0) {
+                return false;
+            }
+
+            dispose(true);
+            return true;
+        }
+
+        public synchronized void dispose(final boolean store) {
+            if (isDisposed) {
+                return;
+            }
+
+            isDisposed = true;
+            final boolean isReleased = referenceCount <= 0;
+            referenceCount = 0;
+
+            for (final MappedByteBuffer buffer : mappedBuffers) {
+                try {
+                    buffer.force();
+                } catch (final Throwable e) {
+                    LOGGER.error(e);
+                }
+            }
+            mappedBuffers.clear();
+
+            closeChannel();
+
+            // Holders of remaining references may still write to their mapped buffers, after the store
+            // copied the file, and before it is deleted, so only store blobs no one holds on to anymore.
+            // Schedule while still holding the lock, so anyone opening this blob again waits for it.
+            if (store && isReleased) {
+                scheduleStore(handle);
+            }
+        }
+
+        public synchronized FileChannel getChannel(final boolean keepOpen) throws IOException {
+            if (isDisposed) {
+                throw new IOException("Blob was closed.");
+            }
+
+            if (channel == null) {
+                channel = open();
+            }
+
+            if (keepOpen) {
+                isChannelInUse = true;
+            }
+
+            synchronized (EVICTABLE_CHANNELS) {
+                if (isChannelInUse) {
+                    EVICTABLE_CHANNELS.remove(handle, this);
+                } else {
+                    EVICTABLE_CHANNELS.put(handle, this);
+                }
+            }
+
+            return channel;
+        }
+
+        public synchronized MappedByteBuffer map(final long size) throws IOException {
+            final MappedByteBuffer buffer = getChannel(false).map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mappedBuffers.add(buffer);
+            return buffer;
+        }
+
+        public synchronized void closeEvictedChannel() {
+            if (!isChannelInUse) {
+                closeChannel();
+            }
+        }
+
+        private void closeChannel() {
+            synchronized (EVICTABLE_CHANNELS) {
+                EVICTABLE_CHANNELS.remove(handle, this);
+            }
+
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException e) {
+                    LOGGER.error(e);
+                }
+                channel = null;
+            }
+        }
+
+        private FileChannel open() throws IOException {
+            final Path path = dataDirectory.resolve(handle.toString());
+
+            if (!isRestored) {
+                awaitStore(handle);
+
+                // Still referenced after all, so undo the quarantine. The quarantined copy is the most
+                // recent one, since blobs are removed from the chunk store when quarantined.
+                final Path quarantinePath = getQuarantineDirectory().resolve(handle.toString());
+                if (!Files.exists(path) && Files.exists(quarantinePath)) {
+                    Files.move(quarantinePath, path);
+                    LOGGER.info("Restored blob [{}] from quarantine.", handle);
+                }
+
+                final BlobChunkStore store = chunkStore;
+                if (store != null && !Files.exists(path) && store.contains(handle)) {
+                    store.restore(handle, path);
+
+                    // If deduplication was disabled since, go back to only keeping the regular file.
+                    if (Config.blobDeduplicationChunkSize <= 0) {
+                        store.delete(handle);
+                    }
+                }
+
+                isRestored = true;
+            }
+
+            return new RandomAccessFile(path.toFile(), "rw").getChannel();
+        }
+    }
 }
@@ -0,0 +1,125 @@
+package li.cil.oc2.common.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * I/O counters of a single block device.
+ * <p>
+ * Counters may be updated from any thread. Statistics of devices that are currently in use are
+ * tracked globally while registered, so that administrators can find the busiest drives on the
+ * server, see {@link #getTopDisks(int)}.
+ */
+public final class DiskStatistics {
+    private static final Set<DiskStatistics> REGISTERED = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final String type;
+    private final Supplier<Optional<Location>> location;
+
+    private final LongAdder readOperations = new LongAdder();
+    private final LongAdder readBytes = new LongAdder();
+    private final LongAdder writeOperations = new LongAdder();
+    private final LongAdder writtenBytes = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates new statistics for a block device.
+     *
+     * @param type     the type of the block device, for display.
+     * @param location the location of the block device, for display.
+     */
+    public DiskStatistics(final String type, final Supplier<Optional<Location>> location) {
+        this.type = type;
+        this.location = location;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the registered statistics with the most traffic, read and written.
+     *
+     * @param count the maximum number of statistics to return.
+     * @return the statistics with the most traffic, in descending order.
+     */
+    public static List<DiskStatistics> getTopDisks(final int count) {
+        final ArrayList<DiskStatistics> statistics;
+        synchronized (REGISTERED) {
+            statistics = new ArrayList<>(REGISTERED);
+        }
+
+        return statistics.stream()
+            .sorted(Comparator.comparingLong(DiskStatistics::getTotalBytes).reversed())
+            .limit(count)
+            .toList();
+    }
+
+    public void register() {
+        REGISTERED.add(this);
+    }
+
+    public void unregister() {
+        REGISTERED.remove(this);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Optional<Location> getLocation() {
+        return location.get();
+    }
+
+    public long getTotalBytes() {
+        return readBytes.sum() + writtenBytes.sum();
+    }
+
+    public void recordReadOperation() {
+        readOperations.increment();
+    }
+
+    public void recordRead(final long bytes) {
+        readBytes.add(bytes);
+    }
+
+    public void recordWriteOperation() {
+        writeOperations.increment();
+    }
+
+    public void recordWritten(final long bytes) {
+        writtenBytes.add(bytes);
+    }
+
+    public void recordThrottled() {
+        throttled.increment();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Point in time copy of the counters, for consumption by RPC and commands.
+     */
+    public static final class Snapshot {
+        public final long readOperations;
+        public final long readBytes;
+        public final long writeOperations;
+        public final long writtenBytes;
+        public final long throttled;
+
+        private Snapshot(final DiskStatistics statistics) {
+            readOperations = statistics.readOperations.sum();
+            readBytes = statistics.readBytes.sum();
+            writeOperations = statistics.writeOperations.sum();
+            writtenBytes = statistics.writtenBytes.sum();
+            throttled = statistics.throttled.sum();
+        }
+    }
+}
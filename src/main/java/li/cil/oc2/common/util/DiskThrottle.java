@@ -0,0 +1,91 @@
+package li.cil.oc2.common.util;
+
+import li.cil.oc2.common.Constants;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limit of a single block device, in bytes and operations per second.
+ * <p>
+ * Block devices are accessed synchronously by the virtual machine using them, so requests cannot be
+ * delayed without stalling the runner thread. Instead, requests always pass and may put the throttle
+ * into debt, and the owner is expected to suspend the virtual machine until {@link #hasCapacity()}
+ * holds again. Since block devices are not ticked, buckets are refilled based on the elapsed time
+ * whenever they are used.
+ */
+public final class DiskThrottle {
+    private static final long NANOS_PER_TICK = TimeUnit.SECONDS.toNanos(1) / Constants.SECONDS_TO_TICKS;
+
+    ///////////////////////////////////////////////////////////////////
+
+    @Nullable private final TokenBucket bytes;
+    @Nullable private final TokenBucket operations;
+    private long lastRefill = System.nanoTime();
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates a new throttle allowing bursts of up to one second worth of traffic.
+     *
+     * @param bytesPerSecond      the number of bytes that may be transferred per second, zero for no limit.
+     * @param operationsPerSecond the number of operations that may be started per second, zero for no limit.
+     */
+    public DiskThrottle(final int bytesPerSecond, final int operationsPerSecond) {
+        this.bytes = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond) : null;
+        this.operations = operationsPerSecond > 0 ? new TokenBucket(operationsPerSecond, operationsPerSecond) : null;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    public boolean isEnabled() {
+        return bytes != null || operations != null;
+    }
+
+    /**
+     * Takes one operation from the throttle.
+     *
+     * @return {@code true} if the throttle has capacity left; {@code false} if it is now in debt.
+     */
+    public synchronized boolean consumeOperation() {
+        if (operations != null) {
+            operations.consume(1);
+        }
+        return hasCapacity();
+    }
+
+    /**
+     * Takes the specified number of bytes from the throttle.
+     *
+     * @param count the number of bytes transferred.
+     * @return {@code true} if the throttle has capacity left; {@code false} if it is now in debt.
+     */
+    public synchronized boolean consumeBytes(final int count) {
+        if (bytes != null) {
+            bytes.consume(count);
+        }
+        return hasCapacity();
+    }
+
+    /**
+     * Refills the throttle for the time elapsed since the last refill and checks whether it has
+     * paid off its debt.
+     *
+     * @return {@code true} if the throttle has capacity left; {@code false} if it is in debt.
+     */
+    public synchronized boolean hasCapacity() {
+        final long now = System.nanoTime();
+        final long ticks = (now - lastRefill) / NANOS_PER_TICK;
+        if (ticks > 0) {
+            lastRefill += ticks * NANOS_PER_TICK;
+            if (bytes != null) {
+                bytes.refill(ticks);
+            }
+            if (operations != null) {
+                operations.refill(ticks);
+            }
+        }
+
+        return (bytes == null || bytes.hasTokens()) && (operations == null || operations.hasTokens());
+    }
+}
@@ -0,0 +1,159 @@
+package li.cil.oc2.common.util;
+
+import li.cil.oc2.api.capabilities.NetworkInterface;
+
+public final class EthernetFrameUtils {
+    public static final int MAC_ADDRESS_LENGTH = 6;
+    public static final int HEADER_LENGTH = 2 * MAC_ADDRESS_LENGTH + 2;
+    public static final int VLAN_TAG_LENGTH = 4;
+    public static final int DEFAULT_VLAN_ID = 0;
+    public static final int MAX_VLAN_ID = 4094;
+
+    private static final int DESTINATION_OFFSET = 0;
+    private static final int SOURCE_OFFSET = MAC_ADDRESS_LENGTH;
+    private static final int TYPE_OFFSET = 2 * MAC_ADDRESS_LENGTH;
+    private static final int GROUP_ADDRESS_BIT = 0x01;
+    private static final int VLAN_TAG_PROTOCOL_ID = 0x8100;
+    private static final int VLAN_ID_MASK = 0x0FFF;
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static boolean hasHeader(final byte[] frame) {
+        return frame.length >= HEADER_LENGTH;
+    }
+
+    /**
+     * Returns the destination MAC address of the frame, packed into the lower 48 bits of a long.
+     * <p>
+     * The frame must have a complete header, see {@link #hasHeader(byte[])}.
+     *
+     * @param frame the frame to get the destination address of.
+     * @return the destination address.
+     */
+    public static long getDestination(final byte[] frame) {
+        return readAddress(frame, DESTINATION_OFFSET);
+    }
+
+    /**
+     * Returns the source MAC address of the frame, packed into the lower 48 bits of a long.
+     * <p>
+     * The frame must have a complete header, see {@link #hasHeader(byte[])}.
+     *
+     * @param frame the frame to get the source address of.
+     * @return the source address.
+     */
+    public static long getSource(final byte[] frame) {
+        return readAddress(frame, SOURCE_OFFSET);
+    }
+
+    /**
+     * Checks whether the address is a group address, i.e. a multicast or broadcast address.
+     *
+     * @param address the address to check.
+     * @return {@code true} if the address is a group address; {@code false} otherwise.
+     */
+    public static boolean isGroupAddress(final long address) {
+        return ((address >>> 40) & GROUP_ADDRESS_BIT) != 0;
+    }
+
+    /**
+     * Returns the VLAN id of the frame, as stored in its 802.1Q tag.
+     * <p>
+     * Frames without a tag belong to the {@link #DEFAULT_VLAN_ID default VLAN}.
+     *
+     * @param frame the frame to get the VLAN id of.
+     * @return the VLAN id of the frame.
+     */
+    public static int getVlanId(final byte[] frame) {
+        if (!isVlanTagged(frame)) {
+            return DEFAULT_VLAN_ID;
+        }
+
+        return readShort(frame, TYPE_OFFSET + 2) & VLAN_ID_MASK;
+    }
+
+    /**
+     * Checks whether the frame carries an 802.1Q tag.
+     *
+     * @param frame the frame to check.
+     * @return {@code true} if the frame is tagged; {@code false} otherwise.
+     */
+    public static boolean isVlanTagged(final byte[] frame) {
+        return frame.length >= HEADER_LENGTH + VLAN_TAG_LENGTH &&
+            readShort(frame, TYPE_OFFSET) == VLAN_TAG_PROTOCOL_ID;
+    }
+
+    /**
+     * Returns a copy of the frame with an 802.1Q tag for the specified VLAN inserted after the addresses.
+     * <p>
+     * Frames without a complete header and frames for the {@link #DEFAULT_VLAN_ID default VLAN} are
+     * returned as-is.
+     *
+     * @param frame  the frame to tag.
+     * @param vlanId the VLAN id to tag the frame with.
+     * @return the tagged frame.
+     */
+    public static byte[] addVlanTag(final byte[] frame, final int vlanId) {
+        if (vlanId == DEFAULT_VLAN_ID || !hasHeader(frame)) {
+            return frame;
+        }
+
+        final byte[] result = new byte[frame.length + VLAN_TAG_LENGTH];
+        System.arraycopy(frame, 0, result, 0, TYPE_OFFSET);
+        writeShort(result, TYPE_OFFSET, VLAN_TAG_PROTOCOL_ID);
+        writeShort(result, TYPE_OFFSET + 2, vlanId & VLAN_ID_MASK);
+        System.arraycopy(frame, TYPE_OFFSET, result, TYPE_OFFSET + VLAN_TAG_LENGTH, frame.length - TYPE_OFFSET);
+        return result;
+    }
+
+    /**
+     * Returns a copy of the frame with its 802.1Q tag removed.
+     * <p>
+     * Frames without a tag are returned as-is.
+     *
+     * @param frame the frame to remove the tag from.
+     * @return the untagged frame.
+     */
+    public static byte[] removeVlanTag(final byte[] frame) {
+        if (!isVlanTagged(frame)) {
+            return frame;
+        }
+
+        final byte[] result = new byte[frame.length - VLAN_TAG_LENGTH];
+        System.arraycopy(frame, 0, result, 0, TYPE_OFFSET);
+        System.arraycopy(frame, TYPE_OFFSET + VLAN_TAG_LENGTH, result, TYPE_OFFSET, result.length - TYPE_OFFSET);
+        return result;
+    }
+
+    /**
+     * Checks whether the specified network interface will accept frames of the specified VLAN.
+     * <p>
+     * Only {@link VlanPort}s are restricted to a single VLAN, all other interfaces accept all frames.
+     *
+     * @param networkInterface the network interface to check.
+     * @param vlanId           the VLAN id of the frame.
+     * @return {@code true} if the interface accepts frames of the VLAN; {@code false} otherwise.
+     */
+    public static boolean acceptsVlan(final NetworkInterface networkInterface, final int vlanId) {
+        return !(networkInterface instanceof final VlanPort port) || port.getVlanId() == vlanId;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static int readShort(final byte[] frame, final int offset) {
+        return ((frame[offset] & 0xFF) << 8) | (frame[offset + 1] & 0xFF);
+    }
+
+    private static void writeShort(final byte[] frame, final int offset, final int value) {
+        frame[offset] = (byte) (value >>> 8);
+        frame[offset + 1] = (byte) value;
+    }
+
+    private static long readAddress(final byte[] frame, final int offset) {
+        long address = 0;
+        for (int i = 0; i < MAC_ADDRESS_LENGTH; i++) {
+            address = (address << 8) | (frame[offset + i] & 0xFF);
+        }
+        return address;
+    }
+}
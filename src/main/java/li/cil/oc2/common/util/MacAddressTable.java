@@ -0,0 +1,123 @@
+package li.cil.oc2.common.util;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Maps MAC addresses to the port they were last seen on, as used by learning switches.
+ * <p>
+ * Addresses are learned per VLAN, so the same address may be seen on different ports in different
+ * VLANs without the entries replacing each other, and lookups never yield ports of another VLAN.
+ * <p>
+ * Entries expire after a fixed number of ticks without being refreshed, so that devices moving
+ * to another port are picked up again. The table is bounded in size, to keep spoofed source
+ * addresses from growing it indefinitely.
+ *
+ * @param <T> the type identifying a port.
+ */
+public final class MacAddressTable<T> {
+    private final HashMap<Long, Entry<T>> entries = new HashMap<>();
+    private final int maxEntryCount;
+    private final long maxAge;
+
+    ///////////////////////////////////////////////////////////////////
+
+    public MacAddressTable(final int maxEntryCount, final long maxAge) {
+        this.maxEntryCount = maxEntryCount;
+        this.maxAge = maxAge;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Remembers that the specified address was seen on the specified port.
+     *
+     * @param vlanId  the VLAN id of the frame.
+     * @param address the source address of a frame.
+     * @param port    the port the frame arrived on.
+     * @param now     the current time, in ticks.
+     */
+    public void learn(final int vlanId, final long address, final T port, final long now) {
+        if (EthernetFrameUtils.isGroupAddress(address)) {
+            return;
+        }
+
+        final long key = getKey(vlanId, address);
+        final Entry<T> entry = entries.get(key);
+        if (entry != null) {
+            entry.port = port;
+            entry.lastSeen = now;
+            return;
+        }
+
+        if (entries.size() >= maxEntryCount) {
+            removeExpired(now);
+            if (entries.size() >= maxEntryCount) {
+                return;
+            }
+        }
+
+        entries.put(key, new Entry<>(port, now));
+    }
+
+    /**
+     * Gets the port the specified address was last seen on.
+     *
+     * @param vlanId  the VLAN id of the frame.
+     * @param address the destination address of a frame.
+     * @param now     the current time, in ticks.
+     * @return the port of the address in the VLAN, or {@code null} if unknown or expired.
+     */
+    @Nullable
+    public T get(final int vlanId, final long address, final long now) {
+        final long key = getKey(vlanId, address);
+        final Entry<T> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (now - entry.lastSeen > maxAge) {
+            entries.remove(key);
+            return null;
+        }
+
+        return entry.port;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static long getKey(final int vlanId, final long address) {
+        // Addresses only take up the lower 48 bits, which leaves plenty of room for the VLAN id.
+        return ((long) vlanId << 48) | address;
+    }
+
+    private void removeExpired(final long now) {
+        final Iterator<Entry<T>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastSeen > maxAge) {
+                iterator.remove();
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static final class Entry<T> {
+        public T port;
+        public long lastSeen;
+
+        public Entry(final T port, final long lastSeen) {
+            this.port = port;
+            this.lastSeen = lastSeen;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package li.cil.oc2.common.util;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.TickTask;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.server.ServerLifecycleHooks;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves network frames in between server ticks, while there is network traffic.
+ * <p>
+ * Frame sources, such as network connectors, move frames during their regular tick. When only
+ * doing so, each hop adds up to a tick of latency, since the virtual machines producing frames
+ * run asynchronously to the server tick. To reduce this, registered pumps are additionally run
+ * on the server thread while it is idle, waiting for the next tick. This only happens for a short
+ * while after frames were moved, so idle networks cost nothing.
+ * <p>
+ * Passes are requested by a timer, and at most one pass is queued with the server at any time.
+ * The server's task queue is thus empty most of the time, which matters, because the server only
+ * processes chunk loading and generation tasks while it is. The number of passes per tick is
+ * bounded, too, so busy networks cannot keep the server thread busy in between ticks.
+ */
+public final class NetworkPumps {
+    @FunctionalInterface
+    public interface Pump {
+        /**
+         * Moves pending frames.
+         *
+         * @return {@code true} if any frames were moved; {@code false} otherwise.
+         */
+        boolean pumpFrames();
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static final long PUMP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final int MAX_PASSES_PER_TICK = 20;
+    private static final int ACTIVE_TICKS_AFTER_TRAFFIC = TickUtils.toTicks(Duration.ofSeconds(1));
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Network Pump Timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Set<Pump> PUMPS = Collections.newSetFromMap(new WeakHashMap<>());
+
+    // Set from any thread, e.g. by network bridges receiving frames, and sampled on tick.
+    private static final AtomicBoolean HAS_TRAFFIC = new AtomicBoolean();
+    private static final AtomicBoolean IS_PASS_QUEUED = new AtomicBoolean();
+
+    // Only accessed from the server thread.
+    private static int remainingActiveTicks;
+    private static int passesThisTick;
+    @Nullable private static ScheduledFuture<?> timer;
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static void initialize() {
+        MinecraftForge.EVENT_BUS.addListener(NetworkPumps::handleServerTick);
+        MinecraftForge.EVENT_BUS.addListener(NetworkPumps::handleServerStopped);
+    }
+
+    public static void add(final Pump pump) {
+        PUMPS.add(pump);
+    }
+
+    public static void remove(final Pump pump) {
+        PUMPS.remove(pump);
+    }
+
+    /**
+     * Signals that frames were moved, keeping pumps running in between ticks for a while.
+     * <p>
+     * May be called from any thread.
+     */
+    public static void notifyTraffic() {
+        HAS_TRAFFIC.set(true);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static void handleServerTick(final TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) {
+            return;
+        }
+
+        if (HAS_TRAFFIC.getAndSet(false)) {
+            remainingActiveTicks = ACTIVE_TICKS_AFTER_TRAFFIC;
+        } else if (remainingActiveTicks > 0) {
+            remainingActiveTicks--;
+        }
+
+        passesThisTick = 0;
+
+        if (remainingActiveTicks > 0 && timer == null) {
+            final MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+            if (server != null) {
+                timer = TIMER.scheduleAtFixedRate(() -> requestPass(server), PUMP_INTERVAL_NANOS, PUMP_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+            }
+        } else if (remainingActiveTicks <= 0) {
+            stopTimer();
+        }
+    }
+
+    private static void handleServerStopped(final ServerStoppedEvent event) {
+        stopTimer();
+        PUMPS.clear();
+        HAS_TRAFFIC.set(false);
+        IS_PASS_QUEUED.set(false);
+        remainingActiveTicks = 0;
+    }
+
+    private static void stopTimer() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+    }
+
+    private static void requestPass(final MinecraftServer server) {
+        // Tasks only get run while the server waits for the next tick, which is exactly what we want.
+        // Use tell() instead of execute(), the latter runs tasks immediately when on the server thread.
+        if (IS_PASS_QUEUED.compareAndSet(false, true)) {
+            server.tell(new TickTask(server.getTickCount(), NetworkPumps::pump));
+        }
+    }
+
+    private static void pump() {
+        IS_PASS_QUEUED.set(false);
+        if (timer == null || passesThisTick >= MAX_PASSES_PER_TICK) {
+            return;
+        }
+
+        passesThisTick++;
+
+        boolean didMoveFrames = false;
+        for (final Pump pump : new ArrayList<>(PUMPS)) {
+            didMoveFrames |= pump.pumpFrames();
+        }
+
+        if (didMoveFrames) {
+            notifyTraffic();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package li.cil.oc2.common.util;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.LevelAccessor;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Traffic counters and capture tap of a single network interface.
+ * <p>
+ * Counters may be updated from any thread. Statistics of interfaces that are currently in use are
+ * tracked globally while registered, so that administrators can find the busiest interfaces on the
+ * server, see {@link #getTopTalkers(int)}.
+ */
+public final class NetworkStatistics {
+    private static final Set<NetworkStatistics> REGISTERED = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final String type;
+    private final Supplier<Optional<Location>> location;
+    private final boolean isEndpoint;
+    @Nullable private volatile PacketCapture capture;
+
+    private final LongAdder receivedFrames = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+    private final LongAdder sentFrames = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder droppedTimeToLive = new LongAdder();
+    private final LongAdder droppedNotRunning = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates new statistics for a network interface.
+     *
+     * @param type       the type of the network interface, for display.
+     * @param location   the location of the network interface, for display and lookup.
+     * @param isEndpoint whether frames sent by the interface originate from it, as opposed to being
+     *                   forwarded. Sent frames of forwarding interfaces are not captured, since they
+     *                   were already captured when they were received.
+     */
+    public NetworkStatistics(final String type, final Supplier<Optional<Location>> location, final boolean isEndpoint) {
+        this.type = type;
+        this.location = location;
+        this.isEndpoint = isEndpoint;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the registered statistics with the most traffic, sent and received.
+     *
+     * @param count the maximum number of statistics to return.
+     * @return the statistics with the most traffic, in descending order.
+     */
+    public static List<NetworkStatistics> getTopTalkers(final int count) {
+        final ArrayList<NetworkStatistics> statistics;
+        synchronized (REGISTERED) {
+            statistics = new ArrayList<>(REGISTERED);
+        }
+
+        return statistics.stream()
+            .sorted(Comparator.comparingLong(NetworkStatistics::getTotalBytes).reversed())
+            .limit(count)
+            .toList();
+    }
+
+    /**
+     * Returns the registered statistics of network interfaces at the specified location.
+     *
+     * @param level the level the network interfaces are in.
+     * @param pos   the position of the network interfaces.
+     * @return the statistics at the location.
+     */
+    public static List<NetworkStatistics> getAt(final LevelAccessor level, final BlockPos pos) {
+        final ArrayList<NetworkStatistics> statistics;
+        synchronized (REGISTERED) {
+            statistics = new ArrayList<>(REGISTERED);
+        }
+
+        statistics.removeIf(value -> !value.getLocation()
+            .map(location -> location.level() == level && location.pos().equals(pos))
+            .orElse(false));
+        return statistics;
+    }
+
+    public void register() {
+        REGISTERED.add(this);
+    }
+
+    public void unregister() {
+        REGISTERED.remove(this);
+        stopCapture();
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Optional<Location> getLocation() {
+        return location.get();
+    }
+
+    public long getTotalBytes() {
+        return receivedBytes.sum() + sentBytes.sum();
+    }
+
+    public boolean isCapturing() {
+        return capture != null;
+    }
+
+    /**
+     * Starts capturing frames passing this network interface to the specified capture, stopping
+     * any previously running capture.
+     *
+     * @param value the capture to write to.
+     */
+    public void startCapture(final PacketCapture value) {
+        stopCapture();
+        capture = value;
+    }
+
+    public void stopCapture() {
+        final PacketCapture value = capture;
+        capture = null;
+        if (value != null) {
+            value.close();
+        }
+    }
+
+    public void recordReceived(final byte[] frame) {
+        receivedFrames.increment();
+        receivedBytes.add(frame.length);
+
+        final PacketCapture value = capture;
+        if (value != null) {
+            value.offer(frame);
+        }
+    }
+
+    public void recordSent(final byte[] frame) {
+        sentFrames.increment();
+        sentBytes.add(frame.length);
+
+        final PacketCapture value = capture;
+        if (value != null && isEndpoint) {
+            value.offer(frame);
+        }
+    }
+
+    public void recordDroppedTimeToLive() {
+        droppedTimeToLive.increment();
+    }
+
+    public void recordDroppedNotRunning() {
+        droppedNotRunning.increment();
+    }
+
+    public void recordThrottled() {
+        throttled.increment();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Point in time copy of the counters, for consumption by RPC and commands.
+     */
+    public static final class Snapshot {
+        public final long receivedFrames;
+        public final long receivedBytes;
+        public final long sentFrames;
+        public final long sentBytes;
+        public final long droppedTimeToLive;
+        public final long droppedNotRunning;
+        public final long throttled;
+
+        private Snapshot(final NetworkStatistics statistics) {
+            receivedFrames = statistics.receivedFrames.sum();
+            receivedBytes = statistics.receivedBytes.sum();
+            sentFrames = statistics.sentFrames.sum();
+            sentBytes = statistics.sentBytes.sum();
+            droppedTimeToLive = statistics.droppedTimeToLive.sum();
+            droppedNotRunning = statistics.droppedNotRunning.sum();
+            throttled = statistics.throttled.sum();
+        }
+    }
+}
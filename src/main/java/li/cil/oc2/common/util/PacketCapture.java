@@ -0,0 +1,228 @@
+package li.cil.oc2.common.util;
+
+import li.cil.oc2.api.API;
+import li.cil.oc2.common.Config;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.storage.LevelResource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes captured ethernet frames to pcap files in the world folder.
+ * <p>
+ * Frames are queued in a bounded queue and written on a background thread, so capturing never
+ * blocks the thread forwarding the frames. When the queue is full, frames are not captured.
+ * Captures are written to a ring of files of limited size: once a file is full, the next one is
+ * started, overwriting the oldest one.
+ */
+public final class PacketCapture {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static final LevelResource CAPTURES_FOLDER_NAME = new LevelResource(API.MOD_ID + "-captures");
+
+    private static final int PCAP_MAGIC = 0xA1B2C3D4;
+    private static final short PCAP_VERSION_MAJOR = 2;
+    private static final short PCAP_VERSION_MINOR = 4;
+    private static final int PCAP_SNAP_LENGTH = 0xFFFF;
+    private static final int PCAP_LINK_TYPE_ETHERNET = 1;
+    private static final int PCAP_FILE_HEADER_SIZE = 24;
+    private static final int PCAP_RECORD_HEADER_SIZE = 16;
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r);
+        thread.setDaemon(true);
+        thread.setName("Network Capture Writer");
+        return thread;
+    });
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final Path directory;
+    private final String name;
+    private final ArrayBlockingQueue<Record> queue = new ArrayBlockingQueue<>(Config.networkCaptureQueueSize);
+    private final AtomicBoolean isScheduled = new AtomicBoolean();
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile boolean isClosed;
+
+    // Only accessed from the writer thread.
+    private final ByteBuffer header = ByteBuffer.allocate(PCAP_FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    @Nullable private FileChannel channel;
+    private int fileIndex = -1;
+    private long fileSize;
+    private boolean isFinished;
+
+    ///////////////////////////////////////////////////////////////////
+
+    private PacketCapture(final Path directory, final String name) {
+        this.directory = directory;
+        this.name = name;
+    }
+
+    /**
+     * Creates a new capture, writing to files with the specified name in the captures folder of the world.
+     *
+     * @param server the server whose world folder to write to.
+     * @param name   the base name of the capture files.
+     * @return the new capture.
+     * @throws IOException if the captures folder could not be created.
+     */
+    public static PacketCapture open(final MinecraftServer server, final String name) throws IOException {
+        final Path directory = server.getWorldPath(CAPTURES_FOLDER_NAME);
+        Files.createDirectories(directory);
+        return new PacketCapture(directory, name);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Queues a frame for writing. The frame is not copied, as per the ownership rules of frames.
+     *
+     * @param frame the frame to capture.
+     */
+    public void offer(final byte[] frame) {
+        if (isClosed) {
+            return;
+        }
+
+        if (!queue.offer(new Record(Instant.now(), frame))) {
+            droppedCount.increment();
+        }
+
+        schedule();
+    }
+
+    /**
+     * Stops capturing. Frames queued so far are still written.
+     */
+    public void close() {
+        isClosed = true;
+        schedule();
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private void schedule() {
+        if (isScheduled.compareAndSet(false, true)) {
+            WRITER.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        // Reset first, so frames queued while we're draining schedule another run.
+        isScheduled.set(false);
+
+        if (isFinished) {
+            queue.clear();
+            return;
+        }
+
+        try {
+            Record record;
+            while ((record = queue.poll()) != null) {
+                write(record);
+            }
+
+            if (isClosed) {
+                finish();
+            }
+        } catch (final IOException e) {
+            LOGGER.error("Failed writing network capture [{}], stopping capture.", name, e);
+            isClosed = true;
+            finish();
+        }
+    }
+
+    private void write(final Record record) throws IOException {
+        final int capturedLength = Math.min(record.frame().length, PCAP_SNAP_LENGTH);
+        final long recordSize = PCAP_RECORD_HEADER_SIZE + capturedLength;
+        if (channel == null || (fileSize > PCAP_FILE_HEADER_SIZE && fileSize + recordSize > Config.networkCaptureMaxFileSize)) {
+            nextFile();
+        }
+        assert channel != null;
+
+        header.clear();
+        header.putInt((int) record.timestamp().getEpochSecond());
+        header.putInt(record.timestamp().getNano() / 1000);
+        header.putInt(capturedLength);
+        header.putInt(record.frame().length);
+        header.flip();
+        writeFully(header);
+        writeFully(ByteBuffer.wrap(record.frame(), 0, capturedLength));
+
+        fileSize += recordSize;
+    }
+
+    private void nextFile() throws IOException {
+        closeChannel();
+
+        fileIndex = (fileIndex + 1) % Math.max(1, Config.networkCaptureFileCount);
+        final Path path = directory.resolve(name + "." + fileIndex + ".pcap");
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        header.clear();
+        header.putInt(PCAP_MAGIC);
+        header.putShort(PCAP_VERSION_MAJOR);
+        header.putShort(PCAP_VERSION_MINOR);
+        header.putInt(0); // Time zone offset, always UTC.
+        header.putInt(0); // Timestamp accuracy, always zero.
+        header.putInt(PCAP_SNAP_LENGTH);
+        header.putInt(PCAP_LINK_TYPE_ETHERNET);
+        header.flip();
+        writeFully(header);
+
+        fileSize = PCAP_FILE_HEADER_SIZE;
+    }
+
+    private void writeFully(final ByteBuffer buffer) throws IOException {
+        assert channel != null;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void finish() {
+        isFinished = true;
+        queue.clear();
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                LOGGER.error(e);
+            }
+            channel = null;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private record Record(Instant timestamp, byte[] frame) { }
+}
@@ -4,13 +4,23 @@ import net.minecraft.sounds.SoundEvent;
 import net.minecraft.sounds.SoundSource;
 import net.minecraft.util.Mth;
 import net.minecraft.world.level.LevelAccessor;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
 
 import java.time.Duration;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
 public final class ThrottledSoundEmitter {
+    private static final Queue<ThrottledSoundEmitter> REQUESTED = new ConcurrentLinkedQueue<>();
+
+    ///////////////////////////////////////////////////////////////////
+
     private final Supplier<Optional<Location>> location;
     private final SoundEvent sound;
     private long minInterval;
@@ -21,6 +31,7 @@ public final class ThrottledSoundEmitter {
     private float pitchVariance = 0.1f;
 
     private long lastEmittedTime;
+    private final AtomicBoolean isRequested = new AtomicBoolean();
 
     ///////////////////////////////////////////////////////////////////
 
@@ -33,6 +44,23 @@ public final class ThrottledSoundEmitter {
 
     ///////////////////////////////////////////////////////////////////
 
+    public static void initialize() {
+        MinecraftForge.EVENT_BUS.addListener(ThrottledSoundEmitter::handleServerTick);
+        MinecraftForge.EVENT_BUS.addListener(ThrottledSoundEmitter::handleServerStopped);
+    }
+
+    /**
+     * Requests the sound to be played at the end of the current server tick.
+     * <p>
+     * May be called from any thread. Requests are only flagged, and the flag is sampled once per
+     * tick, so calling this from hot paths, such as for every block device access, is cheap.
+     */
+    public void request() {
+        if (!isRequested.get() && !isRequested.getAndSet(true)) {
+            REQUESTED.add(this);
+        }
+    }
+
     public void play() {
         final long now = System.currentTimeMillis();
         if (now - lastEmittedTime > minInterval) {
@@ -78,6 +106,25 @@ public final class ThrottledSoundEmitter {
 
     ///////////////////////////////////////////////////////////////////
 
+    private static void handleServerTick(final TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) {
+            return;
+        }
+
+        ThrottledSoundEmitter emitter;
+        while ((emitter = REQUESTED.poll()) != null) {
+            emitter.isRequested.set(false);
+            emitter.play();
+        }
+    }
+
+    private static void handleServerStopped(final ServerStoppedEvent event) {
+        ThrottledSoundEmitter emitter;
+        while ((emitter = REQUESTED.poll()) != null) {
+            emitter.isRequested.set(false);
+        }
+    }
+
     private float sampleVolume(final Random random) {
         return Mth.clamp(volume + volumeVariance * (random.nextFloat() - 0.5f), 0, 1);
     }
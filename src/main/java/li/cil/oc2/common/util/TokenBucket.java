@@ -0,0 +1,55 @@
+package li.cil.oc2.common.util;
+
+import li.cil.oc2.common.Constants;
+
+/**
+ * Token bucket for rate limiting, refilled once per tick.
+ * <p>
+ * Tokens are tracked in units of {@code 1 / SECONDS_TO_TICKS}, so rates given per second do not
+ * need to be multiples of the tick rate. Consumers may take more tokens than available, putting the
+ * bucket into debt, which is paid off before any further consumption is allowed. This way arbitrarily
+ * large requests, such as oversized frames, will eventually pass, while the average rate holds.
+ */
+public final class TokenBucket {
+    private final long ratePerTick;
+    private final long capacity;
+    private long tokens;
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates a new, full token bucket.
+     *
+     * @param ratePerSecond the number of tokens added per second.
+     * @param burst         the maximum number of tokens the bucket can hold.
+     */
+    public TokenBucket(final int ratePerSecond, final int burst) {
+        this.ratePerTick = Math.max(0, ratePerSecond);
+        this.capacity = (long) Math.max(1, burst) * Constants.SECONDS_TO_TICKS;
+        this.tokens = capacity;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    public void refill() {
+        refill(1);
+    }
+
+    /**
+     * Refills the bucket for the specified number of elapsed ticks at once, for owners that are
+     * not ticked themselves.
+     *
+     * @param ticks the number of ticks elapsed since the last refill.
+     */
+    public void refill(final long ticks) {
+        tokens = Math.min(capacity, tokens + ratePerTick * Math.max(0, ticks));
+    }
+
+    public boolean hasTokens() {
+        return tokens > 0;
+    }
+
+    public void consume(final int amount) {
+        tokens -= (long) amount * Constants.SECONDS_TO_TICKS;
+    }
+}
@@ -0,0 +1,194 @@
+package li.cil.oc2.common.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Exchanges ethernet frames with another process on the same machine via UDP.
+ * <p>
+ * Both sides bind a port on the loopback address and send to the port of the other side. Frames
+ * to send are queued in a bounded queue and sent on a background thread, batching as many queued
+ * frames into a single datagram as fit. When the queue is full, frames are dropped. Received frames
+ * are passed to the receiver on another background thread, so the receiver must be thread-safe.
+ * <p>
+ * Datagrams consist of a magic number, followed by any number of frames, each prefixed by its
+ * length as an unsigned short. Datagrams from other than the loopback address, or without the
+ * magic number are ignored.
+ */
+public final class UdpFrameBridge implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static final int MAGIC = 0x4F433242; // OC2B
+    private static final int MAGIC_SIZE = 4;
+    private static final int FRAME_HEADER_SIZE = 2;
+    private static final int MAX_DATAGRAM_SIZE = 65507; // Maximum UDP payload over IPv4.
+    private static final int MAX_FRAME_SIZE = MAX_DATAGRAM_SIZE - MAGIC_SIZE - FRAME_HEADER_SIZE;
+    private static final long SEND_POLL_INTERVAL_MILLIS = 100;
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final DatagramSocket socket;
+    private final ArrayBlockingQueue<byte[]> sendQueue;
+    private final Consumer<byte[]> receiver;
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile int remotePort;
+    private volatile boolean isClosed;
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Opens a new bridge.
+     *
+     * @param localPort       the port to receive frames on, {@code 0} to pick any free port.
+     * @param remotePort      the port of the other side to send frames to.
+     * @param maxQueuedFrames the maximum number of frames waiting to be sent.
+     * @param receiver        called with received frames, from a background thread.
+     * @throws IOException if the local port could not be bound.
+     */
+    public UdpFrameBridge(final int localPort, final int remotePort, final int maxQueuedFrames, final Consumer<byte[]> receiver) throws IOException {
+        this.socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), localPort));
+        this.sendQueue = new ArrayBlockingQueue<>(maxQueuedFrames);
+        this.receiver = receiver;
+        this.remotePort = remotePort;
+
+        startThread("Network Bridge Sender", this::runSender);
+        startThread("Network Bridge Receiver", this::runReceiver);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    public void setRemotePort(final int remotePort) {
+        this.remotePort = remotePort;
+    }
+
+    /**
+     * The number of frames that were dropped because the send queue was full or they were too large.
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Queues a frame for sending to the other side.
+     * <p>
+     * Frames are sent as-is, so they must not be modified afterwards.
+     *
+     * @param frame the frame to send.
+     * @return {@code true} if the frame was queued; {@code false} if it was dropped.
+     */
+    public boolean send(final byte[] frame) {
+        if (isClosed || frame.length > MAX_FRAME_SIZE || !sendQueue.offer(frame)) {
+            droppedCount.increment();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+        socket.close();
+        sendQueue.clear();
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static void startThread(final String name, final Runnable runnable) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void runSender() {
+        final ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+
+        while (!isClosed) {
+            try {
+                byte[] frame = sendQueue.poll(SEND_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    continue;
+                }
+
+                buffer.clear();
+                buffer.putInt(MAGIC);
+                buffer.putShort((short) frame.length);
+                buffer.put(frame);
+
+                // Fill the datagram with as many queued frames as fit, leave the rest for the next one.
+                // We're the only consumer, so the frame we peeked is the one we take.
+                while ((frame = sendQueue.peek()) != null && buffer.remaining() >= FRAME_HEADER_SIZE + frame.length) {
+                    sendQueue.poll();
+                    buffer.putShort((short) frame.length);
+                    buffer.put(frame);
+                }
+
+                final int port = remotePort;
+                if (port > 0) {
+                    socket.send(new DatagramPacket(buffer.array(), buffer.position(), InetAddress.getLoopbackAddress(), port));
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final IOException e) {
+                if (!isClosed) {
+                    LOGGER.warn("Failed sending network bridge datagram: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void runReceiver() {
+        final byte[] data = new byte[MAX_DATAGRAM_SIZE];
+        final DatagramPacket packet = new DatagramPacket(data, data.length);
+
+        while (!isClosed) {
+            try {
+                packet.setLength(data.length);
+                socket.receive(packet);
+            } catch (final IOException e) {
+                if (!isClosed) {
+                    LOGGER.warn("Failed receiving network bridge datagram: {}", e.getMessage());
+                }
+                continue;
+            }
+
+            if (!packet.getAddress().isLoopbackAddress()) {
+                continue;
+            }
+
+            final ByteBuffer buffer = ByteBuffer.wrap(data, 0, packet.getLength());
+            if (buffer.remaining() < MAGIC_SIZE || buffer.getInt() != MAGIC) {
+                continue;
+            }
+
+            while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+                final int length = buffer.getShort() & 0xFFFF;
+                if (length > buffer.remaining()) {
+                    break;
+                }
+
+                final byte[] frame = new byte[length];
+                buffer.get(frame);
+                receiver.accept(frame);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package li.cil.oc2.common.util;
+
+import li.cil.oc2.api.capabilities.NetworkInterface;
+
+/**
+ * Implemented by {@link NetworkInterface}s that only belong to a single VLAN.
+ * <p>
+ * Such interfaces tag the frames they send with their VLAN id and discard frames of other VLANs.
+ * Hubs and connectors use this to skip sending frames to interfaces that would discard them anyway.
+ */
+public interface VlanPort {
+    /**
+     * The id of the VLAN this interface belongs to.
+     *
+     * @return the VLAN id.
+     */
+    int getVlanId();
+}
@@ -66,8 +66,7 @@ public abstract class AbstractVirtualMachine implements VirtualMachine {
 
         busController.onBeforeScan.add(this::handleBeforeScan);
         busController.onAfterDeviceScan.add(this::handleAfterDeviceScan);
-        busController.onDevicesAdded.add(this::handleDevicesAdded);
-        busController.onDevicesRemoved.add(this::handleDevicesRemoved);
+        busController.onDevicesChanged.add(this::handleDevicesChanged);
 
         state.board = new R5Board();
         state.context = new GlobalVMContext(state.board, this::joinWorkerThread);
@@ -408,11 +407,7 @@ public abstract class AbstractVirtualMachine implements VirtualMachine {
         resume(event.didDevicesChange());
     }
 
-    private void handleDevicesAdded(final CommonDeviceBusController.DevicesChangedEvent event) {
-        state.vmAdapter.addDevices(event.devices());
-    }
-
-    private void handleDevicesRemoved(final CommonDeviceBusController.DevicesChangedEvent event) {
-        state.vmAdapter.removeDevices(event.devices());
+    private void handleDevicesChanged(final CommonDeviceBusController.DevicesChangedEvent event) {
+        state.vmAdapter.updateDevices(event.addedDevices(), event.removedDevices());
     }
 }
@@ -86,7 +86,23 @@ public final class VMDeviceBusAdapter {
 
     public void addDevices(final Collection<Device> devices) {
         globalContext.joinWorkerThread();
+        addDevicesInternal(devices);
+    }
+
+    public void removeDevices(final Collection<Device> devices) {
+        globalContext.joinWorkerThread();
+        removeDevicesInternal(devices);
+    }
+
+    public void updateDevices(final Collection<Device> addedDevices, final Collection<Device> removedDevices) {
+        globalContext.joinWorkerThread();
+        removeDevicesInternal(removedDevices);
+        addDevicesInternal(addedDevices);
+    }
 
+    ///////////////////////////////////////////////////////////////////
+
+    private void addDevicesInternal(final Collection<Device> devices) {
         for (final Device device : devices) {
             if (device instanceof final VMDevice vmDevice) {
                 final ManagedVMContext context = deviceContexts.put(vmDevice, null);
@@ -99,9 +115,7 @@ public final class VMDeviceBusAdapter {
         }
     }
 
-    public void removeDevices(final Collection<Device> devices) {
-        globalContext.joinWorkerThread();
-
+    private void removeDevicesInternal(final Collection<Device> devices) {
         for (final Device device : devices) {
             if (device instanceof final VMDevice vmDevice) {
                 vmDevice.unmount();
@@ -116,8 +130,6 @@ public final class VMDeviceBusAdapter {
         }
     }
 
-    ///////////////////////////////////////////////////////////////////
-
     private void unload() {
         deviceContexts.forEach((device, context) -> {
             if (context != null) {
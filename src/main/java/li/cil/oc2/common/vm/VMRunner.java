@@ -15,6 +15,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 public class VMRunner implements Runnable {
     private static final int TICKS_PER_SECOND = 20;
@@ -27,6 +28,8 @@ public class VMRunner implements Runnable {
         return thread;
     });
 
+    private static final ThreadLocal<VMRunner> CURRENT = new ThreadLocal<>();
+
     ///////////////////////////////////////////////////////////////////
 
     private final R5Board board;
@@ -34,6 +37,7 @@ public class VMRunner implements Runnable {
     private final RPCDeviceBusAdapter rpcAdapter;
     private final AtomicInteger timeQuotaInMillis = new AtomicInteger();
     private Future<?> lastSchedule;
+    @Nullable private volatile BooleanSupplier resumeCondition;
 
     ///////////////////////////////////////////////////////////////////
 
@@ -54,6 +58,23 @@ public class VMRunner implements Runnable {
 
     ///////////////////////////////////////////////////////////////////
 
+    /**
+     * Ends the time slice of the virtual machine running on the calling thread early, and keeps it
+     * suspended until the specified condition is met.
+     * <p>
+     * This allows devices to throttle the virtual machine using them without blocking the runner
+     * thread. The condition is checked once per tick on the server thread. Calls from threads other
+     * than runner threads are ignored.
+     *
+     * @param condition the condition that has to be met for the virtual machine to resume.
+     */
+    public static void yieldUntil(final BooleanSupplier condition) {
+        final VMRunner runner = CURRENT.get();
+        if (runner != null) {
+            runner.resumeCondition = condition;
+        }
+    }
+
     @Nullable
     public Component getRuntimeError() {
         return runtimeError;
@@ -62,6 +83,15 @@ public class VMRunner implements Runnable {
     public void tick() {
         rpcAdapter.tick();
 
+        // Suspended virtual machines do not accumulate cycles, so they do not catch up when resumed.
+        final BooleanSupplier condition = resumeCondition;
+        if (condition != null) {
+            if (!condition.getAsBoolean()) {
+                return;
+            }
+            resumeCondition = null;
+        }
+
         cycleLimit += getCyclesPerTick();
 
         final int timeQuota = timeQuotaInMillis.updateAndGet(x -> Math.min(x + TIMESLICE_IN_MS, TIMESLICE_IN_MS));
@@ -91,34 +121,12 @@ public class VMRunner implements Runnable {
 
     @Override
     public void run() {
-        do {
-            final long start = System.currentTimeMillis();
-
-            final int cycleBudget = getCyclesPerTick();
-            final int cyclesPerStep = 1_000;
-            final int maxSteps = cycleBudget / cyclesPerStep;
-
-            handleBeforeRun();
-
-            if (!board.isRunning()) {
-                break;
-            }
-
-            for (int i = 0; i < maxSteps; i++) {
-                cycles += cyclesPerStep;
-                board.step(cyclesPerStep);
-                step(cyclesPerStep);
-
-                if (System.currentTimeMillis() - start > timeQuotaInMillis.get()) {
-                    break;
-                }
-            }
-
-            handleAfterRun();
-
-            final int elapsed = (int) (System.currentTimeMillis() - start);
-            timeQuotaInMillis.addAndGet(-elapsed);
-        } while (cycles < cycleLimit && timeQuotaInMillis.get() > 0);
+        CURRENT.set(this);
+        try {
+            runTimeSlice();
+        } finally {
+            CURRENT.remove();
+        }
     }
 
     ///////////////////////////////////////////////////////////////////
@@ -150,6 +158,37 @@ public class VMRunner implements Runnable {
 
     ///////////////////////////////////////////////////////////////////
 
+    private void runTimeSlice() {
+        do {
+            final long start = System.currentTimeMillis();
+
+            final int cycleBudget = getCyclesPerTick();
+            final int cyclesPerStep = 1_000;
+            final int maxSteps = cycleBudget / cyclesPerStep;
+
+            handleBeforeRun();
+
+            if (!board.isRunning()) {
+                break;
+            }
+
+            for (int i = 0; i < maxSteps; i++) {
+                cycles += cyclesPerStep;
+                board.step(cyclesPerStep);
+                step(cyclesPerStep);
+
+                if (System.currentTimeMillis() - start > timeQuotaInMillis.get() || resumeCondition != null) {
+                    break;
+                }
+            }
+
+            handleAfterRun();
+
+            final int elapsed = (int) (System.currentTimeMillis() - start);
+            timeQuotaInMillis.addAndGet(-elapsed);
+        } while (cycles < cycleLimit && timeQuotaInMillis.get() > 0 && resumeCondition == null);
+    }
+
     private static int getCyclesPerTick() {
         return Constants.CPU_FREQUENCY / TICKS_PER_SECOND;
     }
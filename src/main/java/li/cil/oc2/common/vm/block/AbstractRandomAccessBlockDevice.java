@@ -0,0 +1,116 @@
+package li.cil.oc2.common.vm.block;
+
+import li.cil.sedna.api.device.BlockDevice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Base class for block devices implemented via positional reads and writes.
+ * <p>
+ * Provides the stream based access {@link BlockDevice} requires on top of {@link #read(long, byte[], int, int)}
+ * and {@link #write(long, byte[], int, int)}.
+ */
+public abstract class AbstractRandomAccessBlockDevice implements BlockDevice {
+    @Override
+    public InputStream getInputStream(final long offset) {
+        return new RandomAccessInputStream(offset);
+    }
+
+    @Override
+    public OutputStream getOutputStream(final long offset) {
+        if (isReadonly()) {
+            throw new UnsupportedOperationException();
+        }
+
+        return new RandomAccessOutputStream(offset);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * Reads data from the device.
+     * <p>
+     * Never reads past the end of the device.
+     *
+     * @param position the position on the device to read from.
+     * @param buffer   the buffer to read into.
+     * @param offset   the offset in the buffer to read into.
+     * @param length   the number of bytes to read.
+     * @return the number of bytes read, {@code -1} if the position is at or past the end of the device.
+     * @throws IOException if reading failed.
+     */
+    protected abstract int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Writes data to the device.
+     *
+     * @param position the position on the device to write to.
+     * @param buffer   the buffer to write from.
+     * @param offset   the offset in the buffer to write from.
+     * @param length   the number of bytes to write.
+     * @throws IOException if writing failed, or the data does not fit on the device.
+     */
+    protected abstract void write(long position, byte[] buffer, int offset, int length) throws IOException;
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final class RandomAccessInputStream extends InputStream {
+        private long position;
+
+        public RandomAccessInputStream(final long position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] buffer = new byte[1];
+            return read(buffer, 0, 1) > 0 ? buffer[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            final int count = AbstractRandomAccessBlockDevice.this.read(position, buffer, offset, length);
+            if (count > 0) {
+                position += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final long count = Math.max(0, Math.min(n, getCapacity() - position));
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.max(0, Math.min(Integer.MAX_VALUE, getCapacity() - position));
+        }
+    }
+
+    private final class RandomAccessOutputStream extends OutputStream {
+        private long position;
+
+        public RandomAccessOutputStream(final long position) {
+            this.position = position;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+            AbstractRandomAccessBlockDevice.this.write(position, buffer, offset, length);
+            position += length;
+        }
+    }
+}
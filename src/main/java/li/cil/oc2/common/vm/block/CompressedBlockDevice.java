@@ -0,0 +1,525 @@
+package li.cil.oc2.common.vm.block;
+
+import li.cil.oc2.common.Constants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A block device storing its data compressed in a file.
+ * <p>
+ * The device is split into fixed-size extents, which are compressed individually. Extents that were
+ * never written, or only contain zeros, take up no space at all. A small number of recently used extents
+ * is kept decompressed in memory. Writes only modify these cached extents, which are compressed and
+ * written back to the file in the background, shortly after they were changed, when they are evicted
+ * from the cache, or when the device is flushed.
+ * <p>
+ * The file starts with a header, followed by the extent index, which holds the first sector and the
+ * compressed length of each extent, and is padded to the sector size. After that come the sectors holding
+ * the compressed extents. Changed extents are always written to free sectors before the index is updated,
+ * so the file is consistent at any time. Extents overwritten with zeros release their sectors, which are
+ * reused by later writes, or cut off the file if they are at its end.
+ */
+public final class CompressedBlockDevice extends AbstractRandomAccessBlockDevice {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static final int EXTENT_SIZE = 64 * Constants.KILOBYTE;
+
+    private static final int MAGIC = 0x4F43325A; // OC2Z
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int SECTOR_SIZE = 512;
+    private static final int INDEX_ENTRY_SIZE = 8;
+    private static final int MAX_CACHED_EXTENTS = 16;
+    private static final long WRITE_BACK_DELAY_MILLIS = 1000;
+
+    private static final ScheduledExecutorService WRITE_BACK_WORKER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Block Device Compressor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final FileChannel channel;
+    private final long capacity;
+    private final boolean readonly;
+    private final int[] extentSectors;
+    private final int[] extentLengths;
+    private final BitSet usedSectors = new BitSet();
+    private final long dataOffset;
+    private final LinkedHashMap<Integer, CachedExtent> cache = new LinkedHashMap<>(MAX_CACHED_EXTENTS, 0.75f, true);
+    private boolean isWriteBackScheduled;
+    private boolean isClosed;
+
+    ///////////////////////////////////////////////////////////////////
+
+    private CompressedBlockDevice(final FileChannel channel, final long capacity, final boolean readonly, final int[] extentSectors, final int[] extentLengths) {
+        this.channel = channel;
+        this.capacity = capacity;
+        this.readonly = readonly;
+        this.extentSectors = extentSectors;
+        this.extentLengths = extentLengths;
+        this.dataOffset = roundUpToSectorSize(HEADER_SIZE + (long) extentSectors.length * INDEX_ENTRY_SIZE);
+
+        for (int extent = 0; extent < extentSectors.length; extent++) {
+            if (extentSectors[extent] != 0) {
+                usedSectors.set(extentSectors[extent] - 1, extentSectors[extent] - 1 + getSectorCount(extentLengths[extent]));
+            }
+        }
+    }
+
+    /**
+     * Checks whether the specified file contains a compressed block device.
+     * <p>
+     * This only checks the first bytes of the file, which guests can write to in raw blobs. Do not use
+     * it to decide how to open a file, record the format when creating the file instead.
+     *
+     * @param channel the file to check.
+     * @return {@code true} if the file contains a compressed block device; {@code false} otherwise.
+     * @throws IOException if reading the file failed.
+     */
+    public static boolean isCompressed(final FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return false;
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        readFully(channel, header, 0);
+        return header.getInt(0) == MAGIC;
+    }
+
+    /**
+     * Opens the compressed block device stored in the specified file, initializing a new, empty one if the file is empty.
+     * <p>
+     * The file is not closed when the device is closed.
+     *
+     * @param channel  the file storing the device.
+     * @param capacity the capacity of the device.
+     * @param readonly whether the device should be read-only.
+     * @return the compressed block device.
+     * @throws IOException if the file could not be read or initialized, or contains an incompatible device.
+     */
+    public static CompressedBlockDevice open(final FileChannel channel, final long capacity, final boolean readonly) throws IOException {
+        final int extentCount = (int) ((capacity + EXTENT_SIZE - 1) / EXTENT_SIZE);
+        final int[] extentSectors = new int[extentCount];
+        final int[] extentLengths = new int[extentCount];
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() == 0) {
+            header.putInt(MAGIC).putInt(VERSION).putInt(EXTENT_SIZE).putInt(extentCount).putLong(capacity).flip();
+            writeFully(channel, header, 0);
+
+            // Extend to the full size of the index, which is all zeros, i.e. empty.
+            final long indexEnd = roundUpToSectorSize(HEADER_SIZE + (long) extentCount * INDEX_ENTRY_SIZE);
+            writeFully(channel, ByteBuffer.allocate(1), indexEnd - 1);
+        } else {
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != EXTENT_SIZE ||
+                header.getInt() != extentCount || header.getLong() != capacity) {
+                throw new IOException("Incompatible compressed block device.");
+            }
+
+            final ByteBuffer index = ByteBuffer.allocate(extentCount * INDEX_ENTRY_SIZE);
+            readFully(channel, index, HEADER_SIZE);
+            index.flip();
+            for (int extent = 0; extent < extentCount; extent++) {
+                extentSectors[extent] = index.getInt();
+                extentLengths[extent] = index.getInt();
+            }
+
+            validateIndex(channel, capacity, extentSectors, extentLengths);
+        }
+
+        return new CompressedBlockDevice(channel, capacity, readonly, extentSectors, extentLengths);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of bytes used to store the compressed data of this device.
+     */
+    public synchronized long getUsedSize() {
+        return (long) usedSectors.cardinality() * SECTOR_SIZE;
+    }
+
+    @Override
+    public boolean isReadonly() {
+        return readonly;
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (isClosed) {
+            return;
+        }
+
+        try {
+            for (final Map.Entry<Integer, CachedExtent> entry : cache.entrySet()) {
+                writeBack(entry.getKey(), entry.getValue());
+            }
+            channel.force(false);
+        } catch (final IOException e) {
+            LOGGER.error(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        // File is not owned by us, but anything not written back yet would be lost.
+        flush();
+        cache.clear();
+        isClosed = true;
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    @Override
+    protected synchronized int read(final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+        if (position >= capacity) {
+            return -1;
+        }
+
+        final int total = (int) Math.min(length, capacity - position);
+        int count = 0;
+        while (count < total) {
+            final long current = position + count;
+            final int extent = (int) (current / EXTENT_SIZE);
+            final int offsetInExtent = (int) (current % EXTENT_SIZE);
+            final int chunk = Math.min(total - count, getExtentLength(extent) - offsetInExtent);
+
+            System.arraycopy(getExtent(extent, false).data, offsetInExtent, buffer, offset + count, chunk);
+            count += chunk;
+        }
+
+        return count;
+    }
+
+    @Override
+    protected synchronized void write(final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+        if (position < 0 || position + length > capacity) {
+            throw new IOException("Write out of bounds.");
+        }
+
+        int count = 0;
+        while (count < length) {
+            final long current = position + count;
+            final int extent = (int) (current / EXTENT_SIZE);
+            final int offsetInExtent = (int) (current % EXTENT_SIZE);
+            final int chunk = Math.min(length - count, getExtentLength(extent) - offsetInExtent);
+
+            final CachedExtent cached = getExtent(extent, offsetInExtent == 0 && chunk == getExtentLength(extent));
+            System.arraycopy(buffer, offset + count, cached.data, offsetInExtent, chunk);
+            cached.isDirty = true;
+            cached.version++;
+            count += chunk;
+        }
+
+        scheduleWriteBack();
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private int getExtentLength(final int extent) {
+        return (int) Math.min(EXTENT_SIZE, capacity - (long) extent * EXTENT_SIZE);
+    }
+
+    private CachedExtent getExtent(final int extent, final boolean isFullExtentWrite) throws IOException {
+        CachedExtent cached = cache.get(extent);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Unless the extent is about to be overwritten completely, start with the stored data.
+        cached = new CachedExtent(isFullExtentWrite ? new byte[getExtentLength(extent)] : load(extent));
+        cache.put(extent, cached);
+
+        final Iterator<Map.Entry<Integer, CachedExtent>> iterator = cache.entrySet().iterator();
+        while (cache.size() > MAX_CACHED_EXTENTS && iterator.hasNext()) {
+            final Map.Entry<Integer, CachedExtent> eldest = iterator.next();
+            writeBack(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+        }
+
+        return cached;
+    }
+
+    private byte[] load(final int extent) throws IOException {
+        final byte[] data = new byte[getExtentLength(extent)];
+        final int sector = extentSectors[extent];
+        if (sector == 0) {
+            return data;
+        }
+
+        final int length = extentLengths[extent];
+        final byte[] stored = new byte[length];
+        readFully(channel, ByteBuffer.wrap(stored), getSectorOffset(sector));
+
+        // Extents that don't compress well are stored as-is.
+        if (length == data.length) {
+            return stored;
+        }
+
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            int count = 0;
+            while (count < data.length && !inflater.finished()) {
+                final int inflated = inflater.inflate(data, count, data.length - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException();
+                }
+                count += inflated;
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+
+        return data;
+    }
+
+    private void writeBack(final int extent, final CachedExtent cached) throws IOException {
+        if (cached.isDirty) {
+            store(extent, compress(cached.data));
+            cached.isDirty = false;
+        }
+    }
+
+    private void store(final int extent, @Nullable final byte[] compressed) throws IOException {
+        final int oldSector = extentSectors[extent];
+        final int oldLength = extentLengths[extent];
+
+        int sector = 0, length = 0;
+        if (compressed != null) {
+            length = compressed.length;
+            sector = allocateSectors(getSectorCount(length));
+            writeFully(channel, ByteBuffer.wrap(compressed), getSectorOffset(sector));
+        }
+
+        // Only reference the new data once it is written, so we never point at garbage.
+        final ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE).putInt(sector).putInt(length).flip();
+        writeFully(channel, entry, HEADER_SIZE + (long) extent * INDEX_ENTRY_SIZE);
+        extentSectors[extent] = sector;
+        extentLengths[extent] = length;
+
+        if (oldSector != 0) {
+            usedSectors.clear(oldSector - 1, oldSector - 1 + getSectorCount(oldLength));
+
+            // Cut off free sectors at the end of the file, reusing other free sectors is all we can do.
+            final long end = getSectorOffset(usedSectors.length() + 1);
+            if (channel.size() > end) {
+                channel.truncate(end);
+            }
+        }
+    }
+
+    private int allocateSectors(final int count) {
+        int start = usedSectors.nextClearBit(0);
+        for (; ; ) {
+            final int end = usedSectors.nextSetBit(start);
+            if (end < 0 || end - start >= count) {
+                break;
+            }
+            start = usedSectors.nextClearBit(end);
+        }
+
+        usedSectors.set(start, start + count);
+        return start + 1;
+    }
+
+    private long getSectorOffset(final int sector) {
+        return dataOffset + (long) (sector - 1) * SECTOR_SIZE;
+    }
+
+    private void scheduleWriteBack() {
+        if (!isWriteBackScheduled) {
+            isWriteBackScheduled = true;
+            WRITE_BACK_WORKER.schedule(this::writeBackInBackground, WRITE_BACK_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void writeBackInBackground() {
+        final List<PendingWriteBack> pending = new ArrayList<>();
+        synchronized (this) {
+            isWriteBackScheduled = false;
+            if (isClosed) {
+                return;
+            }
+
+            for (final Map.Entry<Integer, CachedExtent> entry : cache.entrySet()) {
+                final CachedExtent cached = entry.getValue();
+                if (cached.isDirty) {
+                    pending.add(new PendingWriteBack(entry.getKey(), cached, cached.version, cached.data.clone()));
+                }
+            }
+        }
+
+        // Compress without holding the lock, so the device remains usable meanwhile.
+        for (final PendingWriteBack writeBack : pending) {
+            writeBack.compressed = compress(writeBack.data);
+        }
+
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+
+            try {
+                for (final PendingWriteBack writeBack : pending) {
+                    // Skip extents changed or written back since, the former will be handled in the next run.
+                    if (writeBack.cached.isDirty && writeBack.cached.version == writeBack.version) {
+                        store(writeBack.extent, writeBack.compressed);
+                        writeBack.cached.isDirty = false;
+                    }
+                }
+            } catch (final IOException e) {
+                LOGGER.error(e);
+            }
+        }
+    }
+
+    /**
+     * Compresses the specified data.
+     *
+     * @return the compressed data, the data itself if it does not compress, or {@code null} if it is all zeros.
+     */
+    @Nullable
+    private static byte[] compress(final byte[] data) {
+        if (isZero(data)) {
+            return null;
+        }
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            final byte[] buffer = new byte[data.length];
+            int count = 0;
+            while (!deflater.finished() && count < buffer.length) {
+                count += deflater.deflate(buffer, count, buffer.length - count);
+            }
+
+            if (!deflater.finished() || count >= data.length) {
+                return data;
+            }
+
+            final byte[] compressed = new byte[count];
+            System.arraycopy(buffer, 0, compressed, 0, count);
+            return compressed;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static boolean isZero(final byte[] data) {
+        for (final byte value : data) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes sure all index entries point into the file, and hold no more than an extent, so a damaged
+     * index can't make us allocate arbitrary amounts of memory when loading extents.
+     */
+    private static void validateIndex(final FileChannel channel, final long capacity, final int[] extentSectors, final int[] extentLengths) throws IOException {
+        final long dataOffset = roundUpToSectorSize(HEADER_SIZE + (long) extentSectors.length * INDEX_ENTRY_SIZE);
+        final long size = channel.size();
+        for (int extent = 0; extent < extentSectors.length; extent++) {
+            final int sector = extentSectors[extent];
+            final int length = extentLengths[extent];
+            final long extentLength = Math.min(EXTENT_SIZE, capacity - (long) extent * EXTENT_SIZE);
+            final boolean isValid = sector == 0
+                ? length == 0
+                : sector > 0 && length > 0 && length <= extentLength &&
+                  dataOffset + (long) (sector - 1) * SECTOR_SIZE + length <= size;
+            if (!isValid) {
+                throw new IOException("Corrupted compressed block device index.");
+            }
+        }
+    }
+
+    private static int getSectorCount(final int length) {
+        return (length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+    }
+
+    private static long roundUpToSectorSize(final long value) {
+        return (value + SECTOR_SIZE - 1) / SECTOR_SIZE * SECTOR_SIZE;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            final int count = channel.read(buffer, current);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            current += count;
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            current += channel.write(buffer, current);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private static final class CachedExtent {
+        public final byte[] data;
+        public boolean isDirty;
+        public int version;
+
+        public CachedExtent(final byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private static final class PendingWriteBack {
+        public final int extent;
+        public final CachedExtent cached;
+        public final int version;
+        public final byte[] data;
+        @Nullable public byte[] compressed;
+
+        public PendingWriteBack(final int extent, final CachedExtent cached, final int version, final byte[] data) {
+            this.extent = extent;
+            this.cached = cached;
+            this.version = version;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package li.cil.oc2.common.vm.block;
+
+import li.cil.oc2.common.Constants;
+import li.cil.sedna.api.device.BlockDevice;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.TreeSet;
+
+/**
+ * A block device storing changes to a shared, read-only base device in a file.
+ * <p>
+ * The device is split into fixed-size blocks. Blocks that were never written are read from the base
+ * device. Written blocks are stored in the file, in the order they were first written to, so the file
+ * only grows by the blocks actually changed. A block map in the file tracks where each written block
+ * is stored.
+ * <p>
+ * The file starts with a header, holding the layout of the file and a hash of the identity of the base
+ * device, see {@link #open(BlockDevice, String, FileChannel, boolean)}. It is followed by the block map,
+ * one int per block holding the one-based index of the slot the block is stored in, zero if the block
+ * was never written, or minus one if the block was overwritten with zeros. Both are padded to the block
+ * size. After that come the slots with the written blocks.
+ * <p>
+ * Blocks overwritten with zeros as a whole are not stored, and release the slot they were stored in.
+ * Released slots are reused by later writes, and trailing released slots are cut off the file, so
+ * space freed in the guest, e.g. by zeroing free space, is reclaimed.
+ */
+public final class OverlayBlockDevice extends AbstractRandomAccessBlockDevice {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    ///////////////////////////////////////////////////////////////////
+
+    public static final int BLOCK_SIZE = 4 * Constants.KILOBYTE;
+
+    private static final int MAGIC = 0x4F43324F; // OC2O
+    private static final int VERSION = 3;
+    private static final int MIN_VERSION = 1;
+    private static final int ZERO_BLOCK_VERSION = 2; // Version 1 did not have zero blocks, so is forward compatible.
+    private static final int BASE_IDENTITY_VERSION = 3; // Versions before did not store the base identity.
+    private static final int LEGACY_HEADER_SIZE = 16;
+    private static final int BASE_IDENTITY_SIZE = 32;
+    private static final int HEADER_SIZE = LEGACY_HEADER_SIZE + BASE_IDENTITY_SIZE;
+    private static final String BASE_IDENTITY_ALGORITHM = "SHA-256";
+    private static final int BLOCK_MAP_ENTRY_SIZE = 4;
+    private static final int BASE_BLOCK = 0;
+    private static final int ZERO_BLOCK = -1;
+
+    ///////////////////////////////////////////////////////////////////
+
+    private final BlockDevice base;
+    private final FileChannel channel;
+    private final boolean readonly;
+    private final int[] blockSlots;
+    private final long blockMapOffset;
+    private final long dataOffset;
+    private final TreeSet<Integer> freeSlots = new TreeSet<>();
+    private int slotCount;
+
+    ///////////////////////////////////////////////////////////////////
+
+    private OverlayBlockDevice(final BlockDevice base, final FileChannel channel, final boolean readonly, final int[] blockSlots, final int headerSize) {
+        this.base = base;
+        this.channel = channel;
+        this.readonly = readonly;
+        this.blockSlots = blockSlots;
+        this.blockMapOffset = headerSize;
+        this.dataOffset = roundUpToBlockSize(headerSize + (long) blockSlots.length * BLOCK_MAP_ENTRY_SIZE);
+        final BitSet usedSlots = new BitSet();
+        for (final int slot : blockSlots) {
+            if (slot > 0) {
+                slotCount = Math.max(slotCount, slot);
+                usedSlots.set(slot);
+            }
+        }
+        for (int slot = 1; slot <= slotCount; slot++) {
+            if (!usedSlots.get(slot)) {
+                freeSlots.add(slot);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the specified file contains an overlay.
+     * <p>
+     * This only checks the first bytes of the file, which guests can write to in raw blobs. Do not use
+     * it to decide how to open a file, record the format when creating the file instead.
+     *
+     * @param channel the file to check.
+     * @return {@code true} if the file contains an overlay; {@code false} otherwise.
+     * @throws IOException if reading the file failed.
+     */
+    public static boolean isOverlay(final FileChannel channel) throws IOException {
+        if (channel.size() < LEGACY_HEADER_SIZE) {
+            return false;
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        readFully(channel, header, 0);
+        return header.getInt(0) == MAGIC;
+    }
+
+    /**
+     * Opens the overlay stored in the specified file, for a base device without known identity.
+     *
+     * @see #open(BlockDevice, String, FileChannel, boolean)
+     */
+    public static OverlayBlockDevice open(final BlockDevice base, final FileChannel channel, final boolean readonly) throws IOException {
+        return open(base, null, channel, readonly);
+    }
+
+    /**
+     * Opens the overlay stored in the specified file, initializing a new, empty overlay if the file is empty.
+     * <p>
+     * The overlay is only valid for the exact base it was created for: mounted on top of a base with
+     * different contents, e.g. after an update changed the base, unwritten blocks would be read from
+     * the new base, mixing its data with the written blocks of the old one. This corrupts whatever
+     * file-system is on the device. To prevent this, the identity of the base is stored in new overlays,
+     * and opening an overlay fails if it was created for a different base. Overlays created for a base
+     * without known identity, or by versions not storing the identity, cannot be checked.
+     * <p>
+     * The file is not closed when the device is closed, and neither is the base device.
+     *
+     * @param base         the base device providing the data of blocks not written to.
+     * @param baseIdentity a string identifying the contents of the base device, e.g. a hash, if known.
+     * @param channel      the file storing the overlay.
+     * @param readonly     whether the device should be read-only.
+     * @return the overlay device.
+     * @throws IOException if the file could not be read or initialized, contains an incompatible overlay,
+     *                     or an overlay for a different base.
+     */
+    public static OverlayBlockDevice open(final BlockDevice base, @Nullable final String baseIdentity, final FileChannel channel, final boolean readonly) throws IOException {
+        final int blockCount = (int) ((base.getCapacity() + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        final int[] blockSlots = new int[blockCount];
+        final byte[] baseIdentityHash = hashBaseIdentity(baseIdentity);
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        final int headerSize;
+        if (channel.size() == 0) {
+            header.putInt(MAGIC).putInt(VERSION).putInt(BLOCK_SIZE).putInt(blockCount).put(baseIdentityHash).flip();
+            writeFully(channel, header, 0);
+            headerSize = HEADER_SIZE;
+
+            // Extend to the full size of the block map, which is all zeros, i.e. empty.
+            final long blockMapEnd = roundUpToBlockSize(headerSize + (long) blockCount * BLOCK_MAP_ENTRY_SIZE);
+            writeFully(channel, ByteBuffer.allocate(1), blockMapEnd - 1);
+        } else {
+            header.limit(LEGACY_HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            final int magic = header.getInt();
+            final int version = header.getInt();
+            if (magic != MAGIC || version < MIN_VERSION || version > VERSION ||
+                header.getInt() != BLOCK_SIZE || header.getInt() != blockCount) {
+                throw new IOException("Incompatible overlay.");
+            }
+
+            if (version >= BASE_IDENTITY_VERSION) {
+                final byte[] storedIdentityHash = new byte[BASE_IDENTITY_SIZE];
+                readFully(channel, ByteBuffer.wrap(storedIdentityHash), LEGACY_HEADER_SIZE);
+                if (isKnownIdentity(storedIdentityHash) && isKnownIdentity(baseIdentityHash) &&
+                    !Arrays.equals(storedIdentityHash, baseIdentityHash)) {
+                    throw new IOException("Overlay was created for different base data, e.g. by an older version " +
+                        "of the mod providing it. Refusing to open it, since this would corrupt its contents.");
+                }
+                headerSize = HEADER_SIZE;
+            } else {
+                headerSize = LEGACY_HEADER_SIZE;
+            }
+
+            // Older versions can't read zero blocks we may write, so mark the file as supporting them.
+            // This does not change the layout, so the file does not gain a base identity.
+            if (version < ZERO_BLOCK_VERSION && !readonly) {
+                writeFully(channel, ByteBuffer.allocate(Integer.BYTES).putInt(0, ZERO_BLOCK_VERSION), Integer.BYTES);
+            }
+
+            final ByteBuffer blockMap = ByteBuffer.allocate(blockCount * BLOCK_MAP_ENTRY_SIZE);
+            readFully(channel, blockMap, headerSize);
+            blockMap.flip();
+            blockMap.asIntBuffer().get(blockSlots);
+
+            validateBlockMap(channel, headerSize, blockSlots);
+        }
+
+        return new OverlayBlockDevice(base, channel, readonly, blockSlots, headerSize);
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of bytes used to store the blocks written to this device.
+     */
+    public synchronized long getUsedSize() {
+        return (long) (slotCount - freeSlots.size()) * BLOCK_SIZE;
+    }
+
+    @Override
+    public boolean isReadonly() {
+        return readonly;
+    }
+
+    @Override
+    public long getCapacity() {
+        return base.getCapacity();
+    }
+
+    @Override
+    public void flush() {
+        try {
+            channel.force(false);
+        } catch (final IOException e) {
+            LOGGER.error(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // File and base device are not owned by us.
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    @Override
+    protected synchronized int read(final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+        final long capacity = getCapacity();
+        if (position >= capacity) {
+            return -1;
+        }
+
+        final int total = (int) Math.min(length, capacity - position);
+        int count = 0;
+        while (count < total) {
+            final long current = position + count;
+            final int block = (int) (current / BLOCK_SIZE);
+            final int slot = blockSlots[block];
+
+            // Read runs of blocks stored consecutively in one go.
+            int runEnd = block + 1;
+            while (runEnd < blockSlots.length && blockSlots[runEnd] == (slot <= 0 ? slot : slot + (runEnd - block))) {
+                runEnd++;
+            }
+
+            final int chunk = (int) Math.min(total - count, (long) runEnd * BLOCK_SIZE - current);
+            if (slot == BASE_BLOCK) {
+                readBase(current, buffer, offset + count, chunk);
+            } else if (slot == ZERO_BLOCK) {
+                Arrays.fill(buffer, offset + count, offset + count + chunk, (byte) 0);
+            } else {
+                readFully(channel, ByteBuffer.wrap(buffer, offset + count, chunk), getSlotOffset(slot) + current % BLOCK_SIZE);
+            }
+            count += chunk;
+        }
+
+        return count;
+    }
+
+    @Override
+    protected synchronized void write(final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+        if (readonly) {
+            throw new IOException("Device is read-only.");
+        }
+        if (position < 0 || position + length > getCapacity()) {
+            throw new IOException("Write out of bounds.");
+        }
+
+        int count = 0;
+        while (count < length) {
+            final long current = position + count;
+            final int block = (int) (current / BLOCK_SIZE);
+            final int offsetInBlock = (int) (current % BLOCK_SIZE);
+            final int chunk = Math.min(length - count, BLOCK_SIZE - offsetInBlock);
+            final boolean isFullBlockWrite = offsetInBlock == 0 && chunk == getBlockLength(block);
+
+            if (isFullBlockWrite && isZero(buffer, offset + count, chunk)) {
+                writeZeroBlock(block);
+            } else {
+                int slot = blockSlots[block];
+                if (slot <= 0) {
+                    slot = allocateSlot(block, isFullBlockWrite);
+                }
+
+                writeFully(channel, ByteBuffer.wrap(buffer, offset + count, chunk), getSlotOffset(slot) + offsetInBlock);
+            }
+            count += chunk;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private int allocateSlot(final int block, final boolean isFullBlockWrite) throws IOException {
+        final Integer freeSlot = freeSlots.pollFirst();
+        final int slot = freeSlot != null ? freeSlot : slotCount + 1;
+
+        // Unless the block is about to be overwritten completely, start with its current data.
+        if (!isFullBlockWrite) {
+            final long blockStart = (long) block * BLOCK_SIZE;
+            final byte[] data = new byte[getBlockLength(block)];
+            if (blockSlots[block] == BASE_BLOCK) {
+                readBase(blockStart, data, 0, data.length);
+            }
+            writeFully(channel, ByteBuffer.wrap(data), getSlotOffset(slot));
+        }
+
+        // Only reference the slot once it holds the data, so we never point at garbage.
+        writeBlockMapEntry(block, slot);
+
+        slotCount = Math.max(slotCount, slot);
+        return slot;
+    }
+
+    private void writeZeroBlock(final int block) throws IOException {
+        // If the base has zeros here, too, we can just go back to using the base.
+        final byte[] data = new byte[getBlockLength(block)];
+        readBase((long) block * BLOCK_SIZE, data, 0, data.length);
+        final int value = isZero(data, 0, data.length) ? BASE_BLOCK : ZERO_BLOCK;
+
+        final int oldSlot = blockSlots[block];
+        if (oldSlot != value) {
+            writeBlockMapEntry(block, value);
+        }
+        if (oldSlot > 0) {
+            releaseSlot(oldSlot);
+        }
+    }
+
+    private void releaseSlot(final int slot) throws IOException {
+        freeSlots.add(slot);
+
+        // Cut off released slots at the end of the file, reusing other released slots is all we can do.
+        while (slotCount > 0 && freeSlots.remove(slotCount)) {
+            slotCount--;
+        }
+        if (channel.size() > getSlotOffset(slotCount + 1)) {
+            channel.truncate(getSlotOffset(slotCount + 1));
+        }
+    }
+
+    private void writeBlockMapEntry(final int block, final int value) throws IOException {
+        final ByteBuffer entry = ByteBuffer.allocate(BLOCK_MAP_ENTRY_SIZE).putInt(0, value);
+        writeFully(channel, entry, blockMapOffset + (long) block * BLOCK_MAP_ENTRY_SIZE);
+        blockSlots[block] = value;
+    }
+
+    private int getBlockLength(final int block) {
+        return (int) Math.min(BLOCK_SIZE, getCapacity() - (long) block * BLOCK_SIZE);
+    }
+
+    private void readBase(final long position, final byte[] buffer, final int offset, final int length) throws IOException {
+        try (final InputStream stream = base.getInputStream(position)) {
+            if (stream.readNBytes(buffer, offset, length) != length) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private long getSlotOffset(final int slot) {
+        return dataOffset + (long) (slot - 1) * BLOCK_SIZE;
+    }
+
+    /**
+     * Makes sure all block map entries are valid and point into the file, so a damaged block map can't
+     * make us track absurd numbers of slots. The slot of the last block may be shorter than a block.
+     */
+    private static void validateBlockMap(final FileChannel channel, final int headerSize, final int[] blockSlots) throws IOException {
+        final long dataOffset = roundUpToBlockSize(headerSize + (long) blockSlots.length * BLOCK_MAP_ENTRY_SIZE);
+        final long size = channel.size();
+        for (final int slot : blockSlots) {
+            if (slot < ZERO_BLOCK || (slot > 0 && dataOffset + (long) (slot - 1) * BLOCK_SIZE >= size)) {
+                throw new IOException("Corrupted overlay block map.");
+            }
+        }
+    }
+
+    private static byte[] hashBaseIdentity(@Nullable final String baseIdentity) {
+        // All zeros mark the identity as unknown.
+        if (baseIdentity == null) {
+            return new byte[BASE_IDENTITY_SIZE];
+        }
+
+        try {
+            return MessageDigest.getInstance(BASE_IDENTITY_ALGORITHM).digest(baseIdentity.getBytes(StandardCharsets.UTF_8));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isKnownIdentity(final byte[] baseIdentityHash) {
+        return !isZero(baseIdentityHash, 0, baseIdentityHash.length);
+    }
+
+    private static boolean isZero(final byte[] data, final int offset, final int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (data[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long roundUpToBlockSize(final long value) {
+        return (value + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            final int count = channel.read(buffer, current);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            current += count;
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            current += channel.write(buffer, current);
+        }
+    }
+}
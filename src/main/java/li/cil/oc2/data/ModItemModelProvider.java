@@ -44,6 +44,7 @@ public final class ModItemModelProvider extends ItemModelProvider {
         simple(Items.FILE_IMPORT_EXPORT_CARD);
         simple(Items.SOUND_CARD);
         simple(Items.NETWORK_TUNNEL_CARD);
+        simple(Items.NETWORK_BRIDGE_CARD);
 
         simple(Items.INVENTORY_OPERATIONS_MODULE);
         simple(Items.BLOCK_OPERATIONS_MODULE);
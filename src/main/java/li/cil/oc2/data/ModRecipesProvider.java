@@ -284,6 +284,18 @@ public final class ModRecipesProvider extends RecipeProvider {
             .unlockedBy("has_computer", inventoryChange(Items.COMPUTER.get()))
             .save(consumer);
 
+        ShapedRecipeBuilder
+            .shaped(Items.NETWORK_BRIDGE_CARD.get())
+            .pattern("IGT")
+            .pattern("EB ")
+            .define('G', Tags.Items.GLASS)
+            .define('E', Tags.Items.ENDER_PEARLS)
+            .define('I', Tags.Items.INGOTS_IRON)
+            .define('T', Items.TRANSISTOR.get())
+            .define('B', Items.CIRCUIT_BOARD.get())
+            .unlockedBy("has_computer", inventoryChange(Items.COMPUTER.get()))
+            .save(consumer);
+
         ShapedRecipeBuilder
             .shaped(Items.FILE_IMPORT_EXPORT_CARD.get())
             .pattern("IET")
@@ -0,0 +1,139 @@
+package li.cil.oc2.common.bus;
+
+import li.cil.oc2.api.bus.BlockDeviceBusElement;
+import li.cil.oc2.api.bus.DeviceBusController;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class BusConnectivityIndexTests {
+    private BusConnectivityIndex index;
+    private BlockDeviceBusElement element1, element2, element3;
+
+    @BeforeEach
+    public void setupEach() {
+        index = new BusConnectivityIndex();
+        element1 = mock(BlockDeviceBusElement.class);
+        element2 = mock(BlockDeviceBusElement.class);
+        element3 = mock(BlockDeviceBusElement.class);
+    }
+
+    @Test
+    public void connectedElementsShareControllers() {
+        // topology: element 1 <-> element 2 <-> element 3
+
+        final DeviceBusController controller1 = mock(DeviceBusController.class);
+        final DeviceBusController controller3 = mock(DeviceBusController.class);
+        index.setController(element1, controller1);
+        index.setController(element3, controller3);
+
+        index.setNeighbors(element1, singletonList(element2));
+        assertFalse(index.isConnected(element1, element3));
+
+        index.setNeighbors(element2, List.of(element1, element3));
+        assertTrue(index.isConnected(element1, element3));
+        assertEquals(3, index.getElements(element2).size());
+        assertTrue(index.getControllers(element1).contains(controller3));
+        assertTrue(index.getControllers(element3).contains(controller1));
+    }
+
+    @Test
+    public void removedConnectionSplitsBus() {
+        // topology: element 1 <-> element 2 <-> element 3, then element 2 drops element 3
+
+        final DeviceBusController controller3 = mock(DeviceBusController.class);
+        index.setController(element3, controller3);
+
+        index.setNeighbors(element1, singletonList(element2));
+        index.setNeighbors(element2, List.of(element1, element3));
+        assertTrue(index.isConnected(element1, element3));
+
+        index.setNeighbors(element2, singletonList(element1));
+        assertTrue(index.isConnected(element1, element2));
+        assertFalse(index.isConnected(element1, element3));
+        assertFalse(index.getControllers(element1).contains(controller3));
+        assertTrue(index.getControllers(element3).contains(controller3));
+    }
+
+    @Test
+    public void removedElementSplitsBus() {
+        // topology: element 1 <-> element 2 <-> element 3, then element 2 gets removed
+
+        index.setNeighbors(element1, singletonList(element2));
+        index.setNeighbors(element2, List.of(element1, element3));
+        index.setNeighbors(element3, singletonList(element2));
+
+        index.remove(element2);
+        assertFalse(index.isConnected(element1, element3));
+        assertEquals(1, index.getElements(element1).size());
+        assertTrue(index.getElements(element2).isEmpty());
+
+        index.setNeighbors(element1, emptyList());
+        assertEquals(1, index.getElements(element1).size());
+    }
+
+    @Test
+    public void removedElementsSplitBusOnQuery() {
+        // topology: element 1 <-> element 2 <-> element 3 <-> element 4 <-> element 5, then 2 and 4 get removed
+
+        final BlockDeviceBusElement element4 = mock(BlockDeviceBusElement.class);
+        final BlockDeviceBusElement element5 = mock(BlockDeviceBusElement.class);
+        index.setNeighbors(element1, singletonList(element2));
+        index.setNeighbors(element2, List.of(element1, element3));
+        index.setNeighbors(element3, List.of(element2, element4));
+        index.setNeighbors(element4, List.of(element3, element5));
+        index.setNeighbors(element5, singletonList(element4));
+        assertTrue(index.isConnected(element1, element5));
+
+        index.remove(element2);
+        index.remove(element4);
+        assertFalse(index.isConnected(element1, element3));
+        assertFalse(index.isConnected(element3, element5));
+        assertEquals(1, index.getElements(element3).size());
+        assertTrue(index.getElements(element4).isEmpty());
+    }
+
+    @Test
+    public void readdedElementJoinsBusAgain() {
+        // topology: element 1 <-> element 2 <-> element 3, then element 2 gets removed and added again
+
+        index.setNeighbors(element1, singletonList(element2));
+        index.setNeighbors(element2, List.of(element1, element3));
+        index.setNeighbors(element3, singletonList(element2));
+
+        index.remove(element2);
+        index.setNeighbors(element2, List.of(element1, element3));
+        assertTrue(index.isConnected(element1, element3));
+        assertEquals(3, index.getElements(element1).size());
+
+        // Removing all elements leaves nothing behind, so they can be added again from scratch.
+        index.remove(element1);
+        index.remove(element2);
+        index.remove(element3);
+        assertTrue(index.getElements(element2).isEmpty());
+
+        index.setNeighbors(element3, singletonList(element1));
+        assertTrue(index.isConnected(element1, element3));
+        assertFalse(index.isConnected(element1, element2));
+    }
+
+    @Test
+    public void removedControllerElementIsNotReported() {
+        // topology: element 1 <-> element 2, then element 2 gets removed without disposing its controller
+
+        final DeviceBusController controller2 = mock(DeviceBusController.class);
+        index.setController(element2, controller2);
+
+        index.setNeighbors(element1, singletonList(element2));
+        assertTrue(index.getControllers(element1).contains(controller2));
+
+        index.remove(element2);
+        assertFalse(index.getControllers(element1).contains(controller2));
+    }
+}
@@ -7,11 +7,13 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -75,4 +77,56 @@ public class DeviceBusTests {
         verify(busElement1).addController(busController);
         verify(busElement2).addController(busController);
     }
+
+    @Test
+    public void incrementalScanOnlyQueriesChangedElements() {
+        // topology: controller <-> element 1 <-> element 2, then element 3 gets attached to element 2
+
+        final DeviceBusElement busElement1 = mock(DeviceBusElement.class);
+        final DeviceBusElement busElement2 = mock(DeviceBusElement.class);
+        final DeviceBusElement busElement3 = mock(DeviceBusElement.class);
+
+        when(busControllerBusElement.getNeighbors()).thenReturn(Optional.of(singletonList(LazyOptional.of(() -> busElement1))));
+        when(busElement1.getNeighbors()).thenReturn(Optional.of(List.of(LazyOptional.of(() -> busControllerBusElement), LazyOptional.of(() -> busElement2))));
+        when(busElement2.getNeighbors()).thenReturn(Optional.of(singletonList(LazyOptional.of(() -> busElement1))));
+
+        busController.scan();
+        assertEquals(CommonDeviceBusController.BusState.READY, busController.getState());
+
+        when(busElement2.getNeighbors()).thenReturn(Optional.of(List.of(LazyOptional.of(() -> busElement1), LazyOptional.of(() -> busElement3))));
+        when(busElement3.getNeighbors()).thenReturn(Optional.of(singletonList(LazyOptional.of(() -> busElement2))));
+
+        busController.scheduleBusScan(busElement2);
+        busController.scan();
+        assertEquals(CommonDeviceBusController.BusState.READY, busController.getState());
+
+        verify(busElement3).addController(busController);
+        verify(busControllerBusElement, times(1)).getNeighbors();
+        assertTrue(busController.getElements().contains(busElement3));
+    }
+
+    @Test
+    public void incrementalScanRemovesDisconnectedElements() {
+        // topology: controller <-> element 1 <-> element 2, then element 2 gets removed
+
+        final DeviceBusElement busElement1 = mock(DeviceBusElement.class);
+        final DeviceBusElement busElement2 = mock(DeviceBusElement.class);
+
+        when(busControllerBusElement.getNeighbors()).thenReturn(Optional.of(singletonList(LazyOptional.of(() -> busElement1))));
+        when(busElement1.getNeighbors()).thenReturn(Optional.of(List.of(LazyOptional.of(() -> busControllerBusElement), LazyOptional.of(() -> busElement2))));
+        when(busElement2.getNeighbors()).thenReturn(Optional.of(singletonList(LazyOptional.of(() -> busElement1))));
+
+        busController.scan();
+        assertEquals(CommonDeviceBusController.BusState.READY, busController.getState());
+        assertTrue(busController.getElements().contains(busElement2));
+
+        when(busElement1.getNeighbors()).thenReturn(Optional.of(singletonList(LazyOptional.of(() -> busControllerBusElement))));
+
+        busController.scheduleBusScan(busElement1);
+        busController.scan();
+        assertEquals(CommonDeviceBusController.BusState.READY, busController.getState());
+
+        verify(busElement2).removeController(busController);
+        assertFalse(busController.getElements().contains(busElement2));
+    }
 }
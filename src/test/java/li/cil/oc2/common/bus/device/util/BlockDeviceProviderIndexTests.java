@@ -0,0 +1,73 @@
+package li.cil.oc2.common.bus.device.util;
+
+import li.cil.oc2.api.bus.device.provider.BlockDeviceProvider;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class BlockDeviceProviderIndexTests {
+    private List<BlockDeviceProvider> candidates;
+    private BlockDeviceProviderIndex index;
+    private Block block;
+
+    @BeforeEach
+    public void setupEach() {
+        candidates = new ArrayList<>();
+        index = new BlockDeviceProviderIndex(() -> candidates);
+        block = mock(Block.class);
+    }
+
+    @Test
+    public void providersAreQueriedOncePerBlock() {
+        final BlockDeviceProvider provider = mock(BlockDeviceProvider.class);
+        when(provider.mayProvideDevice(block, null)).thenReturn(true);
+        candidates.add(provider);
+
+        assertEquals(singletonList(provider), index.get(block, null));
+        assertEquals(singletonList(provider), index.get(block, null));
+        verify(provider, times(1)).mayProvideDevice(block, null);
+
+        final Block otherBlock = mock(Block.class);
+        assertTrue(index.get(otherBlock, null).isEmpty());
+        verify(provider).mayProvideDevice(otherBlock, null);
+    }
+
+    @Test
+    public void onlyProvidersThatMayProvideDevicesAreKept() {
+        final BlockEntity blockEntity = mock(BlockEntity.class);
+        final BlockDeviceProvider provider1 = mock(BlockDeviceProvider.class);
+        final BlockDeviceProvider provider2 = mock(BlockDeviceProvider.class);
+        final BlockDeviceProvider provider3 = mock(BlockDeviceProvider.class);
+        when(provider1.mayProvideDevice(block, blockEntity)).thenReturn(true);
+        when(provider2.mayProvideDevice(block, blockEntity)).thenReturn(false);
+        when(provider3.mayProvideDevice(block, blockEntity)).thenReturn(true);
+        candidates.addAll(List.of(provider1, provider2, provider3));
+
+        // Registry order is kept, device order on the bus depends on it.
+        assertEquals(List.of(provider1, provider3), index.get(block, blockEntity));
+        verify(provider2).mayProvideDevice(block, blockEntity);
+    }
+
+    @Test
+    public void clearPicksUpNewProviders() {
+        assertTrue(index.get(block, null).isEmpty());
+
+        final BlockDeviceProvider provider = mock(BlockDeviceProvider.class);
+        when(provider.mayProvideDevice(block, null)).thenReturn(true);
+        candidates.add(provider);
+        assertTrue(index.get(block, null).isEmpty());
+
+        // As happens when the provider registry is baked.
+        index.clear();
+        assertEquals(singletonList(provider), index.get(block, null));
+    }
+}
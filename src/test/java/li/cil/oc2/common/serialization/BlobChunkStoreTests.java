@@ -0,0 +1,164 @@
+package li.cil.oc2.common.serialization;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlobChunkStoreTests {
+    private static final int CHUNK_SIZE = 1024;
+
+    private Path directory;
+
+    @BeforeEach
+    public void setupEach() throws IOException {
+        directory = Files.createTempDirectory("blobs");
+    }
+
+    @AfterEach
+    public void teardownEach() throws IOException {
+        try (final Stream<Path> paths = Files.walk(directory)) {
+            for (final Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void restoresStoredData() throws IOException {
+        final BlobChunkStore store = BlobChunkStore.open(directory);
+        final byte[] data = createData(3 * CHUNK_SIZE + 100, 1);
+        // Zero chunk in the middle, which is not stored but must be restored.
+        for (int i = CHUNK_SIZE; i < 2 * CHUNK_SIZE; i++) {
+            data[i] = 0;
+        }
+
+        final UUID handle = UUID.randomUUID();
+        store.store(handle, writeFile("a", data), CHUNK_SIZE);
+        assertTrue(store.contains(handle));
+        assertEquals(data.length, store.getLogicalSize());
+        assertEquals(data.length - CHUNK_SIZE, store.getStoredSize());
+
+        final Path restored = directory.resolve("restored");
+        store.restore(handle, restored);
+        assertArrayEquals(data, Files.readAllBytes(restored));
+    }
+
+    @Test
+    public void storesSharedChunksOnce() throws IOException {
+        final BlobChunkStore store = BlobChunkStore.open(directory);
+        final byte[] data = createData(4 * CHUNK_SIZE, 1);
+        final UUID handleA = UUID.randomUUID();
+        final UUID handleB = UUID.randomUUID();
+
+        store.store(handleA, writeFile("a", data), CHUNK_SIZE);
+        store.store(handleB, writeFile("b", data), CHUNK_SIZE);
+        assertEquals(2L * data.length, store.getLogicalSize());
+        assertEquals(data.length, store.getStoredSize());
+
+        store.delete(handleA);
+        assertFalse(store.contains(handleA));
+        assertEquals(data.length, store.getStoredSize());
+
+        store.delete(handleB);
+        assertEquals(0, store.getLogicalSize());
+        assertEquals(0, store.getStoredSize());
+    }
+
+    @Test
+    public void replacingBlobReleasesOldChunks() throws IOException {
+        final BlobChunkStore store = BlobChunkStore.open(directory);
+        final UUID handle = UUID.randomUUID();
+
+        store.store(handle, writeFile("a", createData(2 * CHUNK_SIZE, 1)), CHUNK_SIZE);
+        final byte[] data = createData(2 * CHUNK_SIZE, 2);
+        store.store(handle, writeFile("a", data), CHUNK_SIZE);
+        assertEquals(data.length, store.getLogicalSize());
+        assertEquals(data.length, store.getStoredSize());
+
+        final Path restored = directory.resolve("restored");
+        store.restore(handle, restored);
+        assertArrayEquals(data, Files.readAllBytes(restored));
+    }
+
+    @Test
+    public void reopeningRestoresReferenceCounts() throws IOException {
+        final UUID handle = UUID.randomUUID();
+        final byte[] data = createData(2 * CHUNK_SIZE, 1);
+        BlobChunkStore.open(directory).store(handle, writeFile("a", data), CHUNK_SIZE);
+
+        final BlobChunkStore store = BlobChunkStore.open(directory);
+        assertEquals(data.length, store.getLogicalSize());
+        assertEquals(data.length, store.getStoredSize());
+
+        store.delete(handle);
+        assertEquals(0, store.getStoredSize());
+    }
+
+    @Test
+    public void concurrentStoreAndDeleteKeepSharedChunks() throws Exception {
+        final BlobChunkStore store = BlobChunkStore.open(directory);
+        final byte[] data = createData(8 * CHUNK_SIZE, 1);
+        final Path sourceA = writeFile("a", data);
+        final Path sourceB = writeFile("b", data);
+        final UUID handleA = UUID.randomUUID();
+        final UUID handleB = UUID.randomUUID();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Keeps releasing the chunks shared with the other blob, while it is stored again and again.
+            final Future<?> churn = executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    store.store(handleA, sourceA, CHUNK_SIZE);
+                    store.delete(handleA);
+                }
+                return null;
+            });
+            final Future<?> check = executor.submit(() -> {
+                final Path restored = directory.resolve("restored");
+                for (int i = 0; i < 200; i++) {
+                    store.store(handleB, sourceB, CHUNK_SIZE);
+                    store.restore(handleB, restored);
+                    assertArrayEquals(data, Files.readAllBytes(restored));
+                    store.delete(handleB);
+                }
+                return null;
+            });
+
+            churn.get();
+            check.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, store.getLogicalSize());
+        assertEquals(0, store.getStoredSize());
+    }
+
+    ///////////////////////////////////////////////////////////////////
+
+    private Path writeFile(final String name, final byte[] data) throws IOException {
+        final Path path = directory.resolve(name);
+        Files.write(path, data);
+        return path;
+    }
+
+    private static byte[] createData(final int length, final int seed) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * seed + i / CHUNK_SIZE + 1);
+        }
+        return data;
+    }
+}
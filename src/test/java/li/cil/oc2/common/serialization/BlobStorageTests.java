@@ -0,0 +1,186 @@
+package li.cil.oc2.common.serialization;
+
+import li.cil.oc2.common.Config;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlobStorageTests {
+    private static final int BLOB_SIZE = 4096;
+    private static final int MAX_OPEN_CHANNELS = 2;
+
+    private Path directory;
+    private int maxOpenBlobChannels;
+    private int blobDeduplicationChunkSize;
+
+    @BeforeEach
+    public void setupEach() throws IOException {
+        maxOpenBlobChannels = Config.maxOpenBlobChannels;
+        blobDeduplicationChunkSize = Config.blobDeduplicationChunkSize;
+        Config.maxOpenBlobChannels = MAX_OPEN_CHANNELS;
+        Config.blobDeduplicationChunkSize = 0;
+
+        directory = Files.createTempDirectory("blobs");
+        BlobStorage.setDataDirectory(directory);
+    }
+
+    @AfterEach
+    public void teardownEach() throws IOException {
+        BlobStorage.close();
+
+        Config.maxOpenBlobChannels = maxOpenBlobChannels;
+        Config.blobDeduplicationChunkSize = blobDeduplicationChunkSize;
+
+        try (final Stream<Path> paths = Files.walk(directory)) {
+            for (final Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void closeReleasesOneReference() throws IOException {
+        final UUID handle = BlobStorage.allocateHandle();
+        final FileChannel channel = BlobStorage.getOrOpen(handle);
+        assertSame(channel, BlobStorage.getOrOpen(handle));
+        assertEquals(1, BlobStorage.getOpenCount());
+
+        BlobStorage.close(handle);
+        assertTrue(channel.isOpen());
+        assertEquals(1, BlobStorage.getOpenCount());
+
+        BlobStorage.close(handle);
+        assertFalse(channel.isOpen());
+        assertEquals(0, BlobStorage.getOpenCount());
+    }
+
+    @Test
+    public void mapAndOpenShareReferences() throws IOException {
+        final UUID handle = BlobStorage.allocateHandle();
+        final MappedByteBuffer buffer = BlobStorage.map(handle, BLOB_SIZE);
+        final FileChannel channel = BlobStorage.getOrOpen(handle);
+
+        BlobStorage.close(handle);
+        assertTrue(channel.isOpen());
+
+        buffer.put(0, (byte) 42);
+        BlobStorage.close(handle);
+        assertFalse(channel.isOpen());
+        assertEquals(0, BlobStorage.getOpenCount());
+
+        assertEquals(42, BlobStorage.map(handle, BLOB_SIZE).get(0));
+        BlobStorage.close(handle);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedMappedChannels() throws IOException {
+        final List<UUID> handles = new ArrayList<>();
+        final List<MappedByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 2 * MAX_OPEN_CHANNELS; i++) {
+            final UUID handle = BlobStorage.allocateHandle();
+            handles.add(handle);
+            buffers.add(BlobStorage.map(handle, BLOB_SIZE));
+            assertTrue(BlobStorage.getEvictableChannelCount() <= MAX_OPEN_CHANNELS);
+        }
+
+        assertEquals(MAX_OPEN_CHANNELS, BlobStorage.getEvictableChannelCount());
+        assertEquals(handles.size(), BlobStorage.getOpenCount());
+
+        // Buffers of blobs with evicted channels stay valid.
+        for (int i = 0; i < buffers.size(); i++) {
+            buffers.get(i).put(0, (byte) (i + 1));
+        }
+        for (final UUID handle : handles) {
+            BlobStorage.close(handle);
+        }
+        assertEquals(0, BlobStorage.getEvictableChannelCount());
+
+        for (int i = 0; i < handles.size(); i++) {
+            assertEquals(i + 1, BlobStorage.map(handles.get(i), BLOB_SIZE).get(0));
+            BlobStorage.close(handles.get(i));
+        }
+    }
+
+    @Test
+    public void neverEvictsOpenedChannels() throws IOException {
+        final UUID openedHandle = BlobStorage.allocateHandle();
+        final FileChannel channel = BlobStorage.getOrOpen(openedHandle);
+
+        // Mapping the opened blob must not make its channel evictable either.
+        BlobStorage.map(openedHandle, BLOB_SIZE);
+
+        final List<UUID> handles = new ArrayList<>();
+        for (int i = 0; i < 2 * MAX_OPEN_CHANNELS; i++) {
+            final UUID handle = BlobStorage.allocateHandle();
+            handles.add(handle);
+            BlobStorage.map(handle, BLOB_SIZE);
+        }
+
+        assertTrue(channel.isOpen());
+        channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), 0);
+
+        for (final UUID handle : handles) {
+            BlobStorage.close(handle);
+        }
+        BlobStorage.close(openedHandle);
+        assertTrue(channel.isOpen());
+        BlobStorage.close(openedHandle);
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void concurrentOpenAndCloseKeepCounts() throws Exception {
+        final UUID handle = BlobStorage.allocateHandle();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 2; thread++) {
+                final int offset = thread;
+                futures.add(executor.submit(() -> {
+                    // Each close may release the last reference while the other thread acquires one,
+                    // which must then retry with a new blob instead of using the closed one.
+                    for (int i = 0; i < 500; i++) {
+                        final FileChannel channel = BlobStorage.getOrOpen(handle);
+                        try {
+                            assertTrue(channel.isOpen());
+                            channel.write(ByteBuffer.wrap(new byte[]{(byte) i}), offset);
+                        } finally {
+                            BlobStorage.close(handle);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, BlobStorage.getOpenCount());
+
+        final MappedByteBuffer buffer = BlobStorage.map(handle, 2);
+        assertEquals((byte) 499, buffer.get(0));
+        assertEquals((byte) 499, buffer.get(1));
+        BlobStorage.close(handle);
+    }
+}
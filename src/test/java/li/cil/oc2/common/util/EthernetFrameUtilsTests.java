@@ -0,0 +1,40 @@
+package li.cil.oc2.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EthernetFrameUtilsTests {
+    private static final byte[] FRAME = {
+        (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, // destination
+        0x02, 0x00, 0x00, 0x00, 0x00, 0x01, // source
+        0x08, 0x06, // type (ARP)
+        0x01, 0x02, 0x03, 0x04 // payload
+    };
+
+    @Test
+    public void untaggedFramesAreInDefaultVlan() {
+        assertEquals(EthernetFrameUtils.DEFAULT_VLAN_ID, EthernetFrameUtils.getVlanId(FRAME));
+        assertSame(FRAME, EthernetFrameUtils.removeVlanTag(FRAME));
+        assertSame(FRAME, EthernetFrameUtils.addVlanTag(FRAME, EthernetFrameUtils.DEFAULT_VLAN_ID));
+    }
+
+    @Test
+    public void taggedFramesRoundTrip() {
+        final byte[] tagged = EthernetFrameUtils.addVlanTag(FRAME, 42);
+        assertEquals(FRAME.length + EthernetFrameUtils.VLAN_TAG_LENGTH, tagged.length);
+        assertTrue(EthernetFrameUtils.isVlanTagged(tagged));
+        assertEquals(42, EthernetFrameUtils.getVlanId(tagged));
+        assertEquals(EthernetFrameUtils.getSource(FRAME), EthernetFrameUtils.getSource(tagged));
+        assertEquals(EthernetFrameUtils.getDestination(FRAME), EthernetFrameUtils.getDestination(tagged));
+
+        assertArrayEquals(FRAME, EthernetFrameUtils.removeVlanTag(tagged));
+    }
+
+    @Test
+    public void incompleteFramesAreNotTagged() {
+        final byte[] frame = {0x01, 0x02, 0x03};
+        assertSame(frame, EthernetFrameUtils.addVlanTag(frame, 42));
+        assertEquals(EthernetFrameUtils.DEFAULT_VLAN_ID, EthernetFrameUtils.getVlanId(frame));
+    }
+}
@@ -0,0 +1,59 @@
+package li.cil.oc2.common.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MacAddressTableTests {
+    private static final long ADDRESS_A = 0x02_00_00_00_00_0AL;
+    private static final long ADDRESS_B = 0x02_00_00_00_00_0BL;
+    private static final long BROADCAST = 0xFF_FF_FF_FF_FF_FFL;
+    private static final int VLAN_ID = 0;
+    private static final int OTHER_VLAN_ID = 42;
+    private static final int MAX_AGE = 100;
+
+    private MacAddressTable<String> table;
+
+    @BeforeEach
+    public void setupEach() {
+        table = new MacAddressTable<>(1, MAX_AGE);
+    }
+
+    @Test
+    public void learnedAddressesExpire() {
+        table.learn(VLAN_ID, ADDRESS_A, "port", 0);
+        assertEquals("port", table.get(VLAN_ID, ADDRESS_A, MAX_AGE));
+        assertNull(table.get(VLAN_ID, ADDRESS_A, MAX_AGE + 1));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void groupAddressesAreNotLearned() {
+        assertTrue(EthernetFrameUtils.isGroupAddress(BROADCAST));
+        table.learn(VLAN_ID, BROADCAST, "port", 0);
+        assertNull(table.get(VLAN_ID, BROADCAST, 0));
+    }
+
+    @Test
+    public void fullTableOnlyEvictsExpiredEntries() {
+        table.learn(VLAN_ID, ADDRESS_A, "a", 0);
+        table.learn(VLAN_ID, ADDRESS_B, "b", 1);
+        assertNull(table.get(VLAN_ID, ADDRESS_B, 1));
+
+        table.learn(VLAN_ID, ADDRESS_B, "b", MAX_AGE + 1);
+        assertEquals("b", table.get(VLAN_ID, ADDRESS_B, MAX_AGE + 1));
+        assertNull(table.get(VLAN_ID, ADDRESS_A, MAX_AGE + 1));
+    }
+
+    @Test
+    public void addressesAreLearnedPerVlan() {
+        table = new MacAddressTable<>(2, MAX_AGE);
+        table.learn(VLAN_ID, ADDRESS_A, "a", 0);
+        table.learn(OTHER_VLAN_ID, ADDRESS_A, "other", 0);
+
+        assertEquals("a", table.get(VLAN_ID, ADDRESS_A, 0));
+        assertEquals("other", table.get(OTHER_VLAN_ID, ADDRESS_A, 0));
+        assertNull(table.get(1, ADDRESS_A, 0));
+    }
+}
@@ -0,0 +1,51 @@
+package li.cil.oc2.common.util;
+
+import li.cil.oc2.common.Constants;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokenBucketTests {
+    @Test
+    public void debtIsPaidOffAtConfiguredRate() {
+        final int bytesPerSecond = 1000;
+        final TokenBucket bucket = new TokenBucket(bytesPerSecond, 100);
+
+        assertTrue(bucket.hasTokens());
+        bucket.consume(100 + bytesPerSecond);
+        assertFalse(bucket.hasTokens());
+
+        for (int i = 0; i < Constants.SECONDS_TO_TICKS; i++) {
+            assertFalse(bucket.hasTokens());
+            bucket.refill();
+        }
+
+        assertFalse(bucket.hasTokens());
+        bucket.refill();
+        assertTrue(bucket.hasTokens());
+    }
+
+    @Test
+    public void refillIsCappedAtBurst() {
+        final TokenBucket bucket = new TokenBucket(1000, 100);
+        for (int i = 0; i < 100; i++) {
+            bucket.refill();
+        }
+
+        bucket.consume(100);
+        assertFalse(bucket.hasTokens());
+    }
+
+    @Test
+    public void refillForMultipleTicksMatchesSingleTicks() {
+        final int bytesPerSecond = 1000;
+        final TokenBucket bucket = new TokenBucket(bytesPerSecond, 100);
+
+        bucket.consume(100 + bytesPerSecond);
+        bucket.refill(Constants.SECONDS_TO_TICKS);
+        assertFalse(bucket.hasTokens());
+        bucket.refill(1);
+        assertTrue(bucket.hasTokens());
+    }
+}
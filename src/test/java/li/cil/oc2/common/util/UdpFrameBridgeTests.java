@@ -0,0 +1,59 @@
+package li.cil.oc2.common.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UdpFrameBridgeTests {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final LinkedBlockingQueue<byte[]> receivedByA = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<byte[]> receivedByB = new LinkedBlockingQueue<>();
+    private UdpFrameBridge bridgeA, bridgeB;
+
+    @BeforeEach
+    public void setupEach() throws IOException {
+        bridgeA = new UdpFrameBridge(0, 0, 16, receivedByA::add);
+        bridgeB = new UdpFrameBridge(0, bridgeA.getLocalPort(), 16, receivedByB::add);
+        bridgeA.setRemotePort(bridgeB.getLocalPort());
+    }
+
+    @AfterEach
+    public void teardownEach() {
+        bridgeA.close();
+        bridgeB.close();
+    }
+
+    @Test
+    public void framesArriveAtOtherEndpoint() throws InterruptedException {
+        assertTrue(bridgeA.send(new byte[]{1, 2, 3}));
+        assertArrayEquals(new byte[]{1, 2, 3}, receivedByB.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertTrue(bridgeB.send(new byte[]{4, 5}));
+        assertArrayEquals(new byte[]{4, 5}, receivedByA.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void batchedFramesArriveInOrder() throws InterruptedException {
+        for (int i = 0; i < 16; i++) {
+            assertTrue(bridgeA.send(new byte[]{(byte) i}));
+        }
+
+        for (int i = 0; i < 16; i++) {
+            assertArrayEquals(new byte[]{(byte) i}, receivedByB.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void closedBridgeDropsFrames() {
+        bridgeA.close();
+        assertFalse(bridgeA.send(new byte[]{1}));
+        assertEquals(1, bridgeA.getDroppedCount());
+    }
+}
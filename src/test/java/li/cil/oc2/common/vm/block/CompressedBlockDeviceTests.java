@@ -0,0 +1,114 @@
+package li.cil.oc2.common.vm.block;
+
+import li.cil.sedna.api.device.BlockDevice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressedBlockDeviceTests {
+    private static final int CAPACITY = 4 * CompressedBlockDevice.EXTENT_SIZE + 100;
+
+    private Path file;
+    private FileChannel channel;
+
+    @BeforeEach
+    public void setupEach() throws IOException {
+        file = Files.createTempFile("compressed", null);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @AfterEach
+    public void teardownEach() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void newDeviceIsEmpty() throws IOException {
+        final CompressedBlockDevice device = CompressedBlockDevice.open(channel, CAPACITY, false);
+        assertTrue(CompressedBlockDevice.isCompressed(channel));
+        assertEquals(CAPACITY, device.getCapacity());
+        assertArrayEquals(new byte[CAPACITY], readAll(device));
+        assertEquals(0, device.getUsedSize());
+    }
+
+    @Test
+    public void writesPersistAcrossReopen() throws IOException {
+        final byte[] expected = new byte[CAPACITY];
+        new Random(0).nextBytes(expected);
+        Arrays.fill(expected, CompressedBlockDevice.EXTENT_SIZE, 3 * CompressedBlockDevice.EXTENT_SIZE, (byte) 42);
+
+        final CompressedBlockDevice written = CompressedBlockDevice.open(channel, CAPACITY, false);
+        try (final OutputStream stream = written.getOutputStream(0)) {
+            stream.write(expected);
+        }
+        written.close();
+
+        final CompressedBlockDevice device = CompressedBlockDevice.open(channel, CAPACITY, false);
+        assertArrayEquals(expected, readAll(device));
+
+        // Random data is stored as-is, repeated data compresses to next to nothing.
+        assertTrue(device.getUsedSize() < CAPACITY - CompressedBlockDevice.EXTENT_SIZE);
+    }
+
+    @Test
+    public void rewritingReusesSpace() throws IOException {
+        final CompressedBlockDevice device = CompressedBlockDevice.open(channel, CAPACITY, false);
+        final Random random = new Random(0);
+        final byte[] data = new byte[CompressedBlockDevice.EXTENT_SIZE];
+
+        long size = 0;
+        for (int i = 0; i < 10; i++) {
+            random.nextBytes(data);
+            try (final OutputStream stream = device.getOutputStream(0)) {
+                stream.write(data);
+            }
+            device.flush();
+
+            if (i == 1) {
+                size = channel.size();
+            }
+        }
+
+        assertEquals(size, channel.size());
+        assertEquals(CompressedBlockDevice.EXTENT_SIZE, device.getUsedSize());
+    }
+
+    @Test
+    public void incompatibleCapacityFails() throws IOException {
+        CompressedBlockDevice.open(channel, CAPACITY, false).close();
+        assertThrows(IOException.class, () -> CompressedBlockDevice.open(channel, 2 * CAPACITY, false));
+    }
+
+    @Test
+    public void corruptedIndexFails() throws IOException {
+        final CompressedBlockDevice device = CompressedBlockDevice.open(channel, CAPACITY, false);
+        try (final OutputStream stream = device.getOutputStream(0)) {
+            stream.write(new byte[]{1, 2, 3});
+        }
+        device.close();
+
+        // Length of the first extent, right after the header and its sector.
+        channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, Integer.MAX_VALUE), 24 + Integer.BYTES);
+        assertThrows(IOException.class, () -> CompressedBlockDevice.open(channel, CAPACITY, false));
+    }
+
+    private static byte[] readAll(final BlockDevice device) throws IOException {
+        try (final InputStream stream = device.getInputStream(0)) {
+            return stream.readAllBytes();
+        }
+    }
+}
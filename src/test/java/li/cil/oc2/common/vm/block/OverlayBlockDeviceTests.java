@@ -0,0 +1,157 @@
+package li.cil.oc2.common.vm.block;
+
+import li.cil.sedna.api.device.BlockDevice;
+import li.cil.sedna.device.block.ByteBufferBlockDevice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OverlayBlockDeviceTests {
+    private static final int BASE_SIZE = 4 * OverlayBlockDevice.BLOCK_SIZE + 100;
+
+    private ByteBufferBlockDevice base;
+    private byte[] baseData;
+    private Path file;
+    private FileChannel channel;
+
+    @BeforeEach
+    public void setupEach() throws IOException {
+        baseData = new byte[BASE_SIZE];
+        for (int i = 0; i < baseData.length; i++) {
+            baseData[i] = (byte) i;
+        }
+        base = ByteBufferBlockDevice.wrap(ByteBuffer.wrap(baseData), true);
+
+        file = Files.createTempFile("overlay", null);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @AfterEach
+    public void teardownEach() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void unwrittenBlocksReadFromBase() throws IOException {
+        final OverlayBlockDevice device = OverlayBlockDevice.open(base, channel, false);
+        assertEquals(BASE_SIZE, device.getCapacity());
+        assertArrayEquals(baseData, readAll(device));
+        assertEquals(0, device.getUsedSize());
+    }
+
+    @Test
+    public void writesOnlyStoreChangedBlocks() throws IOException {
+        final OverlayBlockDevice device = OverlayBlockDevice.open(base, channel, false);
+
+        final long position = OverlayBlockDevice.BLOCK_SIZE + 10;
+        final byte[] data = {-1, -2, -3};
+        try (final OutputStream stream = device.getOutputStream(position)) {
+            stream.write(data);
+        }
+
+        final byte[] expected = baseData.clone();
+        System.arraycopy(data, 0, expected, (int) position, data.length);
+        assertArrayEquals(expected, readAll(device));
+        assertEquals(OverlayBlockDevice.BLOCK_SIZE, device.getUsedSize());
+        assertArrayEquals(baseData, readAll(base), "base must not be modified");
+    }
+
+    @Test
+    public void writesPersistAcrossReopen() throws IOException {
+        final byte[] data = new byte[2 * OverlayBlockDevice.BLOCK_SIZE];
+        Arrays.fill(data, (byte) 42);
+        try (final OutputStream stream = OverlayBlockDevice.open(base, channel, false).getOutputStream(50)) {
+            stream.write(data);
+        }
+
+        assertTrue(OverlayBlockDevice.isOverlay(channel));
+
+        final OverlayBlockDevice device = OverlayBlockDevice.open(base, channel, false);
+        final byte[] expected = baseData.clone();
+        System.arraycopy(data, 0, expected, 50, data.length);
+        assertArrayEquals(expected, readAll(device));
+        assertEquals(3 * OverlayBlockDevice.BLOCK_SIZE, device.getUsedSize());
+    }
+
+    @Test
+    public void zeroBlocksReleaseSpace() throws IOException {
+        final OverlayBlockDevice device = OverlayBlockDevice.open(base, channel, false);
+        final long emptySize = channel.size();
+
+        final byte[] data = new byte[2 * OverlayBlockDevice.BLOCK_SIZE];
+        Arrays.fill(data, (byte) 42);
+        try (final OutputStream stream = device.getOutputStream(0)) {
+            stream.write(data);
+        }
+        assertEquals(2 * OverlayBlockDevice.BLOCK_SIZE, device.getUsedSize());
+
+        try (final OutputStream stream = device.getOutputStream(0)) {
+            stream.write(new byte[data.length]);
+        }
+        assertEquals(0, device.getUsedSize());
+        assertEquals(emptySize, channel.size());
+
+        final byte[] expected = baseData.clone();
+        Arrays.fill(expected, 0, data.length, (byte) 0);
+        assertArrayEquals(expected, readAll(device));
+        assertArrayEquals(expected, readAll(OverlayBlockDevice.open(base, channel, false)));
+    }
+
+    @Test
+    public void writesPastEndFail() throws IOException {
+        final OverlayBlockDevice device = OverlayBlockDevice.open(base, channel, false);
+        assertThrows(IOException.class, () -> {
+            try (final OutputStream stream = device.getOutputStream(BASE_SIZE - 1)) {
+                stream.write(new byte[2]);
+            }
+        });
+    }
+
+    @Test
+    public void overlaysForDifferentBaseFailToOpen() throws IOException {
+        OverlayBlockDevice.open(base, "a", channel, false);
+
+        assertThrows(IOException.class, () -> OverlayBlockDevice.open(base, "b", channel, false));
+        assertNotNull(OverlayBlockDevice.open(base, "a", channel, false));
+        assertNotNull(OverlayBlockDevice.open(base, null, channel, false));
+    }
+
+    @Test
+    public void readonlyOverlaysRejectWrites() throws IOException {
+        OverlayBlockDevice.open(base, channel, false);
+        final long size = channel.size();
+
+        final OverlayBlockDevice device = OverlayBlockDevice.open(base, channel, true);
+        assertThrows(IOException.class, () -> device.write(0, new byte[1], 0, 1));
+        assertEquals(size, channel.size());
+        assertArrayEquals(baseData, readAll(device));
+    }
+
+    @Test
+    public void corruptedBlockMapFails() throws IOException {
+        OverlayBlockDevice.open(base, channel, false);
+
+        // Slot of the first block, right after the header.
+        channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, Integer.MAX_VALUE), 48);
+        assertThrows(IOException.class, () -> OverlayBlockDevice.open(base, channel, false));
+    }
+
+    private static byte[] readAll(final BlockDevice device) throws IOException {
+        try (final InputStream stream = device.getInputStream(0)) {
+            return stream.readAllBytes();
+        }
+    }
+}